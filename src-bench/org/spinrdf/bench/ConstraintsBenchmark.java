@@ -0,0 +1,159 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.bench;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spinrdf.arq.ARQFactory;
+import org.spinrdf.constraints.ConstraintViolation;
+import org.spinrdf.constraints.SPINConstraints;
+import org.spinrdf.model.QueryOrTemplateCall;
+import org.spinrdf.model.SPINInstance;
+import org.spinrdf.system.SPINModuleRegistry;
+import org.spinrdf.vocabulary.SPIN;
+
+/**
+ * Measures the various ways of checking SPIN constraints on the workload
+ * created by SyntheticWorkloads.createConstraints:
+ * <ul>
+ * <li>SPINConstraints.check(Model) with all constraints</li>
+ * <li>SPINConstraints.check(Model) with the ASK constraints only, which are
+ *     converted to CONSTRUCT queries first</li>
+ * <li>SPINConstraints.check(Resource) in a loop over all instances</li>
+ * <li>SPINConstraints.addTemplateCallResults in a loop over all instances</li>
+ * <li>a SPARQL query using spin:violatesConstraints in a FILTER</li>
+ * </ul>
+ * Each operation checks all instances once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConstraintsBenchmark {
+
+	@Param({ "100", "1000" })
+	public int instances;
+
+	@Param({ "3", "12" })
+	public int constraints;
+
+	@Param({ "1", "5" })
+	public int depth;
+
+
+	private Model model;
+
+	private List<Resource> resources;
+
+	private List<QueryOrTemplateCall> templateCalls;
+
+	private Query violatesConstraintsQuery;
+
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		SPINModuleRegistry.get().init();
+		model = SyntheticWorkloads.createConstraints(instances, constraints, depth);
+		SPINModuleRegistry.get().registerAll(model, null);
+		Resource leaf = model.getResource(SyntheticWorkloads.BENCH_NS + "V" + depth);
+		resources = model.listResourcesWithProperty(RDF.type, leaf).toList();
+		templateCalls = new ArrayList<QueryOrTemplateCall>();
+		for(QueryOrTemplateCall qot : resources.get(0).as(SPINInstance.class).getQueriesAndTemplateCalls(SPIN.constraint)) {
+			if(qot.getTemplateCall() != null) {
+				templateCalls.add(qot);
+			}
+		}
+		violatesConstraintsQuery = ARQFactory.get().createQuery(model,
+				"SELECT (COUNT(?instance) AS ?count)\n" +
+				"WHERE {\n" +
+				"    ?instance a bench:V" + depth + " .\n" +
+				"    FILTER spin:violatesConstraints(?instance, bench:V" + depth + ") .\n" +
+				"}");
+		System.out.println("# " + instances + " instances, " + constraints + " constraints, depth " + depth + ": " +
+				checkModel() + " violations (" + checkModelAsk() + " from ASK constraints), " +
+				templateCalls.size() + " template calls per instance");
+	}
+
+
+	@Benchmark
+	public int addTemplateCallResults() {
+		List<ConstraintViolation> results = new LinkedList<ConstraintViolation>();
+		for(Resource resource : resources) {
+			for(QueryOrTemplateCall qot : templateCalls) {
+				SPINConstraints.addTemplateCallResults(results, qot, resource, false, null);
+			}
+		}
+		return results.size();
+	}
+
+
+	@Benchmark
+	public int checkModel() {
+		return SPINConstraints.check(model, null).size();
+	}
+
+
+	@Benchmark
+	public int checkModelAsk() {
+		return SPINConstraints.check(model, model.getProperty(SyntheticWorkloads.ASK_CONSTRAINT), null).size();
+	}
+
+
+	@Benchmark
+	public int checkResources() {
+		int count = 0;
+		for(Resource resource : resources) {
+			count += SPINConstraints.check(resource, null).size();
+		}
+		return count;
+	}
+
+
+	@Benchmark
+	public int violatesConstraintsFilter() {
+		QueryExecution qexec = ARQFactory.get().createQueryExecution(violatesConstraintsQuery, model);
+		try {
+			return qexec.execSelect().next().getLiteral("count").getInt();
+		}
+		finally {
+			qexec.close();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spinrdf.inference.DefaultSPINRuleComparator;
+import org.spinrdf.inference.SPINInferences;
+import org.spinrdf.inference.SPINRuleComparator;
+import org.spinrdf.system.SPINModuleRegistry;
+import org.spinrdf.util.CommandWrapper;
+import org.spinrdf.util.JenaUtil;
+import org.spinrdf.util.SPINQueryFinder;
+import org.spinrdf.vocabulary.SPIN;
+
+/**
+ * Measures SPINInferences.run on the SyntheticWorkloads, both in single-pass
+ * and in fixpoint mode.
+ *
+ * As in the OWLRLExample, the rule maps are collected beforehand so that only
+ * the execution of the rules is measured.  Each invocation starts with an empty
+ * Model for the inferred triples.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InferencesBenchmark {
+
+	@Param({ SyntheticWorkloads.KENNEDYS, SyntheticWorkloads.OWLRL, SyntheticWorkloads.HIERARCHY, SyntheticWorkloads.GENERATED })
+	public String workload;
+
+	@Param({ "10", "100" })
+	public int scale;
+
+	@Param({ "true", "false" })
+	public boolean singlePass;
+
+
+	private Model baseModel;
+
+	private Map<Resource,List<CommandWrapper>> cls2Constructor;
+
+	private Map<Resource,List<CommandWrapper>> cls2Query;
+
+	private SPINRuleComparator comparator;
+
+	private Model newTriples;
+
+	private Model queryModel;
+
+
+	@Setup(Level.Trial)
+	public void setUpTrial() {
+		SPINModuleRegistry.get().init();
+		baseModel = SyntheticWorkloads.create(workload, scale);
+		SPINModuleRegistry.get().registerAll(baseModel, null);
+		cls2Query = SPINQueryFinder.getClass2QueryMap(baseModel, baseModel, SPIN.rule, true, false);
+		cls2Constructor = SPINQueryFinder.getClass2QueryMap(baseModel, baseModel, SPIN.constructor, true, false);
+		comparator = new DefaultSPINRuleComparator(baseModel);
+
+		// Report the shape of this configuration, which the throughput alone does not tell
+		setUpInvocation();
+		int iterations = run();
+		System.out.println("# " + workload + " (scale " + scale + (singlePass ? ", single pass" : ", fixpoint") + "): " +
+				baseModel.size() + " triples, " + iterations + " iteration(s), " + newTriples.size() + " inferred triples");
+	}
+
+
+	@Setup(Level.Invocation)
+	public void setUpInvocation() {
+		newTriples = JenaUtil.createDefaultModel();
+		queryModel = ModelFactory.createModelForGraph(JenaUtil.createMultiUnion(new Graph[] {
+			baseModel.getGraph(),
+			newTriples.getGraph()
+		}));
+	}
+
+
+	@Benchmark
+	public int run() {
+		return SPINInferences.run(queryModel, newTriples, cls2Query, cls2Constructor, null, null, singlePass, SPIN.rule, comparator, null);
+	}
+}
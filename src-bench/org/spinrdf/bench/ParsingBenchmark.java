@@ -0,0 +1,188 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spinrdf.arq.ARQ2SPIN;
+import org.spinrdf.arq.ARQFactory;
+import org.spinrdf.model.Command;
+import org.spinrdf.model.SPINFactory;
+import org.spinrdf.model.print.StringPrintContext;
+import org.spinrdf.system.SPINModuleRegistry;
+import org.spinrdf.util.JenaUtil;
+
+/**
+ * Microbenchmarks of the conversions between SPARQL text, ARQ Queries and
+ * SPIN RDF, which dominate the loading of large rule libraries.
+ * Each operation converts the whole QueryCorpus.
+ *
+ * With caches=cold, the ARQFactory caches are cleared before each operation,
+ * which simulates the first use of each rule.  With caches=warm, they are
+ * populated during the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParsingBenchmark {
+
+	@Param({ "cold", "warm" })
+	public String caches;
+
+
+	private Query[] queries;
+
+	private Resource[] spinQueries;
+
+	private String[] texts;
+
+
+	@Setup(Level.Trial)
+	public void setUpTrial() {
+		SPINModuleRegistry.get().init();
+		texts = QueryCorpus.QUERIES;
+		queries = new Query[texts.length];
+		spinQueries = new Resource[texts.length];
+		Model model = JenaUtil.createMemoryModel();
+		ARQ2SPIN arq2SPIN = new ARQ2SPIN(model);
+		for(int i = 0; i < texts.length; i++) {
+			queries[i] = QueryFactory.create(texts[i], ARQFactory.get().getSyntax());
+			spinQueries[i] = arq2SPIN.createQuery(queries[i], null);
+		}
+		ARQFactory.get().clearCaches();
+		if("warm".equals(caches)) {
+			spinToQuery();
+			textToQuery();
+		}
+	}
+
+
+	@Setup(Level.Invocation)
+	public void setUpInvocation() {
+		if("cold".equals(caches)) {
+			ARQFactory.get().clearCaches();
+		}
+	}
+
+
+	/**
+	 * SPIN RDF to SPIN Command objects, as done when rules are collected.
+	 */
+	@Benchmark
+	public int asCommand() {
+		int count = 0;
+		for(Resource spinQuery : spinQueries) {
+			if(SPINFactory.asCommand(spinQuery) != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+
+	/**
+	 * SPIN RDF to SPARQL text using ARQFactory.createCommandString (cached).
+	 */
+	@Benchmark
+	public int createCommandString() {
+		int length = 0;
+		for(Resource spinQuery : spinQueries) {
+			length += ARQFactory.get().createCommandString(SPINFactory.asCommand(spinQuery)).length();
+		}
+		return length;
+	}
+
+
+	/**
+	 * SPARQL to SPIN RDF.
+	 */
+	@Benchmark
+	public long sparqlToSPIN() {
+		Model model = JenaUtil.createMemoryModel();
+		ARQ2SPIN arq2SPIN = new ARQ2SPIN(model);
+		for(Query query : queries) {
+			arq2SPIN.createQuery(query, null);
+		}
+		return model.size();
+	}
+
+
+	/**
+	 * SPIN RDF to ARQ Query, i.e. printing and then parsing (both cached).
+	 */
+	@Benchmark
+	public int spinToQuery() {
+		int count = 0;
+		for(Resource spinQuery : spinQueries) {
+			if(ARQFactory.get().createQuery(SPINFactory.asQuery(spinQuery)) != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+
+	/**
+	 * SPIN RDF to SPARQL text using a StringPrintContext (never cached).
+	 */
+	@Benchmark
+	public int spinToText() {
+		int length = 0;
+		for(Resource spinQuery : spinQueries) {
+			Command command = SPINFactory.asCommand(spinQuery);
+			StringPrintContext p = new StringPrintContext();
+			command.print(p);
+			length += p.getString().length();
+		}
+		return length;
+	}
+
+
+	/**
+	 * SPARQL text to ARQ Query using ARQFactory.createQuery (cached).
+	 */
+	@Benchmark
+	public int textToQuery() {
+		int count = 0;
+		for(String text : texts) {
+			if(ARQFactory.get().createQuery(text) != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
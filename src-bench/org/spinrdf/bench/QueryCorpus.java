@@ -0,0 +1,185 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.bench;
+
+/**
+ * A corpus of SPARQL queries in the style of typical SPIN rules, constraints and
+ * function bodies, covering subqueries, aggregations, property paths, VALUES,
+ * SERVICE, negation and the usual built-in functions.
+ */
+public class QueryCorpus {
+
+	private final static String PREFIXES =
+			"PREFIX ex: <http://example.org/ns#>\n" +
+			"PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n" +
+			"PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>\n" +
+			"PREFIX owl: <http://www.w3.org/2002/07/owl#>\n" +
+			"PREFIX spin: <http://spinrdf.org/spin#>\n" +
+			"PREFIX spl: <http://spinrdf.org/spl#>\n" +
+			"PREFIX xsd: <http://www.w3.org/2001/XMLSchema#>\n";
+
+	public final static String[] QUERIES = {
+
+		// A simple rule
+		PREFIXES +
+		"CONSTRUCT { ?this ex:grandParent ?grandParent . }\n" +
+		"WHERE {\n" +
+		"    ?this ex:parent ?parent .\n" +
+		"    ?parent ex:parent ?grandParent .\n" +
+		"}",
+
+		// Rule with BIND and built-in functions
+		PREFIXES +
+		"CONSTRUCT { ?this rdfs:label ?label . ?this ex:age ?age . }\n" +
+		"WHERE {\n" +
+		"    ?this ex:firstName ?firstName ; ex:lastName ?lastName .\n" +
+		"    OPTIONAL { ?this ex:birthDate ?birthDate . }\n" +
+		"    BIND (CONCAT(UCASE(SUBSTR(?firstName, 1, 1)), SUBSTR(?firstName, 2), \" \", ?lastName) AS ?label) .\n" +
+		"    BIND (IF(BOUND(?birthDate), YEAR(NOW()) - YEAR(?birthDate), -1) AS ?age) .\n" +
+		"}",
+
+		// Constraint with negation and a SPIN function call
+		PREFIXES +
+		"CONSTRUCT {\n" +
+		"    _:cv a spin:ConstraintViolation ;\n" +
+		"        spin:violationRoot ?this ;\n" +
+		"        spin:violationPath ex:manager ;\n" +
+		"        rdfs:label ?message .\n" +
+		"}\n" +
+		"WHERE {\n" +
+		"    ?this ex:manager ?manager .\n" +
+		"    FILTER NOT EXISTS { ?manager a ex:Manager . }\n" +
+		"    FILTER (!spl:instanceOf(?manager, ex:Person)) .\n" +
+		"    BIND (CONCAT(\"Invalid manager: \", STR(?manager)) AS ?message) .\n" +
+		"}",
+
+		// ASK constraint with MINUS and regex
+		PREFIXES +
+		"ASK WHERE {\n" +
+		"    ?this ex:email ?email .\n" +
+		"    MINUS { ?this ex:verified true . }\n" +
+		"    FILTER (!REGEX(?email, \"^[^@]+@[^@]+\\\\.[a-z]+$\", \"i\")) .\n" +
+		"}",
+
+		// Aggregation with GROUP BY and HAVING
+		PREFIXES +
+		"SELECT ?department (COUNT(DISTINCT ?employee) AS ?count) (AVG(?salary) AS ?avgSalary) (MAX(?salary) AS ?maxSalary)\n" +
+		"WHERE {\n" +
+		"    ?employee ex:department ?department ;\n" +
+		"        ex:salary ?salary .\n" +
+		"}\n" +
+		"GROUP BY ?department\n" +
+		"HAVING (COUNT(?employee) > 5)\n" +
+		"ORDER BY DESC(?avgSalary)\n" +
+		"LIMIT 10",
+
+		// Sub-query
+		PREFIXES +
+		"CONSTRUCT { ?this ex:largestChild ?child . }\n" +
+		"WHERE {\n" +
+		"    {\n" +
+		"        SELECT ?this (MAX(?size) AS ?maxSize)\n" +
+		"        WHERE {\n" +
+		"            ?this ex:child ?c .\n" +
+		"            ?c ex:size ?size .\n" +
+		"        }\n" +
+		"        GROUP BY ?this\n" +
+		"    }\n" +
+		"    ?this ex:child ?child .\n" +
+		"    ?child ex:size ?maxSize .\n" +
+		"}",
+
+		// Property paths
+		PREFIXES +
+		"SELECT DISTINCT ?type ?ancestor\n" +
+		"WHERE {\n" +
+		"    ?this rdf:type/rdfs:subClassOf* ?type .\n" +
+		"    ?this (ex:parent|^ex:child)+ ?ancestor .\n" +
+		"    ?ancestor ex:knows/^ex:knows ?peer .\n" +
+		"    ?type rdfs:subClassOf?/owl:equivalentClass{0,1} ?other .\n" +
+		"}",
+
+		// VALUES and UNION
+		PREFIXES +
+		"SELECT ?s ?p ?o\n" +
+		"WHERE {\n" +
+		"    VALUES (?p ?kind) {\n" +
+		"        (rdfs:label \"label\")\n" +
+		"        (rdfs:comment \"comment\")\n" +
+		"        (ex:name UNDEF)\n" +
+		"    }\n" +
+		"    {\n" +
+		"        ?s ?p ?o .\n" +
+		"    }\n" +
+		"    UNION\n" +
+		"    {\n" +
+		"        ?o ?p ?s .\n" +
+		"        FILTER isLiteral(?o) .\n" +
+		"    }\n" +
+		"}",
+
+		// SERVICE and named graphs
+		PREFIXES +
+		"SELECT ?s ?label ?graph\n" +
+		"WHERE {\n" +
+		"    SERVICE <http://example.org/sparql> {\n" +
+		"        ?s rdfs:label ?label .\n" +
+		"        FILTER (LANG(?label) = \"en\") .\n" +
+		"    }\n" +
+		"    GRAPH ?graph {\n" +
+		"        ?s a ?type .\n" +
+		"    }\n" +
+		"}",
+
+		// Function body with typed literals and COALESCE
+		PREFIXES +
+		"SELECT ?result\n" +
+		"WHERE {\n" +
+		"    ?arg1 ex:price ?price .\n" +
+		"    OPTIONAL { ?arg1 ex:discount ?discount . }\n" +
+		"    BIND (xsd:decimal(?price) * (1.0 - COALESCE(?discount, 0.0)) AS ?net) .\n" +
+		"    BIND (ROUND(?net * 100) / 100 AS ?result) .\n" +
+		"}",
+
+		// EXISTS in a FILTER with nested OPTIONALs
+		PREFIXES +
+		"CONSTRUCT { ?this a ex:ActiveCustomer . }\n" +
+		"WHERE {\n" +
+		"    ?this a ex:Customer .\n" +
+		"    OPTIONAL {\n" +
+		"        ?this ex:order ?order .\n" +
+		"        OPTIONAL { ?order ex:date ?date . }\n" +
+		"    }\n" +
+		"    FILTER EXISTS { ?this ex:order ?o . ?o ex:status ex:Open . }\n" +
+		"    FILTER (!BOUND(?date) || ?date > \"2019-01-01\"^^xsd:date) .\n" +
+		"}",
+
+		// DESCRIBE-like SELECT with ORDER BY, OFFSET and string functions
+		PREFIXES +
+		"SELECT ?s (GROUP_CONCAT(DISTINCT ?name; separator=\", \") AS ?names) (SAMPLE(?type) AS ?someType)\n" +
+		"WHERE {\n" +
+		"    ?s ex:name ?name .\n" +
+		"    OPTIONAL { ?s a ?type . }\n" +
+		"    FILTER (STRSTARTS(LCASE(?name), \"a\") && STRLEN(?name) < 40) .\n" +
+		"}\n" +
+		"GROUP BY ?s\n" +
+		"ORDER BY ?s\n" +
+		"OFFSET 5\n" +
+		"LIMIT 100"
+	};
+}
@@ -0,0 +1,467 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonNumber;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.spinrdf.constraints.SPINConstraints;
+import org.spinrdf.inference.DefaultSPINRuleComparator;
+import org.spinrdf.inference.SPINInferences;
+import org.spinrdf.inference.SPINRuleComparator;
+import org.spinrdf.statistics.SPINStatistics;
+import org.spinrdf.system.SPINModuleRegistry;
+import org.spinrdf.util.CommandWrapper;
+import org.spinrdf.util.JenaUtil;
+import org.spinrdf.util.SPINQueryFinder;
+import org.spinrdf.vocabulary.SPIN;
+
+/**
+ * Runs a fixed suite of inference and constraint checking scenarios and compares
+ * the results with a baseline stored in a JSON file.
+ *
+ * For each scenario, the harness records the total duration, the number of bytes
+ * allocated by the running thread and the duration of each rule or constraint, as
+ * reported through SPINStatistics.  Unlike the JMH benchmarks, this makes it possible
+ * to see that a single rule has become much slower, e.g. because its query plan has
+ * changed after a Jena upgrade, even if the totals are still within the noise.
+ *
+ * <code>
+ * 	java -cp spinrdf-*-benchmarks.jar org.spinrdf.bench.RegressionHarness -baseline baseline.json [-record]
+ * </code>
+ *
+ * If the baseline file does not exist (or with -record), the results are written to it.
+ * Otherwise the results are compared with it and the process exits with status 1
+ * if there are regressions.  A value counts as a regression if its mean is more than
+ * the tolerance (-tolerance, default 0.25) above the baseline mean, by more than
+ * a minimum absolute difference (-minDelta, default 2 ms or 5% of the allocation)
+ * and the difference is statistically significant (Welch's t-test, t &gt; 3).
+ * The number of warm-up and measured runs can be set with -warmups and -runs.
+ */
+public class RegressionHarness {
+
+	private final static String ALLOCATION = "allocation";
+
+	private final static String MEAN = "mean";
+
+	private final static String N = "n";
+
+	private final static String RULES = "rules";
+
+	private final static String SCENARIOS = "scenarios";
+
+	private final static String STDDEV = "stddev";
+
+	private final static double T_THRESHOLD = 3.0;
+
+	private final static String TOTAL = "total";
+
+
+	/**
+	 * A named operation on a fixed Model.  Each run must start from the same state.
+	 */
+	private static abstract class Scenario {
+
+		final String name;
+
+		Scenario(String name) {
+			this.name = name;
+		}
+
+		abstract void run(List<SPINStatistics> stats);
+	}
+
+
+	private static class InferencesScenario extends Scenario {
+
+		private Model baseModel;
+
+		private Map<Resource,List<CommandWrapper>> cls2Constructor;
+
+		private Map<Resource,List<CommandWrapper>> cls2Query;
+
+		private SPINRuleComparator comparator;
+
+
+		InferencesScenario(String workload, int scale) {
+			super("inferences-" + workload + "-" + scale);
+			baseModel = SyntheticWorkloads.create(workload, scale);
+			SPINModuleRegistry.get().registerAll(baseModel, null);
+			cls2Query = SPINQueryFinder.getClass2QueryMap(baseModel, baseModel, SPIN.rule, true, false);
+			cls2Constructor = SPINQueryFinder.getClass2QueryMap(baseModel, baseModel, SPIN.constructor, true, false);
+			comparator = new DefaultSPINRuleComparator(baseModel);
+		}
+
+
+		@Override
+		void run(List<SPINStatistics> stats) {
+			Model newTriples = JenaUtil.createDefaultModel();
+			Model queryModel = ModelFactory.createModelForGraph(JenaUtil.createMultiUnion(new Graph[] {
+				baseModel.getGraph(),
+				newTriples.getGraph()
+			}));
+			SPINInferences.run(queryModel, newTriples, cls2Query, cls2Constructor, null, stats, false, SPIN.rule, comparator, null);
+		}
+	}
+
+
+	private static class ConstraintsScenario extends Scenario {
+
+		private Model model;
+
+
+		ConstraintsScenario(int instances, int constraints, int depth) {
+			super("constraints-" + instances + "-" + constraints + "-" + depth);
+			model = SyntheticWorkloads.createConstraints(instances, constraints, depth);
+			SPINModuleRegistry.get().registerAll(model, null);
+		}
+
+
+		@Override
+		void run(List<SPINStatistics> stats) {
+			SPINConstraints.check(model, null, stats, null);
+		}
+	}
+
+
+	/**
+	 * The mean and standard deviation of a series of measurements.
+	 */
+	private static class Sample {
+
+		final double mean;
+
+		final int n;
+
+		final double stddev;
+
+
+		Sample(List<Double> values) {
+			n = values.size();
+			double sum = 0;
+			for(double value : values) {
+				sum += value;
+			}
+			mean = n > 0 ? sum / n : 0;
+			double squares = 0;
+			for(double value : values) {
+				squares += (value - mean) * (value - mean);
+			}
+			stddev = n > 1 ? Math.sqrt(squares / (n - 1)) : 0;
+		}
+
+
+		Sample(JsonObject json) {
+			mean = json.get(MEAN).getAsNumber().value().doubleValue();
+			n = json.get(N).getAsNumber().value().intValue();
+			stddev = json.get(STDDEV).getAsNumber().value().doubleValue();
+		}
+
+
+		JsonObject toJson() {
+			JsonObject json = new JsonObject();
+			json.put(MEAN, JsonNumber.value(mean));
+			json.put(N, n);
+			json.put(STDDEV, JsonNumber.value(stddev));
+			return json;
+		}
+	}
+
+
+	/**
+	 * The measurements of one scenario: each list has one entry per run.
+	 */
+	private static class Result {
+
+		final List<Double> allocations = new ArrayList<Double>();
+
+		final Map<String,List<Double>> rules = new TreeMap<String,List<Double>>();
+
+		final List<Double> totals = new ArrayList<Double>();
+	}
+
+
+	private double minDelta = 2;
+
+	private int runs = 5;
+
+	private double tolerance = 0.25;
+
+	private int warmups = 2;
+
+
+	private List<Scenario> createScenarios() {
+		List<Scenario> scenarios = new ArrayList<Scenario>();
+		scenarios.add(new InferencesScenario(SyntheticWorkloads.KENNEDYS, 10));
+		scenarios.add(new InferencesScenario(SyntheticWorkloads.OWLRL, 10));
+		scenarios.add(new InferencesScenario(SyntheticWorkloads.HIERARCHY, 20));
+		scenarios.add(new InferencesScenario(SyntheticWorkloads.GENERATED, 100));
+		scenarios.add(new ConstraintsScenario(1000, 12, 3));
+		return scenarios;
+	}
+
+
+	/**
+	 * Measures all scenarios.
+	 * @return the JSON object with the results, as stored in the baseline file
+	 */
+	public JsonObject measure() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		JsonObject scenariosJson = new JsonObject();
+		for(Scenario scenario : createScenarios()) {
+			System.out.println("Running " + scenario.name);
+			Result result = new Result();
+			for(int i = 0; i < warmups + runs; i++) {
+				List<SPINStatistics> stats = new ArrayList<SPINStatistics>();
+				long allocatedBefore = getAllocatedBytes(threads);
+				long startTime = System.nanoTime();
+				scenario.run(stats);
+				long endTime = System.nanoTime();
+				long allocatedAfter = getAllocatedBytes(threads);
+				if(i >= warmups) {
+					result.totals.add((endTime - startTime) / 1000000.0);
+					if(allocatedBefore >= 0) {
+						result.allocations.add((double) (allocatedAfter - allocatedBefore));
+					}
+					addRuleDurations(result, stats);
+				}
+			}
+			JsonObject json = new JsonObject();
+			json.put(TOTAL, new Sample(result.totals).toJson());
+			if(!result.allocations.isEmpty()) {
+				json.put(ALLOCATION, new Sample(result.allocations).toJson());
+			}
+			JsonObject rulesJson = new JsonObject();
+			for(String key : result.rules.keySet()) {
+				List<Double> durations = result.rules.get(key);
+				// Rules that did not run in some runs count as 0 ms in those
+				while(durations.size() < runs) {
+					durations.add(0.0);
+				}
+				rulesJson.put(key, new Sample(durations).toJson());
+			}
+			json.put(RULES, rulesJson);
+			scenariosJson.put(scenario.name, json);
+		}
+		JsonObject json = new JsonObject();
+		json.put(SCENARIOS, scenariosJson);
+		return json;
+	}
+
+
+	/**
+	 * Sums up the durations of each rule within one run, using the query text and the
+	 * context (e.g. the class holding the rule) as key.
+	 */
+	private static void addRuleDurations(Result result, List<SPINStatistics> stats) {
+		Map<String,Double> sums = new TreeMap<String,Double>();
+		for(SPINStatistics s : stats) {
+			String key = getKey(s);
+			Double old = sums.get(key);
+			sums.put(key, (old != null ? old : 0) + s.getDuration());
+		}
+		for(String key : sums.keySet()) {
+			List<Double> durations = result.rules.get(key);
+			if(durations == null) {
+				durations = new ArrayList<Double>();
+				result.rules.put(key, durations);
+			}
+			durations.add(sums.get(key));
+		}
+	}
+
+
+	private static String getKey(SPINStatistics s) {
+		String text = s.getQueryText() != null ? s.getQueryText() : s.getLabel();
+		text = text != null ? text.replaceAll("\\s+", " ").trim() : "";
+		Node context = s.getContext();
+		if(context != null) {
+			return (context.isURI() ? "<" + context.getURI() + ">" : context.toString()) + " " + text;
+		}
+		else {
+			return text;
+		}
+	}
+
+
+	private static long getAllocatedBytes(ThreadMXBean threads) {
+		if(threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		else {
+			return -1;
+		}
+	}
+
+
+	/**
+	 * Compares the results of measure() with a baseline and prints a report.
+	 * @param baseline  the baseline
+	 * @param current  the current results
+	 * @return the number of regressions
+	 */
+	public int compare(JsonObject baseline, JsonObject current) {
+		int regressions = 0;
+		JsonObject baselineScenarios = baseline.get(SCENARIOS).getAsObject();
+		JsonObject currentScenarios = current.get(SCENARIOS).getAsObject();
+		for(String name : currentScenarios.keys()) {
+			if(!baselineScenarios.hasKey(name)) {
+				System.out.println(name + ": not in baseline");
+				continue;
+			}
+			JsonObject b = baselineScenarios.get(name).getAsObject();
+			JsonObject c = currentScenarios.get(name).getAsObject();
+			System.out.println(name + ":");
+			regressions += compare("total (ms)", b.get(TOTAL), c.get(TOTAL), minDelta);
+			if(b.hasKey(ALLOCATION) && c.hasKey(ALLOCATION)) {
+				double minAllocation = new Sample(b.get(ALLOCATION).getAsObject()).mean * 0.05;
+				regressions += compare("allocation (bytes)", b.get(ALLOCATION), c.get(ALLOCATION), minAllocation);
+			}
+			JsonObject baselineRules = b.get(RULES).getAsObject();
+			JsonObject currentRules = c.get(RULES).getAsObject();
+			for(String key : currentRules.keys()) {
+				if(baselineRules.hasKey(key)) {
+					regressions += compare(key, baselineRules.get(key), currentRules.get(key), minDelta);
+				}
+				else {
+					System.out.println("    new: " + key);
+				}
+			}
+			for(String key : baselineRules.keys()) {
+				if(!currentRules.hasKey(key)) {
+					System.out.println("    missing: " + key);
+				}
+			}
+		}
+		System.out.println(regressions + " regression(s)");
+		return regressions;
+	}
+
+
+	private int compare(String label, JsonValue baselineJson, JsonValue currentJson, double min) {
+		Sample b = new Sample(baselineJson.getAsObject());
+		Sample c = new Sample(currentJson.getAsObject());
+		double delta = c.mean - b.mean;
+		if(delta > b.mean * tolerance && delta > min && isSignificant(b, c)) {
+			System.out.println(String.format("    REGRESSION %.1f -> %.1f (%+.0f%%): %s", b.mean, c.mean, b.mean > 0 ? 100 * delta / b.mean : 100.0, label));
+			return 1;
+		}
+		else if(label.startsWith(TOTAL) || label.startsWith(ALLOCATION)) {
+			// Always report the totals, but not the unchanged rules
+			System.out.println(String.format("    %.1f -> %.1f: %s", b.mean, c.mean, label));
+		}
+		return 0;
+	}
+
+
+	/**
+	 * Uses Welch's t-test to check whether the difference of two means is significant.
+	 * With a single measurement on either side this can only be decided by the tolerance.
+	 */
+	private static boolean isSignificant(Sample b, Sample c) {
+		if(b.n < 2 || c.n < 2) {
+			return true;
+		}
+		double error = Math.sqrt(b.stddev * b.stddev / b.n + c.stddev * c.stddev / c.n);
+		if(error == 0) {
+			return c.mean != b.mean;
+		}
+		return (c.mean - b.mean) / error > T_THRESHOLD;
+	}
+
+
+	public void setMinDelta(double value) {
+		this.minDelta = value;
+	}
+
+
+	public void setRuns(int value) {
+		this.runs = Math.max(1, value);
+	}
+
+
+	public void setTolerance(double value) {
+		this.tolerance = value;
+	}
+
+
+	public void setWarmups(int value) {
+		this.warmups = Math.max(0, value);
+	}
+
+
+	public static void main(String[] args) throws IOException {
+		SPINModuleRegistry.get().init();
+		RegressionHarness harness = new RegressionHarness();
+		String baseline = null;
+		boolean record = false;
+		for(int i = 0; i < args.length; i++) {
+			String name = args[i];
+			if("-record".equals(name)) {
+				record = true;
+				continue;
+			}
+			if(i + 1 == args.length) {
+				throw new IllegalArgumentException("Missing value for " + name);
+			}
+			String value = args[++i];
+			switch(name) {
+				case "-baseline": baseline = value; break;
+				case "-minDelta": harness.setMinDelta(Double.parseDouble(value)); break;
+				case "-runs": harness.setRuns(Integer.parseInt(value)); break;
+				case "-tolerance": harness.setTolerance(Double.parseDouble(value)); break;
+				case "-warmups": harness.setWarmups(Integer.parseInt(value)); break;
+				default: throw new IllegalArgumentException("Unknown option: " + name);
+			}
+		}
+		if(baseline == null) {
+			throw new IllegalArgumentException("Missing -baseline file");
+		}
+		JsonObject current = harness.measure();
+		File file = new File(baseline);
+		if(record || !file.exists()) {
+			try(OutputStream os = new FileOutputStream(file)) {
+				JSON.write(os, current);
+			}
+			System.out.println("Baseline written to " + file);
+		}
+		else {
+			JsonObject old = JSON.read(baseline);
+			if(harness.compare(old, current) > 0) {
+				System.exit(1);
+			}
+		}
+	}
+}
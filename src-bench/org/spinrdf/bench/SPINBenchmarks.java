@@ -0,0 +1,46 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The entry point of the benchmarks jar, built with
+ *
+ * <code>
+ * 	mvn -Pbench package
+ * 	java -jar target/spinrdf-*-benchmarks.jar [JMH options] [benchmark regexp]
+ * </code>
+ *
+ * This accepts the usual JMH command line options (e.g. -p scale=1000 or -rf json),
+ * and always adds the GC profiler so that the allocation rate is reported for
+ * each configuration.
+ */
+public class SPINBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions options = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder().
+				parent(options).
+				addProfiler(GCProfiler.class).
+				build()).run();
+	}
+}
@@ -0,0 +1,826 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.bench;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.rdf.model.AnonId;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.apache.jena.vocabulary.XSD;
+import org.spinrdf.arq.ARQ2SPIN;
+import org.spinrdf.arq.ARQFactory;
+import org.spinrdf.system.SPINModuleRegistry;
+import org.spinrdf.util.JenaUtil;
+import org.spinrdf.vocabulary.SP;
+import org.spinrdf.vocabulary.SPIN;
+import org.spinrdf.vocabulary.SPL;
+
+/**
+ * Generates synthetic SPIN workloads of arbitrary size: a class hierarchy,
+ * instance data and a configurable mix of SPIN rules, constraints, templates,
+ * functions and magic properties, all in a single self-contained Model.
+ *
+ * The output is fully determined by the settings (including the seed), down to
+ * the order of the statements in the written files.
+ * Commands are stored as sp:text, except for the bodies of magic properties,
+ * which need the SPIN RDF syntax.
+ *
+ * The result can be used by the benchmarks (see SyntheticWorkloads.GENERATED), or
+ * written to a Turtle file for the RunInferences and CheckConstraints tools:
+ *
+ * <code>
+ * 	java -cp spinrdf-*-benchmarks.jar org.spinrdf.bench.SPINWorkloadGenerator -instances 10000 -rules 100 -out workload.ttl
+ * </code>
+ *
+ * Each command line option corresponds to one of the setters, e.g. -thisUnboundRatio 0.2.
+ */
+public class SPINWorkloadGenerator {
+
+	public final static String DISTRIBUTION_UNIFORM = "uniform";
+
+	public final static String DISTRIBUTION_ZIPF = "zipf";
+
+	public final static String NS = "http://spinrdf.org/bench/generated#";
+
+	private final static int MAX_VALUE = 100;
+
+
+	private int branching = 3;
+
+	private double cachableRatio = 0.5;
+
+	private int constraints = 20;
+
+	private int datatypeProperties = 4;
+
+	private int depth = 3;
+
+	private String distribution = DISTRIBUTION_UNIFORM;
+
+	private double fillRate = 0.8;
+
+	private int functions = 5;
+
+	private int instances = 1000;
+
+	private int magicProperties = 2;
+
+	private int maxValues = 2;
+
+	private int objectProperties = 3;
+
+	private int rules = 20;
+
+	private long seed = 42;
+
+	private int templates = 4;
+
+	private double thisDeepRatio = 0.1;
+
+	private double thisUnboundRatio = 0.1;
+
+	private double updateRatio = 0.1;
+
+
+	// Generation state
+	private Resource[] classes;
+
+	private Resource[] constraintTemplates;
+
+	private Property[] datatypeProps;
+
+	private boolean[] graphFunctions;
+
+	private Resource[] functionResources;
+
+	private Resource[] leafClasses;
+
+	private Model model;
+
+	private Property[] magicProps;
+
+	private Property[] objectProps;
+
+	private Random random;
+
+	private Resource[] ruleTemplates;
+
+	private double[] zipfClasses;
+
+	private double[] zipfInstances;
+
+
+	/**
+	 * Generates a new Model based on the current settings.
+	 * @return a new Model
+	 */
+	public Model generate() {
+		model = JenaUtil.createDefaultModel();
+		random = new Random(seed);
+		model.setNsPrefix("gen", NS);
+		model.setNsPrefix("owl", OWL.NS);
+		model.setNsPrefix("rdf", RDF.uri);
+		model.setNsPrefix("rdfs", RDFS.uri);
+		model.setNsPrefix("sp", SP.NS);
+		model.setNsPrefix("spin", SPIN.NS);
+		model.setNsPrefix("spl", SPL.NS);
+		model.setNsPrefix("xsd", XSD.NS);
+		model.createResource(NS.substring(0, NS.length() - 1), OWL.Ontology);
+		try {
+			generateSchema();
+			generateFunctions();
+			generateMagicProperties();
+			generateTemplates();
+			generateInstances();
+			generateRules();
+			generateConstraints();
+			return model;
+		}
+		finally {
+			model = null;
+		}
+	}
+
+
+	private void generateSchema() {
+		List<Resource> all = new ArrayList<Resource>();
+		List<Resource> leaves = new ArrayList<Resource>();
+		Resource root = model.createResource(NS + "C", OWL.Class);
+		all.add(root);
+		generateClasses(root, "C", depth, all, leaves);
+		classes = all.toArray(new Resource[0]);
+		leafClasses = leaves.toArray(new Resource[0]);
+		zipfClasses = createZipf(leafClasses.length);
+
+		datatypeProps = new Property[datatypeProperties];
+		for(int i = 0; i < datatypeProperties; i++) {
+			datatypeProps[i] = model.createProperty(NS + "value" + i);
+			datatypeProps[i].addProperty(RDF.type, OWL.DatatypeProperty);
+			datatypeProps[i].addProperty(RDFS.domain, root);
+			datatypeProps[i].addProperty(RDFS.range, XSD.integer);
+		}
+		objectProps = new Property[objectProperties];
+		for(int i = 0; i < objectProperties; i++) {
+			objectProps[i] = model.createProperty(NS + "link" + i);
+			objectProps[i].addProperty(RDF.type, OWL.ObjectProperty);
+			objectProps[i].addProperty(RDFS.domain, root);
+			objectProps[i].addProperty(RDFS.range, root);
+		}
+	}
+
+
+	private void generateClasses(Resource superClass, String name, int remaining, List<Resource> all, List<Resource> leaves) {
+		if(remaining == 0) {
+			leaves.add(superClass);
+			return;
+		}
+		for(int i = 0; i < branching; i++) {
+			String subName = name + "_" + i;
+			Resource subClass = model.createResource(NS + subName, OWL.Class);
+			subClass.addProperty(RDFS.subClassOf, superClass);
+			all.add(subClass);
+			generateClasses(subClass, subName, remaining - 1, all, leaves);
+		}
+	}
+
+
+	private void generateConstraints() {
+		for(int i = 0; i < constraints; i++) {
+			Resource cls = classes[random.nextInt(classes.length)];
+			Property property = datatypeProps[i % datatypeProps.length];
+			int max = MAX_VALUE - 1 - random.nextInt(5);
+			int kind = i % (constraintTemplates.length > 0 ? 3 : 2);
+			Resource constraint;
+			if(kind == 0) {
+				constraint = model.createResource(NS + "constraint" + i, SP.Ask);
+				constraint.addProperty(RDFS.comment, "Values of " + property.getLocalName() + " must not exceed " + max);
+				constraint.addProperty(SP.text, "ASK WHERE {\n" +
+						"    ?this gen:" + property.getLocalName() + " ?value .\n" +
+						"    FILTER (?value > " + max + ") .\n" +
+						"}");
+			}
+			else if(kind == 1) {
+				constraint = model.createResource(NS + "constraint" + i, SP.Construct);
+				constraint.addProperty(SP.text, "CONSTRUCT {\n" +
+						"    _:cv a spin:ConstraintViolation ;\n" +
+						"        spin:violationRoot ?this ;\n" +
+						"        spin:violationPath gen:" + property.getLocalName() + " ;\n" +
+						"        rdfs:label ?message .\n" +
+						"}\n" +
+						"WHERE {\n" +
+						"    ?this gen:" + property.getLocalName() + " ?value .\n" +
+						"    FILTER (?value > " + max + ") .\n" +
+						"    BIND (CONCAT(\"Value too large: \", STR(?value)) AS ?message) .\n" +
+						"}");
+			}
+			else {
+				Resource template = constraintTemplates[i % constraintTemplates.length];
+				constraint = model.createResource(NS + "constraint" + i, template);
+				constraint.addProperty(model.createProperty(NS + "property"), property);
+				constraint.addLiteral(model.createProperty(NS + "max"), (long) max);
+			}
+			cls.addProperty(SPIN.constraint, constraint);
+		}
+	}
+
+
+	private void generateFunctions() {
+		functionResources = new Resource[functions];
+		graphFunctions = new boolean[functions];
+		for(int i = 0; i < functions; i++) {
+			Resource function = model.createResource(NS + "function" + i, SPIN.Function);
+			function.addProperty(RDFS.subClassOf, SPIN.Functions);
+			graphFunctions[i] = i % 2 == 1;
+			Resource body = model.createResource(SP.Select);
+			if(graphFunctions[i]) {
+				// Queries the graph, e.g. to count the values of a property
+				Property link = objectProps.length > 0 ? objectProps[i % objectProps.length] : datatypeProps[i % datatypeProps.length];
+				addArgument(function, SP.arg1, RDFS.Resource);
+				function.addProperty(SPIN.returnType, XSD.integer);
+				body.addProperty(SP.text, "SELECT (COUNT(?o) AS ?result)\n" +
+						"WHERE {\n" +
+						"    ?arg1 gen:" + link.getLocalName() + " ?o .\n" +
+						"}");
+			}
+			else {
+				// Only computes a value from the argument
+				addArgument(function, SP.arg1, XSD.integer);
+				function.addProperty(SPIN.returnType, XSD.integer);
+				body.addProperty(SP.text, "SELECT ?result\n" +
+						"WHERE {\n" +
+						"    BIND (((?arg1 * " + (i + 2) + ") + 1) AS ?result) .\n" +
+						"}");
+			}
+			function.addProperty(SPIN.body, body);
+			if(random.nextDouble() < cachableRatio) {
+				function.addLiteral(SPIN.cachable, true);
+			}
+			functionResources[i] = function;
+		}
+	}
+
+
+	private void generateInstances() {
+		zipfInstances = createZipf(instances);
+		Resource[] all = new Resource[instances];
+		for(int i = 0; i < instances; i++) {
+			all[i] = model.createResource(NS + "i" + i, leafClasses[pick(leafClasses.length, zipfClasses)]);
+		}
+		for(int i = 0; i < instances; i++) {
+			for(Property property : datatypeProps) {
+				if(random.nextDouble() < fillRate) {
+					int count = 1 + random.nextInt(Math.max(1, maxValues));
+					for(int v = 0; v < count; v++) {
+						all[i].addLiteral(property, (long) random.nextInt(MAX_VALUE));
+					}
+				}
+			}
+			for(Property property : objectProps) {
+				if(random.nextDouble() < fillRate) {
+					int count = 1 + random.nextInt(Math.max(1, maxValues));
+					for(int v = 0; v < count; v++) {
+						all[i].addProperty(property, all[pick(instances, zipfInstances)]);
+					}
+				}
+			}
+		}
+	}
+
+
+	private void generateMagicProperties() {
+		magicProps = new Property[objectProps.length > 0 ? magicProperties : 0];
+		Model temp = JenaUtil.createDefaultModel();
+		temp.setNsPrefixes(model);
+		ARQ2SPIN arq2SPIN = new ARQ2SPIN(temp, false);
+		if(magicProps.length > 0) {
+			// Normally from spin.owl, but the output shall not depend on imports
+			SPIN.MagicProperty.inModel(model).addProperty(RDFS.subClassOf, SPIN.Function);
+		}
+		for(int i = 0; i < magicProps.length; i++) {
+			magicProps[i] = model.createProperty(NS + "magicProperty" + i);
+			magicProps[i].addProperty(RDF.type, SPIN.MagicProperty);
+			magicProps[i].addProperty(RDFS.subPropertyOf, SPIN.MagicProperties);
+			addArgument(magicProps[i], SP.arg1, RDFS.Resource);
+			Property first = objectProps[i % objectProps.length];
+			Property second = objectProps[(i + 1) % objectProps.length];
+			String text = ARQFactory.get().createPrefixDeclarations(model) +
+					"SELECT ?object\n" +
+					"WHERE {\n" +
+					"    ?arg1 gen:" + first.getLocalName() + " ?middle .\n" +
+					"    ?middle gen:" + second.getLocalName() + " ?object .\n" +
+					"}";
+			Query arq = ARQFactory.get().createQuery(text);
+			Resource body = arq2SPIN.createQuery(arq, NS + "magicProperty" + i + "_body");
+			copyTree(body, new HashMap<Resource,Resource>(), "magicProperty" + i + "_");
+			magicProps[i].addProperty(SPIN.body, body);
+		}
+	}
+
+
+	private void generateRules() {
+		Resource previous = null;
+		for(int i = 0; i < rules; i++) {
+			Resource cls = classes[random.nextInt(classes.length)];
+			Property input;
+			if(i % 4 == 3) {
+				// Chain to the output of the previous rule, so that fixpoint iteration is needed
+				cls = previous;
+				input = model.createProperty(NS + "derived" + (i - 1));
+			}
+			else {
+				input = datatypeProps[random.nextInt(datatypeProps.length)];
+			}
+			Property output = model.createProperty(NS + "derived" + i);
+			previous = cls;
+			if(ruleTemplates.length > 0 && i % 5 == 4) {
+				Resource call = model.createResource(NS + "rule" + i, ruleTemplates[i % ruleTemplates.length]);
+				call.addProperty(model.createProperty(NS + "source"), input);
+				call.addProperty(model.createProperty(NS + "target"), output);
+				cls.addProperty(SPIN.rule, call);
+				continue;
+			}
+			boolean unbound = random.nextDouble() < thisUnboundRatio;
+			boolean deep = !unbound && random.nextDouble() < thisDeepRatio;
+			boolean update = random.nextDouble() < updateRatio;
+			String subject = unbound ? "?s" : "?this";
+			String where = createRuleWhere(i, subject, input, deep);
+			String head = subject + " gen:" + output.getLocalName() + " ?result .";
+			Resource rule;
+			if(update) {
+				rule = model.createResource(NS + "rule" + i, SP.Modify);
+				rule.addProperty(SP.text, "INSERT {\n    " + head + "\n}\nWHERE {\n" + where + "}");
+			}
+			else {
+				rule = model.createResource(NS + "rule" + i, SP.Construct);
+				rule.addProperty(SP.text, "CONSTRUCT {\n    " + head + "\n}\nWHERE {\n" + where + "}");
+			}
+			if(unbound) {
+				rule.addLiteral(SPIN.thisUnbound, true);
+			}
+			cls.addProperty(SPIN.rule, rule);
+		}
+	}
+
+
+	private String createRuleWhere(int index, String subject, Property input, boolean deep) {
+		StringBuilder sb = new StringBuilder();
+		if(deep) {
+			// ?this only occurs within a nested sub-query
+			sb.append("    {\n");
+			sb.append("        SELECT " + subject + " ?value\n");
+			sb.append("        WHERE {\n");
+			sb.append("            " + subject + " gen:" + input.getLocalName() + " ?value .\n");
+			sb.append("        }\n");
+			sb.append("    }\n");
+		}
+		else {
+			sb.append("    " + subject + " gen:" + input.getLocalName() + " ?value .\n");
+		}
+		int variant = index % 3;
+		if(variant == 1 && functionResources.length > 0) {
+			int f = index % functionResources.length;
+			String arg = graphFunctions[f] ? subject : "?value";
+			sb.append("    BIND (gen:" + functionResources[f].getLocalName() + "(" + arg + ") AS ?result) .\n");
+		}
+		else if(variant == 2 && magicProps.length > 0) {
+			sb.append("    " + subject + " gen:" + magicProps[index % magicProps.length].getLocalName() + " ?result .\n");
+		}
+		else {
+			sb.append("    FILTER (?value > " + random.nextInt(MAX_VALUE) + ") .\n");
+			sb.append("    BIND ((?value + 1) AS ?result) .\n");
+		}
+		return sb.toString();
+	}
+
+
+	private void generateTemplates() {
+		List<Resource> cts = new ArrayList<Resource>();
+		List<Resource> rts = new ArrayList<Resource>();
+		for(int i = 0; i < templates; i++) {
+			Resource template = model.createResource(NS + "Template" + i, SPIN.Template);
+			template.addProperty(RDFS.subClassOf, SPIN.Templates);
+			if(i % 2 == 0) {
+				template.addProperty(RDFS.label, "Maximum value constraint " + i);
+				addArgument(template, model.createProperty(NS + "property"), RDF.Property);
+				addArgument(template, model.createProperty(NS + "max"), XSD.integer);
+				template.addProperty(SPIN.labelTemplate, "Values of {?property} must not exceed {?max}");
+				Resource body = model.createResource(SP.Ask);
+				body.addProperty(SP.text, "ASK WHERE {\n" +
+						"    ?this ?property ?value .\n" +
+						"    FILTER (?value > ?max) .\n" +
+						"}");
+				template.addProperty(SPIN.body, body);
+				cts.add(template);
+			}
+			else {
+				template.addProperty(RDFS.label, "Copy rule " + i);
+				addArgument(template, model.createProperty(NS + "source"), RDF.Property);
+				addArgument(template, model.createProperty(NS + "target"), RDF.Property);
+				template.addProperty(SPIN.labelTemplate, "Copy {?source} to {?target}");
+				Resource body = model.createResource(SP.Construct);
+				body.addProperty(SP.text, "CONSTRUCT {\n" +
+						"    ?this ?target ?value .\n" +
+						"}\n" +
+						"WHERE {\n" +
+						"    ?this ?source ?value .\n" +
+						"}");
+				template.addProperty(SPIN.body, body);
+				rts.add(template);
+			}
+		}
+		constraintTemplates = cts.toArray(new Resource[0]);
+		ruleTemplates = rts.toArray(new Resource[0]);
+	}
+
+
+	private void addArgument(Resource module, Property predicate, Resource valueType) {
+		Resource arg = model.createResource(new AnonId(module.getLocalName() + "_" + predicate.getLocalName()));
+		arg.addProperty(RDF.type, SPL.Argument);
+		arg.addProperty(SPL.predicate, predicate);
+		arg.addProperty(SPL.valueType, valueType);
+		module.addProperty(SPIN.constraint, arg);
+	}
+
+
+	/**
+	 * Copies the SPIN RDF tree starting at a given node into the Model, replacing
+	 * the blank nodes created by ARQ2SPIN with ones that have stable ids.
+	 * Otherwise the blank node ids would change the iteration order of the Model
+	 * and thus the order in which the statements are written.
+	 * SPIN RDF properties have at most one value, so sorting by predicate is sufficient
+	 * to visit the nodes in the same order each time.
+	 */
+	private Resource copyTree(Resource node, Map<Resource,Resource> copies, String prefix) {
+		if(!node.isAnon()) {
+			if(node.isURIResource() && !node.getModel().equals(model)) {
+				copyProperties(node, copies, prefix, model.getResource(node.getURI()));
+			}
+			return node;
+		}
+		Resource copy = copies.get(node);
+		if(copy == null) {
+			copy = model.createResource(new AnonId(prefix + copies.size()));
+			copies.put(node, copy);
+			copyProperties(node, copies, prefix, copy);
+		}
+		return copy;
+	}
+
+
+	private void copyProperties(Resource node, Map<Resource,Resource> copies, String prefix, Resource copy) {
+		List<Statement> statements = node.listProperties().toList();
+		statements.sort((a, b) -> a.getPredicate().getURI().compareTo(b.getPredicate().getURI()));
+		for(Statement s : statements) {
+			RDFNode object = s.getObject();
+			if(object.isAnon()) {
+				object = copyTree((Resource) object, copies, prefix);
+			}
+			copy.addProperty(s.getPredicate(), object);
+		}
+	}
+
+
+	/**
+	 * Creates the cumulative distribution of a Zipf distribution with exponent 1,
+	 * or null for the uniform distribution.
+	 */
+	private double[] createZipf(int n) {
+		if(!DISTRIBUTION_ZIPF.equals(distribution) || n == 0) {
+			return null;
+		}
+		double[] cdf = new double[n];
+		double sum = 0;
+		for(int i = 0; i < n; i++) {
+			sum += 1.0 / (i + 1);
+			cdf[i] = sum;
+		}
+		for(int i = 0; i < n; i++) {
+			cdf[i] /= sum;
+		}
+		return cdf;
+	}
+
+
+	private int pick(int n, double[] cdf) {
+		if(cdf == null) {
+			return random.nextInt(n);
+		}
+		double r = random.nextDouble();
+		int index = Arrays.binarySearch(cdf, r);
+		if(index < 0) {
+			index = -index - 1;
+		}
+		return Math.min(index, n - 1);
+	}
+
+
+	public int getBranching() {
+		return branching;
+	}
+
+
+	public double getCachableRatio() {
+		return cachableRatio;
+	}
+
+
+	public int getConstraints() {
+		return constraints;
+	}
+
+
+	public int getDatatypeProperties() {
+		return datatypeProperties;
+	}
+
+
+	public int getDepth() {
+		return depth;
+	}
+
+
+	public String getDistribution() {
+		return distribution;
+	}
+
+
+	public double getFillRate() {
+		return fillRate;
+	}
+
+
+	public int getFunctions() {
+		return functions;
+	}
+
+
+	public int getInstances() {
+		return instances;
+	}
+
+
+	public int getMagicProperties() {
+		return magicProperties;
+	}
+
+
+	public int getMaxValues() {
+		return maxValues;
+	}
+
+
+	public int getObjectProperties() {
+		return objectProperties;
+	}
+
+
+	public int getRules() {
+		return rules;
+	}
+
+
+	public long getSeed() {
+		return seed;
+	}
+
+
+	public int getTemplates() {
+		return templates;
+	}
+
+
+	public double getThisDeepRatio() {
+		return thisDeepRatio;
+	}
+
+
+	public double getThisUnboundRatio() {
+		return thisUnboundRatio;
+	}
+
+
+	public double getUpdateRatio() {
+		return updateRatio;
+	}
+
+
+	/**
+	 * Sets the number of subclasses of each non-leaf class.
+	 * @param value  the branching factor (default 3)
+	 */
+	public void setBranching(int value) {
+		this.branching = Math.max(1, value);
+	}
+
+
+	/**
+	 * Sets the fraction of functions that are marked spin:cachable.
+	 * @param value  the ratio between 0 and 1 (default 0.5)
+	 */
+	public void setCachableRatio(double value) {
+		this.cachableRatio = value;
+	}
+
+
+	public void setConstraints(int value) {
+		this.constraints = value;
+	}
+
+
+	/**
+	 * Sets the number of integer-valued properties, with values between 0 and 99.
+	 * @param value  the number of properties (at least 1, default 4)
+	 */
+	public void setDatatypeProperties(int value) {
+		this.datatypeProperties = Math.max(1, value);
+	}
+
+
+	/**
+	 * Sets the depth of the class hierarchy below the root class.
+	 * The instances are all at the leaf classes.
+	 * @param value  the depth (default 3)
+	 */
+	public void setDepth(int value) {
+		this.depth = Math.max(0, value);
+	}
+
+
+	/**
+	 * Sets the distribution used to pick the class of each instance and the
+	 * targets of object property values.
+	 * @param value  DISTRIBUTION_UNIFORM (default) or DISTRIBUTION_ZIPF
+	 */
+	public void setDistribution(String value) {
+		if(!DISTRIBUTION_UNIFORM.equals(value) && !DISTRIBUTION_ZIPF.equals(value)) {
+			throw new IllegalArgumentException("Unsupported distribution: " + value);
+		}
+		this.distribution = value;
+	}
+
+
+	/**
+	 * Sets the probability that an instance has values for a given property.
+	 * @param value  the probability between 0 and 1 (default 0.8)
+	 */
+	public void setFillRate(double value) {
+		this.fillRate = value;
+	}
+
+
+	public void setFunctions(int value) {
+		this.functions = value;
+	}
+
+
+	public void setInstances(int value) {
+		this.instances = value;
+	}
+
+
+	public void setMagicProperties(int value) {
+		this.magicProperties = value;
+	}
+
+
+	/**
+	 * Sets the maximum number of values of an instance for a given property.
+	 * The actual number is uniformly distributed between 1 and this.
+	 * @param value  the maximum number (default 2)
+	 */
+	public void setMaxValues(int value) {
+		this.maxValues = value;
+	}
+
+
+	public void setObjectProperties(int value) {
+		this.objectProperties = value;
+	}
+
+
+	public void setRules(int value) {
+		this.rules = value;
+	}
+
+
+	public void setSeed(long value) {
+		this.seed = value;
+	}
+
+
+	/**
+	 * Sets the number of templates.  Half of them are constraint templates
+	 * (ASK), the others are rule templates (CONSTRUCT).
+	 * @param value  the number of templates (default 4)
+	 */
+	public void setTemplates(int value) {
+		this.templates = value;
+	}
+
+
+	/**
+	 * Sets the fraction of rules that only mention ?this within a nested sub-query.
+	 * @param value  the ratio between 0 and 1 (default 0.1)
+	 */
+	public void setThisDeepRatio(double value) {
+		this.thisDeepRatio = value;
+	}
+
+
+	/**
+	 * Sets the fraction of rules that are marked spin:thisUnbound.
+	 * @param value  the ratio between 0 and 1 (default 0.1)
+	 */
+	public void setThisUnboundRatio(double value) {
+		this.thisUnboundRatio = value;
+	}
+
+
+	/**
+	 * Sets the fraction of rules that are SPARQL UPDATEs (INSERT/WHERE) instead of CONSTRUCTs.
+	 * @param value  the ratio between 0 and 1 (default 0.1)
+	 */
+	public void setUpdateRatio(double value) {
+		this.updateRatio = value;
+	}
+
+
+	/**
+	 * The command line entry point.
+	 * @param args  pairs of -option value, where each option corresponds to a setter,
+	 *              plus -out fileName (defaults to stdout)
+	 */
+	public static void main(String[] args) throws IOException {
+		SPINModuleRegistry.get().init();
+		SPINWorkloadGenerator generator = new SPINWorkloadGenerator();
+		String out = null;
+		for(int i = 0; i + 1 < args.length; i += 2) {
+			String name = args[i];
+			String value = args[i + 1];
+			switch(name) {
+				case "-branching": generator.setBranching(Integer.parseInt(value)); break;
+				case "-cachableRatio": generator.setCachableRatio(Double.parseDouble(value)); break;
+				case "-constraints": generator.setConstraints(Integer.parseInt(value)); break;
+				case "-datatypeProperties": generator.setDatatypeProperties(Integer.parseInt(value)); break;
+				case "-depth": generator.setDepth(Integer.parseInt(value)); break;
+				case "-distribution": generator.setDistribution(value); break;
+				case "-fillRate": generator.setFillRate(Double.parseDouble(value)); break;
+				case "-functions": generator.setFunctions(Integer.parseInt(value)); break;
+				case "-instances": generator.setInstances(Integer.parseInt(value)); break;
+				case "-magicProperties": generator.setMagicProperties(Integer.parseInt(value)); break;
+				case "-maxValues": generator.setMaxValues(Integer.parseInt(value)); break;
+				case "-objectProperties": generator.setObjectProperties(Integer.parseInt(value)); break;
+				case "-out": out = value; break;
+				case "-rules": generator.setRules(Integer.parseInt(value)); break;
+				case "-seed": generator.setSeed(Long.parseLong(value)); break;
+				case "-templates": generator.setTemplates(Integer.parseInt(value)); break;
+				case "-thisDeepRatio": generator.setThisDeepRatio(Double.parseDouble(value)); break;
+				case "-thisUnboundRatio": generator.setThisUnboundRatio(Double.parseDouble(value)); break;
+				case "-updateRatio": generator.setUpdateRatio(Double.parseDouble(value)); break;
+				default: throw new IllegalArgumentException("Unknown option: " + name);
+			}
+		}
+		Model model = generator.generate();
+		if(out != null) {
+			try(OutputStream os = new FileOutputStream(out)) {
+				RDFDataMgr.write(os, model, RDFFormat.TURTLE_PRETTY);
+			}
+		}
+		else {
+			RDFDataMgr.write(System.out, model, RDFFormat.TURTLE_PRETTY);
+		}
+	}
+}
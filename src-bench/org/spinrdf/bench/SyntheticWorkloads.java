@@ -0,0 +1,333 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.spinrdf.util.JenaUtil;
+import org.spinrdf.vocabulary.SP;
+import org.spinrdf.vocabulary.SPIN;
+
+/**
+ * Creates the synthetic Models used by the benchmarks.
+ * Each Model contains both the SPIN rules and the instance data,
+ * and is fully determined by its name and scale.
+ */
+public class SyntheticWorkloads {
+
+	/**
+	 * A chain of subclasses, each with a rule that applies to all instances of its subclasses.
+	 * The scale is the depth of the hierarchy.
+	 */
+	public final static String HIERARCHY = "hierarchy";
+
+	/**
+	 * The Kennedys family ontology.  The scale is the number of families (14 persons each).
+	 */
+	public final static String KENNEDYS = "kennedys";
+
+	/**
+	 * A subset of the OWL RL rules on a generated ontology.  The scale is the number
+	 * of individuals divided by 20.
+	 */
+	public final static String OWLRL = "owlrl";
+
+	/**
+	 * A mix of rules, functions, magic properties and templates created by SPINWorkloadGenerator
+	 * with its default settings.  The scale is the number of instances divided by 10.
+	 */
+	public final static String GENERATED = "generated";
+
+	public final static String BENCH_NS = "http://spinrdf.org/bench/data#";
+
+	/**
+	 * The sub-property of spin:constraint used for the ASK constraints of createConstraints.
+	 */
+	public final static String ASK_CONSTRAINT = BENCH_NS + "askConstraint";
+
+	/**
+	 * The sub-property of spin:constraint used for the CONSTRUCT constraints of createConstraints.
+	 */
+	public final static String CONSTRUCT_CONSTRAINT = BENCH_NS + "constructConstraint";
+
+	/**
+	 * The sub-property of spin:constraint used for the template calls of createConstraints.
+	 */
+	public final static String TEMPLATE_CONSTRAINT = BENCH_NS + "templateConstraint";
+
+	public final static String KENNEDYS_NS = "http://spinrdf.org/bench/kennedys#";
+
+	private final static long SEED = 42;
+
+
+	/**
+	 * Creates one of the workloads by name.
+	 * @param name  GENERATED, HIERARCHY, KENNEDYS or OWLRL
+	 * @param scale  the scale factor (see the individual workloads)
+	 * @return a new Model
+	 */
+	public static Model create(String name, int scale) {
+		switch(name) {
+			case GENERATED: return createGenerated(scale);
+			case HIERARCHY: return createHierarchy(scale);
+			case KENNEDYS: return createKennedys(scale);
+			case OWLRL: return createOWLRL(scale);
+			default: throw new IllegalArgumentException("Unknown workload: " + name);
+		}
+	}
+
+
+	/**
+	 * Creates a workload using SPINWorkloadGenerator with scale * 10 instances.
+	 * @param scale  the scale factor
+	 * @return a new Model
+	 */
+	public static Model createGenerated(int scale) {
+		SPINWorkloadGenerator generator = new SPINWorkloadGenerator();
+		generator.setSeed(SEED);
+		generator.setInstances(scale * 10);
+		return generator.generate();
+	}
+
+
+	/**
+	 * Creates a chain of depth + 1 classes V0 (the root) to V[depth], with the instances
+	 * all at the leaf class V[depth] and the constraints distributed over all levels.
+	 * The constraints are ASK queries, CONSTRUCT queries and calls of the template
+	 * bench:ForbiddenValue in turns, each attached with its own sub-property of spin:constraint.
+	 * Each instance has a bench:value between 0 and 99, and constraint number i is violated by
+	 * the instances that have the value i (modulo 100), i.e. by about 1% of the instances.
+	 * @param instances  the number of instances
+	 * @param constraints  the number of constraints
+	 * @param depth  the depth of the class hierarchy
+	 * @return a new Model
+	 */
+	public static Model createConstraints(int instances, int constraints, int depth) {
+		Model model = load("constraints.ttl", BENCH_NS);
+		Property askConstraint = model.getProperty(ASK_CONSTRAINT);
+		Property constructConstraint = model.getProperty(CONSTRUCT_CONSTRAINT);
+		Property templateConstraint = model.getProperty(TEMPLATE_CONSTRAINT);
+		Property forbidden = model.getProperty(BENCH_NS + "forbidden");
+		Resource forbiddenValue = model.getResource(BENCH_NS + "ForbiddenValue");
+		Property value = model.getProperty(BENCH_NS + "value");
+		Resource[] classes = new Resource[depth + 1];
+		for(int level = 0; level <= depth; level++) {
+			classes[level] = model.createResource(BENCH_NS + "V" + level, OWL.Class);
+			if(level > 0) {
+				classes[level].addProperty(RDFS.subClassOf, classes[level - 1]);
+			}
+		}
+		for(int i = 0; i < constraints; i++) {
+			Resource cls = classes[i % classes.length];
+			int v = i % 100;
+			if(i % 3 == 0) {
+				Resource ask = model.createResource(SP.Ask);
+				ask.addProperty(RDFS.comment, "Value must not be " + v);
+				ask.addProperty(SP.text, "ASK WHERE { ?this bench:value ?value . FILTER (?value = " + v + ") }");
+				cls.addProperty(askConstraint, ask);
+			}
+			else if(i % 3 == 1) {
+				Resource construct = model.createResource(SP.Construct);
+				construct.addProperty(SP.text, "CONSTRUCT { _:cv a spin:ConstraintViolation ; spin:violationRoot ?this ; " +
+						"spin:violationPath bench:value ; rdfs:label \"Value must not be " + v + "\" } " +
+						"WHERE { ?this bench:value ?value . FILTER (?value = " + v + ") }");
+				cls.addProperty(constructConstraint, construct);
+			}
+			else {
+				Resource call = model.createResource(forbiddenValue);
+				call.addLiteral(forbidden, (long) v);
+				cls.addProperty(templateConstraint, call);
+			}
+		}
+		Resource leaf = classes[depth];
+		for(int i = 0; i < instances; i++) {
+			Resource instance = model.createResource(BENCH_NS + "v" + i, leaf);
+			instance.addLiteral(value, (long) (i % 100));
+		}
+		return model;
+	}
+
+
+	public static Model createHierarchy(int depth) {
+		Model model = JenaUtil.createDefaultModel();
+		model.setNsPrefix("bench", BENCH_NS);
+		Property value = model.createProperty(BENCH_NS + "value");
+		Resource superClass = null;
+		int index = 0;
+		for(int level = 0; level <= depth; level++) {
+			Resource cls = model.createResource(BENCH_NS + "H" + level);
+			cls.addProperty(RDF.type, OWL.Class);
+			if(superClass != null) {
+				cls.addProperty(RDFS.subClassOf, superClass);
+			}
+			addRule(cls, "CONSTRUCT { ?this bench:reached bench:H" + level + " } " +
+					"WHERE { ?this bench:value ?value . FILTER (?value >= " + level + ") }");
+			for(int i = 0; i < 5; i++) {
+				Resource instance = model.createResource(BENCH_NS + "h" + index++);
+				instance.addProperty(RDF.type, cls);
+				instance.addLiteral(value, (long) level + i);
+			}
+			superClass = cls;
+		}
+		return model;
+	}
+
+
+	public static Model createKennedys(int families) {
+		Model model = load("kennedys.ttl", KENNEDYS_NS);
+		Resource person = model.getResource(KENNEDYS_NS + "Person");
+		Resource male = model.getResource(KENNEDYS_NS + "male");
+		Resource female = model.getResource(KENNEDYS_NS + "female");
+		Property birthYear = model.getProperty(KENNEDYS_NS + "birthYear");
+		Property firstName = model.getProperty(KENNEDYS_NS + "firstName");
+		Property gender = model.getProperty(KENNEDYS_NS + "gender");
+		Property lastName = model.getProperty(KENNEDYS_NS + "lastName");
+		Property parent = model.getProperty(KENNEDYS_NS + "parent");
+		Property spouse = model.getProperty(KENNEDYS_NS + "spouse");
+		for(int f = 0; f < families; f++) {
+			String name = "Family" + f;
+			int year = 1900 + f % 30;
+			Resource father = createPerson(model, person, "f" + f + "_father", firstName, lastName, "Joseph", name, gender, male, birthYear, year);
+			Resource mother = createPerson(model, person, "f" + f + "_mother", firstName, lastName, "Rose", name, gender, female, birthYear, year + 2);
+			father.addProperty(spouse, mother);
+			for(int c = 0; c < 3; c++) {
+				boolean son = c % 2 == 0;
+				Resource child = createPerson(model, person, "f" + f + "_child" + c, firstName, lastName, son ? "John" : "Eunice", name,
+						gender, son ? male : female, birthYear, year + 25 + c);
+				child.addProperty(parent, father);
+				child.addProperty(parent, mother);
+				Resource inLaw = createPerson(model, person, "f" + f + "_inlaw" + c, firstName, lastName, son ? "Jacqueline" : "Sargent", "InLaw" + f,
+						gender, son ? female : male, birthYear, year + 26 + c);
+				child.addProperty(spouse, inLaw);
+				for(int g = 0; g < 2; g++) {
+					Resource grandChild = createPerson(model, person, "f" + f + "_grandchild" + c + "_" + g, firstName, lastName, g == 0 ? "Robert" : "Kathleen", name,
+							gender, g == 0 ? male : female, birthYear, year + 50 + c + g);
+					grandChild.addProperty(parent, child);
+					grandChild.addProperty(parent, inLaw);
+				}
+			}
+		}
+		return model;
+	}
+
+
+	public static Model createOWLRL(int scale) {
+		Model model = load("owlrl.ttl", BENCH_NS);
+		model.setNsPrefix("bench", BENCH_NS);
+		Random random = new Random(SEED);
+
+		// A class tree with branching factor 3 and depth 3, plus an equivalent class
+		Resource root = model.createResource(BENCH_NS + "Entity", OWL.Class);
+		Resource[] leaves = createClassTree(model, root, "C", 3, 3);
+		model.createResource(BENCH_NS + "Thing2", OWL.Class).addProperty(OWL.equivalentClass, root);
+
+		Property partOf = model.createProperty(BENCH_NS + "partOf");
+		partOf.addProperty(RDF.type, OWL.TransitiveProperty);
+		Property hasPart = model.createProperty(BENCH_NS + "hasPart");
+		hasPart.addProperty(OWL.inverseOf, partOf);
+		Property adjacentTo = model.createProperty(BENCH_NS + "adjacentTo");
+		adjacentTo.addProperty(RDF.type, OWL.SymmetricProperty);
+		Property relatedTo = model.createProperty(BENCH_NS + "relatedTo");
+		relatedTo.addProperty(RDFS.domain, root);
+		relatedTo.addProperty(RDFS.range, root);
+		Property nearTo = model.createProperty(BENCH_NS + "nearTo");
+		nearTo.addProperty(RDFS.subPropertyOf, relatedTo);
+		Property locatedIn = model.createProperty(BENCH_NS + "locatedIn");
+		locatedIn.addProperty(RDFS.subPropertyOf, nearTo);
+
+		int count = scale * 20;
+		Resource[] individuals = new Resource[count];
+		for(int i = 0; i < count; i++) {
+			individuals[i] = model.createResource(BENCH_NS + "i" + i, leaves[random.nextInt(leaves.length)]);
+			if(i > 0) {
+				individuals[i].addProperty(partOf, individuals[(i - 1) / 4]);
+				individuals[i].addProperty(adjacentTo, individuals[random.nextInt(i)]);
+				individuals[i].addProperty(locatedIn, individuals[random.nextInt(i)]);
+			}
+			if(i % 50 == 49) {
+				individuals[i].addProperty(OWL.sameAs, individuals[random.nextInt(i)]);
+			}
+		}
+		return model;
+	}
+
+
+	private static void addRule(Resource cls, String text) {
+		Resource rule = cls.getModel().createResource(SP.Construct);
+		rule.addProperty(SP.text, text);
+		cls.addProperty(SPIN.rule, rule);
+	}
+
+
+	private static Resource[] createClassTree(Model model, Resource root, String prefix, int branching, int depth) {
+		if(depth == 0) {
+			return new Resource[] { root };
+		}
+		Resource[] results = new Resource[(int) Math.pow(branching, depth)];
+		int index = 0;
+		for(int i = 0; i < branching; i++) {
+			Resource sub = model.createResource(BENCH_NS + prefix + i, OWL.Class);
+			sub.addProperty(RDFS.subClassOf, root);
+			for(Resource leaf : createClassTree(model, sub, prefix + i + "_", branching, depth - 1)) {
+				results[index++] = leaf;
+			}
+		}
+		return results;
+	}
+
+
+	private static Resource createPerson(Model model, Resource type, String localName,
+			Property firstNameProperty, Property lastNameProperty, String firstName, String lastName,
+			Property genderProperty, Resource gender, Property birthYearProperty, int birthYear) {
+		Resource person = model.createResource(BENCH_NS + localName, type);
+		person.addProperty(firstNameProperty, firstName);
+		person.addProperty(lastNameProperty, lastName);
+		person.addProperty(genderProperty, gender);
+		person.addLiteral(birthYearProperty, (long) birthYear);
+		return person;
+	}
+
+
+	/**
+	 * Loads a Turtle file that is stored next to this class.
+	 * @param fileName  the name of the file
+	 * @param baseURI  the base URI
+	 * @return a new Model
+	 */
+	public static Model load(String fileName, String baseURI) {
+		Model model = JenaUtil.createDefaultModel();
+		try(InputStream is = SyntheticWorkloads.class.getResourceAsStream(fileName)) {
+			if(is == null) {
+				throw new IllegalArgumentException("Missing resource " + fileName);
+			}
+			model.read(is, baseURI, "TTL");
+		}
+		catch(IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+		return model;
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.statistics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event covering a single call of a SPIN function.
+ * These are typically very frequent, so they do not record stack traces
+ * and should be enabled with a threshold.
+ */
+@Name("org.spinrdf.FunctionCall")
+@Label("SPIN Function Call")
+@Category({ "SPIN", "Functions" })
+@Description("Execution of a SPIN function")
+@StackTrace(false)
+class FunctionCallEvent extends SPINExecutionEvent {
+
+	@Label("Failed")
+	boolean failed;
+}
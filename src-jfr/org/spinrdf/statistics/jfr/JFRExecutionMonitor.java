@@ -0,0 +1,148 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.statistics.jfr;
+
+import org.apache.jena.graph.Node;
+import org.spinrdf.statistics.SPINExecutionMonitor;
+
+/**
+ * A SPINExecutionMonitor that emits Java Flight Recorder events.
+ * This requires a JVM with the jdk.jfr module and is therefore only
+ * compiled with the jfr profile of the build.  Activate it using
+ *
+ * <code>
+ * 	JFRExecutionMonitor.install();
+ * </code>
+ *
+ * and then start a recording that enables the org.spinrdf.* events.
+ * While no recording is active, each begin method only checks whether
+ * its event type is enabled.
+ */
+public class JFRExecutionMonitor extends SPINExecutionMonitor {
+
+	/**
+	 * Installs a new JFRExecutionMonitor as the SPINExecutionMonitor singleton.
+	 */
+	public static void install() {
+		SPINExecutionMonitor.set(new JFRExecutionMonitor());
+	}
+
+
+	@Override
+	public Object beginConstraint(String label, Node cls) {
+		ConstraintExecutionEvent event = new ConstraintExecutionEvent();
+		if(!event.isEnabled()) {
+			return null;
+		}
+		event.label = label;
+		event.cls = cls != null ? cls.toString() : null;
+		event.begin();
+		return event;
+	}
+
+
+	@Override
+	public Object beginConstructor(String label, Node instance) {
+		ConstructorExecutionEvent event = new ConstructorExecutionEvent();
+		if(!event.isEnabled()) {
+			return null;
+		}
+		event.label = label;
+		event.instance = instance != null ? instance.toString() : null;
+		event.begin();
+		return event;
+	}
+
+
+	@Override
+	public Object beginFunction(String uri) {
+		FunctionCallEvent event = new FunctionCallEvent();
+		if(!event.isEnabled()) {
+			return null;
+		}
+		event.label = uri;
+		event.begin();
+		return event;
+	}
+
+
+	@Override
+	public Object beginRule(String label, Node cls, int iteration) {
+		RuleExecutionEvent event = new RuleExecutionEvent();
+		if(!event.isEnabled()) {
+			return null;
+		}
+		event.label = label;
+		event.cls = cls.toString();
+		event.iteration = iteration;
+		event.begin();
+		return event;
+	}
+
+
+	@Override
+	public void endConstraint(Object token, int violationCount) {
+		if(token != null) {
+			ConstraintExecutionEvent event = (ConstraintExecutionEvent) token;
+			event.end();
+			if(event.shouldCommit()) {
+				event.violationCount = violationCount;
+				event.commit();
+			}
+		}
+	}
+
+
+	@Override
+	public void endConstructor(Object token, int tripleCount) {
+		if(token != null) {
+			ConstructorExecutionEvent event = (ConstructorExecutionEvent) token;
+			event.end();
+			if(event.shouldCommit()) {
+				event.tripleCount = tripleCount;
+				event.commit();
+			}
+		}
+	}
+
+
+	@Override
+	public void endFunction(Object token, boolean failed) {
+		if(token != null) {
+			FunctionCallEvent event = (FunctionCallEvent) token;
+			event.end();
+			if(event.shouldCommit()) {
+				event.failed = failed;
+				event.commit();
+			}
+		}
+	}
+
+
+	@Override
+	public void endRule(Object token, int tripleCount) {
+		if(token != null) {
+			RuleExecutionEvent event = (RuleExecutionEvent) token;
+			event.end();
+			if(event.shouldCommit()) {
+				event.tripleCount = tripleCount;
+				event.commit();
+			}
+		}
+	}
+}
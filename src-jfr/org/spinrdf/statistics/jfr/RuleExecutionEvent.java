@@ -0,0 +1,43 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.statistics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event covering the execution of a single rule on the instances of a class.
+ */
+@Name("org.spinrdf.RuleExecution")
+@Label("SPIN Rule Execution")
+@Category({ "SPIN", "Inferences" })
+@Description("Execution of a SPIN rule on the instances of a class")
+class RuleExecutionEvent extends SPINExecutionEvent {
+
+	@Label("Class")
+	String cls;
+
+	@Label("Iteration")
+	int iteration;
+
+	@Label("Triple Count")
+	@Description("The number of triples produced by the rule")
+	int tripleCount;
+}
@@ -101,7 +101,6 @@ import org.spinrdf.model.update.*;
 import org.spinrdf.system.ExtraPrefixes;
 import org.spinrdf.system.SPINPreferences;
 import org.spinrdf.util.JenaDatatypes;
-import org.spinrdf.util.JenaUtil;
 import org.spinrdf.util.SPINExpressions;
 import org.spinrdf.util.SPTextUtil;
 import org.spinrdf.vocabulary.SP;
@@ -177,26 +176,6 @@ public class ARQ2SPIN {
 	public ARQ2SPIN(Model model, boolean addPrefixes) {
 		this.model = model;
 		this.addPrefixes = addPrefixes;
-		
-		// Pre-populate with named variables
-		JenaUtil.setGraphReadOptimization(true);
-		try {
-			StmtIterator it = model.listStatements(null, SP.varName, (RDFNode)null);
-			while(it.hasNext()) {
-				Resource variable = it.nextStatement().getSubject();
-				if(variable.isURIResource()) {
-					if(SPINPreferences.get().isCreateURIVariables() ||
-							variable.getURI().startsWith(SP.NS + "arg") ||
-							SPIN.NS.equals(variable.getNameSpace())) {
-						Variable var = variable.as(Variable.class);
-						String name = var.getName();
-						var2Resource.put(name, var);
-					}
-				}
-			}
-		} finally {
-			JenaUtil.setGraphReadOptimization(false);
-		}
 	}
 	
 	
@@ -1078,6 +1057,11 @@ public class ARQ2SPIN {
 		if(old != null) {
 			return old;
 		}
+		Resource named = getNamedVariable(name);
+		if(named != null) {
+			var2Resource.put(name, named);
+			return named;
+		}
 		else if(SPINPreferences.get().isCreateURIVariables()) {
 			String uri = varNamespace + "_" + name;
 			Resource var = model.createResource(uri, SP.Variable);
@@ -1095,6 +1079,20 @@ public class ARQ2SPIN {
 	}
 	
 
+	// Looks up an existing URI variable through the shared index of the Model's graph
+	private Resource getNamedVariable(String name) {
+		Node node = SPINVariableIndex.get().getVariable(model.getGraph(), name);
+		if(node != null) {
+			if(SPINPreferences.get().isCreateURIVariables() ||
+					node.getURI().startsWith(SP.NS + "arg") ||
+					SPIN.NS.equals(node.getNameSpace())) {
+				return model.asRDFNode(node).as(Variable.class);
+			}
+		}
+		return null;
+	}
+	
+
 	/**
 	 * Gets the (optional) variable namespace.
 	 * @return the variable namespace
@@ -1110,6 +1108,7 @@ public class ARQ2SPIN {
 	 * @param str  the partial query string
 	 * @param model  the Model to operate on
 	 * @return the new SPIN Query
+	 * @see ARQ2SPINSession
 	 */
 	public static org.spinrdf.model.Query parseQuery(String str, Model model) {
 		Query arq = ARQFactory.get().createQuery(model, str);
@@ -1124,6 +1123,7 @@ public class ARQ2SPIN {
 	 * @param str  the partial UPDATE string
 	 * @param model  the Model to operate on
 	 * @return the new SPIN Query
+	 * @see ARQ2SPINSession
 	 */
 	public static org.spinrdf.model.update.Update parseUpdate(String str, Model model) {
 		String prefixes = ARQFactory.get().createPrefixDeclarations(model);
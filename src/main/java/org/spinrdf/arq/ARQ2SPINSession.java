@@ -0,0 +1,152 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.arq;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.update.UpdateFactory;
+import org.apache.jena.update.UpdateRequest;
+import org.spinrdf.model.update.Update;
+import org.spinrdf.util.SPINExpressions;
+
+/**
+ * Converts many SPARQL strings into SPIN RDF in the same Model, e.g. when
+ * importing a library of rules.
+ *
+ * The static methods ARQ2SPIN.parseQuery, ARQ2SPIN.parseUpdate and
+ * SPINExpressions.parseExpression create a new ARQ2SPIN and collect the
+ * prefixes of the Model for each call.  A session does this only once, and
+ * reuses the variables that it has created across all conversions.
+ *
+ * A session is not thread-safe.  Changes to the prefixes of the Model after
+ * the first conversion are not seen by the session.
+ */
+public class ARQ2SPINSession {
+
+	private ARQ2SPIN arq2SPIN;
+
+	private Model model;
+
+	private PrefixMapping prefixMapping;
+
+	private String prefixDeclarations;
+
+
+	/**
+	 * Creates a new session for a given Model,
+	 * equivalent with <code>ARQ2SPINSession(model, true)</code>.
+	 * @param model  the Model to create the SPIN RDF in
+	 */
+	public ARQ2SPINSession(Model model) {
+		this(model, true);
+	}
+
+
+	/**
+	 * Creates a new session for a given Model.
+	 * @param model  the Model to create the SPIN RDF in
+	 * @param addPrefixes  see ARQ2SPIN(Model, boolean)
+	 */
+	public ARQ2SPINSession(Model model, boolean addPrefixes) {
+		this.arq2SPIN = new ARQ2SPIN(model, addPrefixes);
+		this.model = model;
+	}
+
+
+	/**
+	 * Gets the ARQ2SPIN engine used by this session, e.g. to convert
+	 * Query objects that have already been parsed.
+	 * @return the ARQ2SPIN
+	 */
+	public ARQ2SPIN getARQ2SPIN() {
+		return arq2SPIN;
+	}
+
+
+	public Model getModel() {
+		return model;
+	}
+
+
+	/**
+	 * Parses a given partial expression string and converts it into SPIN RDF.
+	 * @param str  the expression string
+	 * @return the expression, e.g. a Variable or FunctionCall
+	 */
+	public RDFNode parseExpression(String str) {
+		// The Query may modify the PrefixMapping
+		PrefixMapping pm = new PrefixMappingImpl().setNsPrefixes(getPrefixMapping());
+		return arq2SPIN.createExpression(SPINExpressions.parseARQExpression(str, pm));
+	}
+
+
+	/**
+	 * Parses a collection of partial query strings and converts them into SPIN RDF.
+	 * @param strs  the partial query strings
+	 * @return the new SPIN Queries, in the order of strs
+	 */
+	public List<org.spinrdf.model.Query> parseQueries(Collection<String> strs) {
+		List<org.spinrdf.model.Query> results = new ArrayList<org.spinrdf.model.Query>(strs.size());
+		for(String str : strs) {
+			results.add(parseQuery(str));
+		}
+		return results;
+	}
+
+
+	/**
+	 * Parses a given partial query string and converts it into SPIN RDF.
+	 * @param str  the partial query string
+	 * @return the new SPIN Query
+	 */
+	public org.spinrdf.model.Query parseQuery(String str) {
+		// The Query may modify the PrefixMapping
+		PrefixMapping pm = new PrefixMappingImpl().setNsPrefixes(getPrefixMapping());
+		Query arq = ARQFactory.get().doCreateQuery(str, pm);
+		return arq2SPIN.createQuery(arq, null);
+	}
+
+
+	private PrefixMapping getPrefixMapping() {
+		if(prefixMapping == null) {
+			prefixMapping = ARQFactory.get().createPrefixMapping(model);
+		}
+		return prefixMapping;
+	}
+
+
+	/**
+	 * Parses a given partial UPDATE string and converts it into SPIN RDF.
+	 * @param str  the partial UPDATE string
+	 * @return the new SPIN Update
+	 */
+	public Update parseUpdate(String str) {
+		if(prefixDeclarations == null) {
+			prefixDeclarations = ARQFactory.get().createPrefixDeclarations(model);
+		}
+		UpdateRequest request = UpdateFactory.create(prefixDeclarations + str);
+		return arq2SPIN.createUpdate(request.getOperations().get(0), null);
+	}
+}
@@ -19,10 +19,12 @@ package org.spinrdf.arq;
 
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.http.auth.AuthScope ;
 import org.apache.http.auth.Credentials ;
@@ -46,6 +48,8 @@ import org.apache.jena.shared.PrefixMapping;
 import org.apache.jena.shared.impl.PrefixMappingImpl;
 import org.apache.jena.sparql.core.DatasetImpl;
 import org.apache.jena.sparql.engine.http.QueryEngineHTTP;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprVar;
 import org.apache.jena.sparql.syntax.ElementNamedGraph;
 import org.apache.jena.sparql.syntax.ElementVisitorBase;
 import org.apache.jena.sparql.syntax.ElementWalker;
@@ -70,6 +74,17 @@ public class ARQFactory {
 	 */
 	private Map<Node,String> node2String = new ConcurrentHashMap<Node,String>();
 	
+	/**
+	 * Caches natively evaluable ARQ expressions for each SPIN expression Node.
+	 */
+	private Map<Node,Expr> node2Expr = new ConcurrentHashMap<Node,Expr>();
+	
+	/**
+	 * Marks entries in node2Expr that cannot be evaluated natively.
+	 * Only compared by identity.
+	 */
+	private static final Expr NON_NATIVE_EXPR = new ExprVar("nonNative");
+	
 	/**
 	 * Caches Jena query objects for each SPIN Command or expression String.
 	 */
@@ -82,6 +97,13 @@ public class ARQFactory {
 	
 	private boolean useCaches = true;
 	
+	// Subclasses may customize their QueryExecutions, and need to switch this on
+	private boolean useNativeEvaluation = getClass() == ARQFactory.class;
+	
+	private LongAdder cacheLookups = new LongAdder();
+	
+	private LongAdder cacheMisses = new LongAdder();
+	
 
 	/**
 	 * Gets the singleton instance of this class.
@@ -123,14 +145,50 @@ public class ARQFactory {
 
 	/**
 	 * Programmatically resets any cached queries.
+	 * This does not reset the hit and miss counts.
 	 */
 	public void clearCaches() {
 		node2String.clear();
+		node2Expr.clear();
 		string2Query.clear();
 		string2Update.clear();
 	}
 	
 
+	/**
+	 * Gets the number of lookups in the query and expression caches that
+	 * found an existing entry, since this ARQFactory was created.
+	 * @return the number of cache hits
+	 */
+	public long getCacheHitCount() {
+		return cacheLookups.sum() - cacheMisses.sum();
+	}
+	
+	
+	/**
+	 * Gets the number of lookups in the query and expression caches that
+	 * did not find an existing entry, since this ARQFactory was created.
+	 * @return the number of cache misses
+	 */
+	public long getCacheMissCount() {
+		return cacheMisses.sum();
+	}
+	
+	
+	/**
+	 * Gets the current number of entries of each cache, with the cache names as keys.
+	 * @return the cache sizes
+	 */
+	public Map<String,Integer> getCacheSizes() {
+		Map<String,Integer> results = new LinkedHashMap<String,Integer>();
+		results.put("node2String", node2String.size());
+		results.put("node2Expr", node2Expr.size());
+		results.put("string2Query", string2Query.size());
+		results.put("string2Update", string2Update.size());
+		return results;
+	}
+	
+
 	/**
 	 * Converts a given SPIN Command (Query or Update) into a parsable String.
 	 * This method is the recommended way of doing this task as it uses a cache
@@ -139,8 +197,10 @@ public class ARQFactory {
 	 * @return the String
 	 */
 	public String createCommandString(org.spinrdf.model.Command spinCommand) {
+		cacheLookups.increment();
 		String result = node2String.get(spinCommand.asNode());
 		if(result == null) {
+			cacheMisses.increment();
 			String text = ARQ2SPIN.getTextOnly(spinCommand);
 			if(text != null) {
 				result = ARQFactory.get().createPrefixDeclarations(spinCommand.getModel()) + text;
@@ -161,8 +221,10 @@ public class ARQFactory {
 	
 	
 	public String createExpressionString(RDFNode expression) {
+		cacheLookups.increment();
 		String result = node2String.get(expression.asNode());
 		if(result == null) {
+			cacheMisses.increment();
 			StringPrintContext p = new StringPrintContext();
 			p.setUsePrefixes(false);
 			SPINExpressions.printExpressionString(p, expression, false, false, expression.getModel().getGraph().getPrefixMapping());
@@ -182,8 +244,10 @@ public class ARQFactory {
 	
 	
 	public Query createExpressionQuery(String expression) {
+		cacheLookups.increment();
 		Query result = string2Query.get(expression);
 		if(result == null) {
+			cacheMisses.increment();
 			String queryString = "SELECT (" + expression + ") WHERE {}";
 			result = doCreateQuery(queryString);
 			if(useCaches) {
@@ -194,6 +258,35 @@ public class ARQFactory {
 	}
 	
 	
+	/**
+	 * Converts a SPIN expression into an ARQ Expr that can be evaluated directly
+	 * against a Binding, without the need to execute a query.
+	 * The result is cached for each expression Node.
+	 * @param expression  the SPIN expression
+	 * @return the Expr or null if the expression needs a query context,
+	 *         e.g. because it uses EXISTS or aggregations
+	 */
+	public Expr createNativeExpression(RDFNode expression) {
+		cacheLookups.increment();
+		Expr result = node2Expr.get(expression.asNode());
+		if(result == null) {
+			cacheMisses.increment();
+			Query query = createExpressionQuery(expression);
+			result = NON_NATIVE_EXPR;
+			if(query.getProjectVars().size() == 1) {
+				Expr expr = query.getProject().getExpr(query.getProjectVars().get(0));
+				if(expr != null && SPINExpressionFunctionBody.isNative(expr)) {
+					result = expr;
+				}
+			}
+			if(useCaches) {
+				node2Expr.put(expression.asNode(), result);
+			}
+		}
+		return result != NON_NATIVE_EXPR ? result : null;
+	}
+	
+	
 	/**
 	 * Same as <code>createPrefixDeclarations(model, true)</code>.
 	 * @param model  the Model to create prefix declarations for
@@ -249,8 +342,10 @@ public class ARQFactory {
 	
 	
 	public Query createQuery(String queryString) {
+		cacheLookups.increment();
 		Query result = string2Query.get(queryString);
 		if(result == null) {
+			cacheMisses.increment();
 			result = doCreateQuery(queryString);
 			if(useCaches) {
 				string2Query.put(queryString, result);
@@ -291,6 +386,29 @@ public class ARQFactory {
 	 * @return the Query
 	 */
 	public Query createQuery(Model model, String partialQuery) {
+		return doCreateQuery(partialQuery, createPrefixMapping(model));
+	}
+	
+	
+	/**
+	 * Creates a new Query from a partial query (possibly lacking
+	 * PREFIX declarations), using a given PrefixMapping.
+	 * @param prefixMapping  the PrefixMapping (this object may be modified)
+	 * @param partialQuery  the (partial) query string
+	 * @return the Query
+	 */
+	public Query createQuery(PrefixMapping prefixMapping, String partialQuery) {
+		return doCreateQuery(partialQuery, prefixMapping);
+	}
+	
+	
+	/**
+	 * Creates a PrefixMapping with the prefixes of a given Model, including the
+	 * extra prefixes, as used by <code>createQuery(Model, String)</code>.
+	 * @param model  the Model to get the prefixes from
+	 * @return a new PrefixMapping
+	 */
+	public PrefixMapping createPrefixMapping(Model model) {
 		PrefixMapping pm = new PrefixMappingImpl();
 	    String defaultNamespace = JenaUtil.getNsPrefixURI(model, "");
 	    if(defaultNamespace != null) {
@@ -309,7 +427,7 @@ public class ARQFactory {
 	        	pm.setNsPrefix(prefix, namespace);
 	        }
 	    }
-		return doCreateQuery(partialQuery, pm);
+		return pm;
 	}
 
 	
@@ -449,8 +567,10 @@ public class ARQFactory {
     }
 	                                          
 	public UpdateRequest createUpdateRequest(String parsableString) {
+		cacheLookups.increment();
 		UpdateRequest result = string2Update.get(parsableString);
 		if(result == null) {
+			cacheMisses.increment();
 			result = UpdateFactory.create(parsableString);
 			if(useCaches) {
 				string2Update.put(parsableString, result);
@@ -515,6 +635,11 @@ public class ARQFactory {
 		return useCaches;
 	}
 
+	
+	public boolean isUsingNativeEvaluation() {
+		return useNativeEvaluation;
+	}
+
 
 	private static void perhapsAppend(StringBuffer queryString, String prefix, String namespace, Model model) {
 		if(model.getNsPrefixURI(prefix) == null && namespace != null) {
@@ -537,4 +662,18 @@ public class ARQFactory {
 	public void setUseCaches(boolean value) {
 		this.useCaches = value;
 	}
+
+	
+	/**
+	 * Tells the ARQFactory whether SPIN expressions and the bodies of SPIN functions may be
+	 * evaluated directly within the ARQ engine, instead of through a QueryExecution created by
+	 * <code>createQueryExecution</code>.  The direct evaluation bypasses
+	 * <code>adjustQueryExecution</code> and <code>getDataset</code>, and is therefore only on
+	 * by default if this is not a subclass of ARQFactory.  Subclasses that do not rely on
+	 * customized QueryExecutions may switch it on.
+	 * @param value  false to always use QueryExecutions
+	 */
+	public void setUseNativeEvaluation(boolean value) {
+		this.useNativeEvaluation = value;
+	}
 }
@@ -30,6 +30,7 @@ import org.apache.jena.sparql.function.Function;
 import org.apache.jena.sparql.function.FunctionEnv;
 import org.apache.jena.sparql.sse.SSE;
 import org.apache.jena.sparql.util.FmtUtils;
+import org.spinrdf.statistics.SPINFunctionMetrics;
 import org.spinrdf.statistics.SPINStatistics;
 import org.spinrdf.statistics.SPINStatisticsManager;
 
@@ -63,22 +64,10 @@ public abstract class AbstractFunction implements Function {
             }
         }
 		if(SPINStatisticsManager.get().isRecording() && SPINStatisticsManager.get().isRecordingNativeFunctions()) {
-			StringBuffer sb = new StringBuffer();
-			sb.append("SPARQL Function ");
-			sb.append(SSE.format(NodeFactory.createURI(uri), env.getActiveGraph().getPrefixMapping()));
-			sb.append("(");
-			for(int i = 0; i < nodes.length; i++) {
-				if(i > 0) {
-					sb.append(", ");
-				}
-				if(nodes[i] == null) {
-					sb.append("?arg" + (i + 1));
-				}
-				else {
-					sb.append(SSE.format(nodes[i], env.getActiveGraph().getPrefixMapping()));
-				}
+			if(SPINStatisticsManager.get().isAggregatingFunctions()) {
+				return execAggregated(nodes, uri, env);
 			}
-			sb.append(")");
+			StringBuffer sb = createLabel(nodes, uri, env);
 			long startTime = System.currentTimeMillis();
 			NodeValue result;
 			try {
@@ -105,5 +94,43 @@ public abstract class AbstractFunction implements Function {
 	}
 	
 	
+	private StringBuffer createLabel(Node[] nodes, String uri, FunctionEnv env) {
+		StringBuffer sb = new StringBuffer();
+		sb.append("SPARQL Function ");
+		sb.append(SSE.format(NodeFactory.createURI(uri), env.getActiveGraph().getPrefixMapping()));
+		sb.append("(");
+		for(int i = 0; i < nodes.length; i++) {
+			if(i > 0) {
+				sb.append(", ");
+			}
+			if(nodes[i] == null) {
+				sb.append("?arg" + (i + 1));
+			}
+			else {
+				sb.append(SSE.format(nodes[i], env.getActiveGraph().getPrefixMapping()));
+			}
+		}
+		sb.append(")");
+		return sb;
+	}
+	
+	
+	/**
+	 * Executes the function and only updates the SPINFunctionMetrics of the function.
+	 */
+	private NodeValue execAggregated(final Node[] nodes, final String uri, final FunctionEnv env) {
+		return SPINFunctionMetrics.execAggregated(uri, "(Native built-in function)", env.getActiveGraph().getPrefixMapping(), new SPINFunctionMetrics.Call() {
+			
+			public NodeValue exec() {
+				return AbstractFunction.this.exec(nodes, env);
+			}
+			
+			public StringBuffer createLabel() {
+				return AbstractFunction.this.createLabel(nodes, uri, env);
+			}
+		});
+	}
+	
+	
 	protected abstract NodeValue exec(Node[] nodes, FunctionEnv env);
 }
@@ -0,0 +1,98 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.arq;
+
+import java.util.Map;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.engine.iterator.QueryIter1;
+import org.apache.jena.sparql.serializer.SerializationContext;
+
+
+/**
+ * A QueryIterator produced by a SPIN Magic Property that has been executed
+ * as a compiled plan (instead of a nested QueryExecution).
+ * 
+ * This maps the variables of the body query onto the variables of the
+ * surrounding triple pattern, and adds them to the parent binding.
+ */
+class PFunctionPlanIterator extends QueryIter1 {
+	
+	private Binding parentBinding;
+	
+	private Var[] bodyVars;
+	
+	private Var[] outerVars;
+	
+	
+	PFunctionPlanIterator(QueryIterator input, Map<String,Var> vars, Binding parentBinding, ExecutionContext execCxt) {
+		super(input, execCxt);
+		this.parentBinding = parentBinding;
+		this.bodyVars = new Var[vars.size()];
+		this.outerVars = new Var[vars.size()];
+		int i = 0;
+		for(String varName : vars.keySet()) {
+			bodyVars[i] = Var.alloc(varName);
+			outerVars[i] = vars.get(varName);
+			i++;
+		}
+	}
+
+
+	@Override
+	protected boolean hasNextBinding() {
+		return getInput().hasNext();
+	}
+
+
+	@Override
+	protected Binding moveToNextBinding() {
+		Binding s = getInput().nextBinding();
+		BindingMap result = BindingFactory.create(parentBinding);
+		for(int i = 0; i < bodyVars.length; i++) {
+			Node node = s.get(bodyVars[i]);
+			if(node != null) {
+				result.add(outerVars[i], node);
+			}
+		}
+		return result;
+	}
+
+
+	@Override
+	protected void closeSubIterator() {
+	}
+
+
+	@Override
+	protected void requestSubCancel() {
+	}
+
+
+	@Override
+	protected void details(IndentedWriter out, SerializationContext sCxt) {
+		out.print("PFunctionPlan");
+	}
+}
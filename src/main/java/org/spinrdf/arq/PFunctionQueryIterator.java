@@ -96,6 +96,6 @@ class PFunctionQueryIterator extends QueryIteratorBase {
 
 	@Override
 	protected void requestCancel() {
-		// TODO: what needs to happen here?
+		qexec.abort();
 	}
 }
@@ -20,12 +20,15 @@ package org.spinrdf.arq;
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.jena.atlas.io.IndentedWriter;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QuerySolution;
@@ -34,22 +37,38 @@ import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.DatasetImpl;
 import org.apache.jena.sparql.core.Substitute;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.engine.binding.BindingUtils;
 import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprEvalException;
 import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.expr.NodeValue;
 import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.function.FunctionEnvBase;
 import org.apache.jena.sparql.serializer.SerializationContext;
 import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementBind;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementFilter;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementPathBlock;
+import org.apache.jena.sparql.syntax.ElementTriplesBlock;
+import org.apache.jena.sparql.util.Context;
 import org.apache.jena.sparql.util.ExprUtils;
 import org.apache.jena.sparql.util.FmtUtils;
 import org.spinrdf.model.Argument;
 import org.spinrdf.model.Function;
 import org.spinrdf.model.Query;
+import org.spinrdf.statistics.SPINExecutionMonitor;
+import org.spinrdf.statistics.SPINFunctionMetrics;
 import org.spinrdf.statistics.SPINStatistics;
 import org.spinrdf.statistics.SPINStatisticsManager;
 import org.spinrdf.system.SPINArgumentChecker;
@@ -64,14 +83,24 @@ import org.spinrdf.vocabulary.SPIN;
  */
 public class SPINARQFunction implements org.apache.jena.sparql.function.Function, SPINFunctionFactory {
 	
+	private static final Var THIS_VAR = Var.alloc(SPIN.THIS_VAR_NAME);
+	
+	private static final Var BATCH_ROW_VAR = Var.alloc("spinBatchRow_");
+	
 	private org.apache.jena.query.Query arqQuery;
 	
 	private List<String> argNames = new ArrayList<String>();
 	
+	private Var[] argVars;
+	
 	private List<Node> argNodes = new ArrayList<Node>();
 	
+	private boolean batchable;
+	
 	private boolean cachable;
 	
+	private SPINExpressionFunctionBody expressionBody;
+	
 	private String queryString;
 	
 	private Function spinFunction;
@@ -93,6 +122,8 @@ public class SPINARQFunction implements org.apache.jena.sparql.function.Function
 			Query spinQuery = (Query) spinFunction.getBody();
 			queryString = ARQFactory.get().createCommandString(spinQuery);
 			arqQuery = ARQFactory.get().createQuery(queryString);
+			expressionBody = SPINExpressionFunctionBody.compile(arqQuery);
+			batchable = computeBatchable();
 			
 			// TODO if above three lines never involve writes, then we can move the optimization up 
 			// and the finally block onto the outer try, which would be easier to read.
@@ -106,6 +137,10 @@ public class SPINARQFunction implements org.apache.jena.sparql.function.Function
 					argNames.add(varName);
 					argNodes.add(arg.getPredicate().asNode());
 				}
+				argVars = new Var[argNames.size()];
+				for(int i = 0; i < argVars.length; i++) {
+					argVars[i] = Var.alloc(argNames.get(i));
+				}
 			}
 			finally {
 				JenaUtil.setGraphReadOptimization(false);
@@ -127,6 +162,40 @@ public class SPINARQFunction implements org.apache.jena.sparql.function.Function
 
 	
 	public NodeValue exec(Binding binding, ExprList args, String uri, FunctionEnv env) {
+		SPINExecutionMonitor executionMonitor = SPINExecutionMonitor.get();
+		if(executionMonitor != null) {
+			Object executionToken = executionMonitor.beginFunction(uri);
+			boolean failed = true;
+			try {
+				NodeValue result = execRecording(binding, args, uri, env);
+				failed = result == null;
+				return result;
+			}
+			finally {
+				executionMonitor.endFunction(executionToken, failed);
+			}
+		}
+		else {
+			return execRecording(binding, args, uri, env);
+		}
+	}
+	
+	
+	private NodeValue execRecording(Binding binding, ExprList args, String uri, FunctionEnv env) {
+		boolean recording = SPINStatisticsManager.get().isRecording() && SPINStatisticsManager.get().isRecordingSPINFunctions();
+		if(recording && SPINStatisticsManager.get().isAggregatingFunctions()) {
+			return execAggregated(binding, args, uri, env);
+		}
+		return exec(binding, args, uri, env, recording);
+	}
+	
+	
+	private NodeValue exec(Binding binding, ExprList args, String uri, FunctionEnv env, boolean recording) {
+		
+		if(hasExpressionBody() && !cachable && SPINArgumentChecker.get() == null && !recording &&
+				SPINFunctionMemo.get(env) == null) {
+			return execExpressionBody(binding, args, env);
+		}
 		
 		Graph activeGraph = env.getActiveGraph();
 		Model model = activeGraph != null ? 
@@ -138,8 +207,9 @@ public class SPINARQFunction implements org.apache.jena.sparql.function.Function
 		if(t != null) {
 			bindings.add(SPIN.THIS_VAR_NAME, model.asRDFNode(t));
 		}
+		SPINFunctionMemo memo = cachable ? null : SPINFunctionMemo.get(env);
 		Node[] argsForCache;
-		if(cachable) {
+		if(cachable || memo != null) {
 			argsForCache = new Node[args.size()];
 		}
 		else {
@@ -158,7 +228,7 @@ public class SPINARQFunction implements org.apache.jena.sparql.function.Function
 	        			argName = "arg" + (i + 1);
 	        		}
 	        		bindings.add(argName, model.asRDFNode(x.asNode()));
-	        		if(cachable) {
+	        		if(argsForCache != null) {
 	        			argsForCache[i] = x.asNode();
 	        		}
 	        	}
@@ -172,38 +242,12 @@ public class SPINARQFunction implements org.apache.jena.sparql.function.Function
 		
 		Dataset dataset = DatasetImpl.wrap(env.getDataset());
 		
-		if(SPINStatisticsManager.get().isRecording() && SPINStatisticsManager.get().isRecordingSPINFunctions()) {
-			StringBuffer sb = new StringBuffer();
-			sb.append("SPIN Function ");
-			sb.append(SSE.format(NodeFactory.createURI(uri), model));
-			sb.append("(");
-			for(int i = 0; i < args.size(); i++) {
-				if(i > 0) {
-					sb.append(", ");
-				}
-				Expr expr = args.get(i);
-				expr = Substitute.substitute(expr, binding);
-				if(expr == null) {
-					sb.append("?unbound");
-				}
-				else {
-					ByteArrayOutputStream bos = new ByteArrayOutputStream();
-					IndentedWriter iOut = new IndentedWriter(bos);
-					ExprUtils.fmtSPARQL(iOut, expr, new SerializationContext(model));
-					iOut.flush();
-					sb.append(bos.toString());
-				}
-			}
-			sb.append(")");
+		if(recording) {
+			StringBuffer sb = createLabel(binding, args, uri, model);
 			long startTime = System.currentTimeMillis();
 			NodeValue result;
 			try {
-				if(cachable) {
-					result = SPINFunctionsCache.get().execute(this, dataset, model, bindings, argsForCache);
-				}
-				else {
-					result = executeBody(dataset, model, bindings);
-				}
+				result = executeBody(dataset, model, bindings, t, argsForCache, memo);
 				sb.append(" = ");
 				sb.append(FmtUtils.stringForNode(result.asNode(), model));
 			}
@@ -220,13 +264,93 @@ public class SPINARQFunction implements org.apache.jena.sparql.function.Function
 			return result;
 		}
 		else {
-			if(cachable) {
-				return SPINFunctionsCache.get().execute(this, dataset, model, bindings, argsForCache);
+			return executeBody(dataset, model, bindings, t, argsForCache, memo);
+		}
+	}
+	
+	
+	private StringBuffer createLabel(Binding binding, ExprList args, String uri, PrefixMapping prefixes) {
+		StringBuffer sb = new StringBuffer();
+		sb.append("SPIN Function ");
+		sb.append(SSE.format(NodeFactory.createURI(uri), prefixes));
+		sb.append("(");
+		for(int i = 0; i < args.size(); i++) {
+			if(i > 0) {
+				sb.append(", ");
+			}
+			Expr expr = args.get(i);
+			expr = Substitute.substitute(expr, binding);
+			if(expr == null) {
+				sb.append("?unbound");
 			}
 			else {
-				return executeBody(dataset, model, bindings);
+				ByteArrayOutputStream bos = new ByteArrayOutputStream();
+				IndentedWriter iOut = new IndentedWriter(bos);
+				ExprUtils.fmtSPARQL(iOut, expr, new SerializationContext(prefixes));
+				iOut.flush();
+				sb.append(bos.toString());
 			}
 		}
+		sb.append(")");
+		return sb;
+	}
+	
+	
+	/**
+	 * Executes the function (including the fast paths) and only updates the SPINFunctionMetrics
+	 * of the function.
+	 */
+	private NodeValue execAggregated(final Binding binding, final ExprList args, final String uri, final FunctionEnv env) {
+		final PrefixMapping prefixes = env.getActiveGraph() != null ? env.getActiveGraph().getPrefixMapping() : PrefixMapping.Standard;
+		return SPINFunctionMetrics.execAggregated(uri, queryString, prefixes, new SPINFunctionMetrics.Call() {
+			
+			public NodeValue exec() {
+				return SPINARQFunction.this.exec(binding, args, uri, env, false);
+			}
+			
+			public StringBuffer createLabel() {
+				return SPINARQFunction.this.createLabel(binding, args, uri, prefixes);
+			}
+		});
+	}
+	
+	
+	private NodeValue executeBody(Dataset dataset, Model model, QuerySolution bindings, Node thisNode, Node[] argsForCache, SPINFunctionMemo memo) {
+		if(cachable) {
+			return SPINFunctionsCache.get().execute(this, dataset, model, bindings, argsForCache);
+		}
+		else if(memo != null) {
+			return memo.execute(this, dataset, model, bindings, thisNode, argsForCache);
+		}
+		else {
+			return executeBody(dataset, model, bindings);
+		}
+	}
+
+
+	/**
+	 * Fast path for functions with an expression-only body: binds the arguments
+	 * directly and evaluates the compiled expressions, without creating a Model,
+	 * QuerySolutionMap or nested QueryExecution.  Only used if the ARQFactory
+	 * is using native evaluation.
+	 */
+	private NodeValue execExpressionBody(Binding binding, ExprList args, FunctionEnv env) {
+		BindingMap input = BindingFactory.create();
+		Node t = binding.get(THIS_VAR);
+		if(t != null) {
+			input.add(THIS_VAR, t);
+		}
+		for(int i = 0; i < args.size(); i++) {
+			Expr expr = args.get(i);
+			if(expr != null && (!expr.isVariable() || binding.contains(expr.asVar()))) {
+				NodeValue x = expr.eval(binding, env);
+				if(x != null) {
+					Var argVar = i < argVars.length ? argVars[i] : Var.alloc("arg" + (i + 1));
+					input.add(argVar, x.asNode());
+				}
+			}
+		}
+		return expressionBody.eval(input, env);
 	}
 
 
@@ -235,7 +359,24 @@ public class SPINARQFunction implements org.apache.jena.sparql.function.Function
 	}
 	
 	
+	/**
+	 * Executes the body of this function for given bindings.
+	 * Expression bodies are evaluated directly if the ARQFactory is using native evaluation,
+	 * all other bodies through a QueryExecution created by the ARQFactory.
+	 * @param dataset  the Dataset to query or null
+	 * @param defaultModel  the default Model to query
+	 * @param bindings  the bindings of ?this and the arguments
+	 * @return the result
+	 */
 	public NodeValue executeBody(Dataset dataset, Model defaultModel, QuerySolution bindings) {
+		if(hasExpressionBody()) {
+			DatasetGraph dsg = dataset != null ? dataset.asDatasetGraph() : null;
+			// A copy of the global context as in QueryExecutionBase, so that NOW() and other values are per execution
+			Context context = Context.setupContextForDataset(ARQ.getContext(), dsg);
+			Context.setCurrentDateTime(context);
+			FunctionEnv env = new FunctionEnvBase(context, defaultModel.getGraph(), dsg);
+			return expressionBody.eval(BindingUtils.asBinding(bindings), env);
+		}
 		QueryExecution qexec;
 		if(dataset != null) {
 			Dataset newDataset = new DatasetWithDifferentDefaultModel(defaultModel, dataset);
@@ -300,4 +441,285 @@ public class SPINARQFunction implements org.apache.jena.sparql.function.Function
 	public Function getSPINFunction() {
 		return spinFunction;
 	}
+	
+	
+	/**
+	 * Checks whether this function can be evaluated for many argument tuples
+	 * at once, using <code>execBatch</code>.  This is the case for ASK and SELECT
+	 * bodies without aggregations, solution modifiers or VALUES, and with a WHERE
+	 * clause consisting only of basic graph patterns, FILTERs and BINDs.
+	 * For those, joining the WHERE clause with a table of argument bindings
+	 * produces the same results as executing the body once per tuple.
+	 * @return true if batch evaluation is supported
+	 */
+	public boolean isBatchable() {
+		return batchable;
+	}
+	
+	
+	private boolean computeBatchable() {
+		// spin:cachable functions go through SPINFunctionsCache for each call
+		if(cachable) {
+			return false;
+		}
+		if(arqQuery.hasValues() || (!arqQuery.isAskType() && !arqQuery.isSelectType())) {
+			return false;
+		}
+		if(arqQuery.isSelectType()) {
+			if(arqQuery.isQueryResultStar() || arqQuery.getProjectVars().isEmpty() || 
+					arqQuery.hasAggregators() || arqQuery.hasGroupBy() || arqQuery.hasHaving() || 
+					arqQuery.hasOrderBy() || arqQuery.hasLimit() || arqQuery.hasOffset()) {
+				return false;
+			}
+			Expr expr = arqQuery.getProject().getExpr(arqQuery.getProjectVars().get(0));
+			if(expr != null && !SPINExpressionFunctionBody.isNative(expr)) {
+				return false;
+			}
+		}
+		Element pattern = arqQuery.getQueryPattern();
+		if(pattern == null) {
+			return true;
+		}
+		else if(!(pattern instanceof ElementGroup)) {
+			return false;
+		}
+		for(Element element : ((ElementGroup)pattern).getElements()) {
+			if(element instanceof ElementFilter) {
+				if(!SPINExpressionFunctionBody.isNative(((ElementFilter)element).getExpr())) {
+					return false;
+				}
+			}
+			else if(element instanceof ElementBind) {
+				if(!SPINExpressionFunctionBody.isNative(((ElementBind)element).getExpr())) {
+					return false;
+				}
+			}
+			else if(!(element instanceof ElementPathBlock) && !(element instanceof ElementTriplesBlock)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Checks whether argument checks, statistics, memoization or an execution monitor
+	 * are active.  Those only work when the function is executed once per call.
+	 */
+	private boolean isObserved(FunctionEnv env) {
+		return SPINArgumentChecker.get() != null ||
+				(SPINStatisticsManager.get().isRecording() && SPINStatisticsManager.get().isRecordingSPINFunctions()) ||
+				SPINFunctionMemo.get(env) != null ||
+				SPINExecutionMonitor.get() != null;
+	}
+	
+	
+	public boolean isCachable() {
+		return cachable;
+	}
+	
+	
+	/**
+	 * Checks whether the body of this function has been compiled into a
+	 * SPINExpressionFunctionBody that is evaluated without a nested query.
+	 * This is never the case if the ARQFactory is not using native evaluation,
+	 * e.g. because it is a subclass that customizes QueryExecutions.
+	 * @return true if the body is evaluated natively
+	 */
+	public boolean hasExpressionBody() {
+		return expressionBody != null && ARQFactory.get().isUsingNativeEvaluation();
+	}
+	
+	
+	/**
+	 * Evaluates this function for a list of solution bindings at once, for example
+	 * all rows of a block of a surrounding query.
+	 * The argument expressions are evaluated for each row and the body is then executed
+	 * once with a VALUES table holding all distinct argument tuples.
+	 * Functions that are not batchable fall back to one call per row, and so do all
+	 * functions while argument checks, statistics recording, memoization or an
+	 * execution monitor are active.
+	 * @param bindings  the solution bindings to evaluate the arguments against
+	 * @param args  the argument expressions
+	 * @param uri  the URI of the function
+	 * @param env  the FunctionEnv
+	 * @return an array of results in the order of bindings, with null for failed calls
+	 */
+	public NodeValue[] execBatch(List<Binding> bindings, ExprList args, String uri, FunctionEnv env) {
+		NodeValue[] results = new NodeValue[bindings.size()];
+		if(!isBatchable() || args.size() > argVars.length || isObserved(env)) {
+			for(int i = 0; i < results.length; i++) {
+				try {
+					results[i] = exec(bindings.get(i), args, uri, env);
+				}
+				catch(ExprEvalException ex) {
+					// Leave null
+				}
+			}
+			return results;
+		}
+		
+		List<Binding> inputs = new ArrayList<Binding>(bindings.size());
+		List<Integer> indices = new ArrayList<Integer>(bindings.size());
+		for(int i = 0; i < results.length; i++) {
+			Binding binding = bindings.get(i);
+			BindingMap input = BindingFactory.create();
+			Node t = binding.get(THIS_VAR);
+			if(t != null) {
+				input.add(THIS_VAR, t);
+			}
+			try {
+				for(int a = 0; a < args.size(); a++) {
+					Expr expr = args.get(a);
+					if(expr != null && (!expr.isVariable() || binding.contains(expr.asVar()))) {
+						NodeValue x = expr.eval(binding, env);
+						if(x != null) {
+							input.add(argVars[a], x.asNode());
+						}
+					}
+				}
+			}
+			catch(ExprEvalException ex) {
+				continue;
+			}
+			inputs.add(input);
+			indices.add(i);
+		}
+		
+		if(!inputs.isEmpty()) {
+			Graph activeGraph = env.getActiveGraph();
+			Model model = activeGraph != null ? 
+					ModelFactory.createModelForGraph(activeGraph) :
+					ModelFactory.createDefaultModel();
+			Dataset dataset = DatasetImpl.wrap(env.getDataset());
+			NodeValue[] batchResults = executeBodyBatch(dataset, model, inputs);
+			for(int i = 0; i < batchResults.length; i++) {
+				results[indices.get(i)] = batchResults[i];
+			}
+		}
+		return results;
+	}
+	
+	
+	/**
+	 * Executes the body once for a list of input bindings (of ?this and the
+	 * argument variables).  Duplicate inputs are only evaluated once.
+	 * The function must be batchable.
+	 * @param dataset  the Dataset to query or null
+	 * @param defaultModel  the default Model to query
+	 * @param inputs  the input bindings
+	 * @return the results in the order of inputs, with null for failed calls
+	 */
+	public NodeValue[] executeBodyBatch(Dataset dataset, Model defaultModel, List<Binding> inputs) {
+		
+		List<Var> keyVars = new ArrayList<Var>(argVars.length + 2);
+		keyVars.add(BATCH_ROW_VAR);
+		keyVars.add(THIS_VAR);
+		for(Var argVar : argVars) {
+			keyVars.add(argVar);
+		}
+		
+		Map<List<Node>,Integer> keys = new HashMap<List<Node>,Integer>();
+		List<Binding> rows = new ArrayList<Binding>();
+		int[] inputRows = new int[inputs.size()];
+		for(int i = 0; i < inputRows.length; i++) {
+			Binding input = inputs.get(i);
+			List<Node> key = new ArrayList<Node>(keyVars.size() - 1);
+			for(int k = 1; k < keyVars.size(); k++) {
+				key.add(input.get(keyVars.get(k)));
+			}
+			Integer row = keys.get(key);
+			if(row == null) {
+				row = rows.size();
+				keys.put(key, row);
+				BindingMap map = BindingFactory.create(input);
+				map.add(BATCH_ROW_VAR, NodeValue.makeInteger(row).asNode());
+				rows.add(map);
+			}
+			inputRows[i] = row;
+		}
+		
+		org.apache.jena.query.Query batchQuery = createBatchQuery(keyVars, rows);
+		QueryExecution qexec;
+		if(dataset != null) {
+			Dataset newDataset = new DatasetWithDifferentDefaultModel(defaultModel, dataset);
+			qexec = ARQFactory.get().createQueryExecution(batchQuery, newDataset);
+		}
+		else {
+			qexec = ARQFactory.get().createQueryExecution(batchQuery, defaultModel);
+		}
+		
+		NodeValue[] rowResults = new NodeValue[rows.size()];
+		boolean[] seen = new boolean[rows.size()];
+		try {
+			ResultSet rs = qexec.execSelect();
+			Var resultVar = arqQuery.isSelectType() ? arqQuery.getProjectVars().get(0) : null;
+			while(rs.hasNext()) {
+				Binding b = rs.nextBinding();
+				Node rowNode = b.get(BATCH_ROW_VAR);
+				if(rowNode != null) {
+					int row = ((Number)rowNode.getLiteralValue()).intValue();
+					if(!seen[row]) {
+						seen[row] = true;
+						if(resultVar == null) {
+							rowResults[row] = NodeValue.TRUE;
+						}
+						else {
+							Node result = b.get(resultVar);
+							if(result != null) {
+								rowResults[row] = NodeValue.makeNode(result);
+							}
+						}
+					}
+				}
+			}
+		}
+		finally {
+			qexec.close();
+		}
+		
+		NodeValue[] results = new NodeValue[inputRows.length];
+		for(int i = 0; i < results.length; i++) {
+			NodeValue result = rowResults[inputRows[i]];
+			if(result == null && arqQuery.isAskType()) {
+				result = NodeValue.FALSE;
+			}
+			results[i] = result;
+		}
+		return results;
+	}
+	
+	
+	private org.apache.jena.query.Query createBatchQuery(List<Var> keyVars, List<Binding> rows) {
+		org.apache.jena.query.Query query = new org.apache.jena.query.Query();
+		query.setQuerySelectType();
+		query.setPrefixMapping(arqQuery.getPrefixMapping());
+		query.addResultVar(BATCH_ROW_VAR);
+		if(arqQuery.isSelectType()) {
+			Var resultVar = arqQuery.getProjectVars().get(0);
+			Expr expr = arqQuery.getProject().getExpr(resultVar);
+			if(expr != null) {
+				query.addResultVar(resultVar, expr);
+			}
+			else {
+				query.addResultVar(resultVar);
+			}
+		}
+		ElementData data = new ElementData();
+		for(Var keyVar : keyVars) {
+			data.add(keyVar);
+		}
+		for(Binding row : rows) {
+			data.add(row);
+		}
+		ElementGroup group = new ElementGroup();
+		group.addElement(data);
+		if(arqQuery.getQueryPattern() != null) {
+			for(Element element : ((ElementGroup)arqQuery.getQueryPattern()).getElements()) {
+				group.addElement(element);
+			}
+		}
+		query.setQueryPattern(group);
+		return query;
+	}
 }
@@ -18,10 +18,12 @@
 package org.spinrdf.arq;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
@@ -32,15 +34,22 @@ import org.apache.jena.query.QuerySolutionMap;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.op.OpProject;
 import org.apache.jena.sparql.core.DatasetImpl;
 import org.apache.jena.sparql.core.Substitute;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
 import org.apache.jena.sparql.engine.binding.BindingHashMap;
 import org.apache.jena.sparql.engine.binding.BindingMap;
 import org.apache.jena.sparql.engine.iterator.QueryIterConcat;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.engine.iterator.QueryIterSingleton;
+import org.apache.jena.sparql.engine.main.QC;
 import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.expr.NodeValue;
@@ -73,6 +82,31 @@ public class SPINARQPFunction extends PropertyFunctionBase implements PropertyFu
 	private String queryString;
 	
 	private List<String> objectVarNames = new ArrayList<String>();
+	
+	private Map<String,Op> plans = new ConcurrentHashMap<String,Op>();
+	
+	private static final Var THIS_VAR = Var.alloc(SPIN.THIS_VAR_NAME);
+	
+	private static boolean useCompiledPlans = true;
+	
+	
+	public static boolean isUsingCompiledPlans() {
+		return useCompiledPlans;
+	}
+	
+	
+	/**
+	 * Specifies whether magic properties shall be executed as compiled algebra
+	 * plans within the ARQ engine of the surrounding query, instead of creating
+	 * a nested QueryExecution for each call.  This is on by default.
+	 * The compiled plans bypass <code>ARQFactory.createQueryExecution</code>, and are
+	 * therefore only used if <code>ARQFactory.isUsingNativeEvaluation()</code>.
+	 * Bodies with FROM or FROM NAMED clauses always use a QueryExecution.
+	 * @param value  false to always use nested QueryExecutions
+	 */
+	public static void setUseCompiledPlans(boolean value) {
+		SPINARQPFunction.useCompiledPlans = value;
+	}
 
 	
 	public SPINARQPFunction(Function functionCls) {
@@ -114,6 +148,68 @@ public class SPINARQPFunction extends PropertyFunctionBase implements PropertyFu
 	public PropertyFunction create(String arg0) {
 		return this;
 	}
+	
+	
+	/**
+	 * Executes the body query directly within the ARQ engine of the surrounding query.
+	 * The body is compiled and optimized once for each combination of output variables,
+	 * with the input positions left as variables.  For each call, the bound input values
+	 * are then passed into the plan as its root binding, as for the right side of a join,
+	 * so that the BGPs are reordered and matched with the actual values.
+	 */
+	private QueryIterator execPlan(Graph activeGraph, Binding input, Map<String,Var> vars, Binding parentBinding, ExecutionContext context) {
+		
+		List<String> outputVarNames = new ArrayList<String>(vars.keySet());
+		Collections.sort(outputVarNames);
+		String planKey = outputVarNames.toString();
+		Op plan = plans.get(planKey);
+		if(plan == null) {
+			List<Var> outputVars = new ArrayList<Var>(outputVarNames.size());
+			for(String varName : outputVarNames) {
+				outputVars.add(Var.alloc(varName));
+			}
+			plan = Algebra.optimize(new OpProject(Algebra.compile(arqQuery), outputVars), context.getContext());
+			plans.put(planKey, plan);
+		}
+		
+		// As for nested QueryExecutions, the active graph is queried by default
+		ExecutionContext execCxt = activeGraph == context.getActiveGraph() ? context : new ExecutionContext(context, activeGraph);
+		
+		SPINFunctionMemo memo = SPINFunctionMemo.get(context);
+		List<Object> memoKey = null;
+		if(memo != null) {
+			memoKey = new ArrayList<Object>();
+			memoKey.add(this);
+			memoKey.add(activeGraph);
+			memoKey.add(planKey);
+			Iterator<Var> inputVars = input.vars();
+			while(inputVars.hasNext()) {
+				Var var = inputVars.next();
+				memoKey.add(var);
+				memoKey.add(input.get(var));
+			}
+			List<Binding> rows = memo.getRows(memoKey);
+			if(rows != null) {
+				return new PFunctionPlanIterator(new QueryIterPlainWrapper(rows.iterator(), execCxt), vars, parentBinding, execCxt);
+			}
+		}
+		
+		QueryIterator results = QC.execute(plan, QueryIterSingleton.create(input, execCxt), execCxt);
+		if(memo != null) {
+			List<Binding> rows = new ArrayList<Binding>();
+			try {
+				while(results.hasNext()) {
+					rows.add(results.nextBinding());
+				}
+			}
+			finally {
+				results.close();
+			}
+			memo.putRows(memoKey, rows);
+			results = new QueryIterPlainWrapper(rows.iterator(), execCxt);
+		}
+		return new PFunctionPlanIterator(results, vars, parentBinding, execCxt);
+	}
 
 	
 	@Override
@@ -177,11 +273,10 @@ public class SPINARQPFunction extends PropertyFunctionBase implements PropertyFu
 			if(activeGraph == null) {
 				activeGraph = JenaUtil.createDefaultGraph();
 			}
-			Model model = ModelFactory.createModelForGraph(activeGraph);
-			Node t = binding.get(Var.alloc(SPIN.THIS_VAR_NAME));
-			QuerySolutionMap bindings = new QuerySolutionMap();
+			BindingMap input = BindingFactory.create();
+			Node t = binding.get(THIS_VAR);
 			if(t != null) {
-				bindings.add(SPIN.THIS_VAR_NAME, model.asRDFNode(t));
+				input.add(THIS_VAR, t);
 			}
 	
 			// Map object expressions to original objectVarNames
@@ -196,7 +291,7 @@ public class SPINARQPFunction extends PropertyFunctionBase implements PropertyFu
 				else {
 		        	NodeValue x = expr.eval(binding, context);
 		        	if(x != null) {
-		        		bindings.add(objectVarName, model.asRDFNode(x.asNode()));
+		        		input.add(Var.alloc(objectVarName), x.asNode());
 		        	}
 				}
 			}
@@ -212,16 +307,29 @@ public class SPINARQPFunction extends PropertyFunctionBase implements PropertyFu
 				else {
 		        	NodeValue x = expr.eval(binding, context);
 		        	if(x != null) {
-		        		bindings.add(subjectVarName, model.asRDFNode(x.asNode()));
+		        		input.add(Var.alloc(subjectVarName), x.asNode());
 		        	}
 				}
 			}
 			
-			// Execute SELECT query and wrap it with a custom iterator
-			Dataset newDataset = new DatasetWithDifferentDefaultModel(model, DatasetImpl.wrap(context.getDataset()));
-			QueryExecution qexec = ARQFactory.get().createQueryExecution(arqQuery, newDataset, bindings);
-			ResultSet rs = qexec.execSelect();
-			QueryIterator it = new PFunctionQueryIterator(rs, qexec, vars, binding);
+			QueryIterator it;
+			if(useCompiledPlans && ARQFactory.get().isUsingNativeEvaluation() && arqQuery.getGraphURIs().isEmpty() && arqQuery.getNamedGraphURIs().isEmpty()) {
+				it = execPlan(activeGraph, input, vars, binding, context);
+			}
+			else {
+				// Execute SELECT query and wrap it with a custom iterator
+				Model model = ModelFactory.createModelForGraph(activeGraph);
+				QuerySolutionMap bindings = new QuerySolutionMap();
+				Iterator<Var> inputVars = input.vars();
+				while(inputVars.hasNext()) {
+					Var var = inputVars.next();
+					bindings.add(var.getVarName(), model.asRDFNode(input.get(var)));
+				}
+				Dataset newDataset = new DatasetWithDifferentDefaultModel(model, DatasetImpl.wrap(context.getDataset()));
+				QueryExecution qexec = ARQFactory.get().createQueryExecution(arqQuery, newDataset, bindings);
+				ResultSet rs = qexec.execSelect();
+				it = new PFunctionQueryIterator(rs, qexec, vars, binding);
+			}
 			if(existingValues != null) {
 				existingValues.add(it);
 				return existingValues;
@@ -0,0 +1,161 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.arq;
+
+import org.apache.jena.sparql.algebra.op.OpExtend;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.iterator.QueryIterAssign;
+import org.apache.jena.sparql.engine.main.OpExecutor;
+import org.apache.jena.sparql.engine.main.OpExecutorFactory;
+import org.apache.jena.sparql.engine.main.QC;
+import org.apache.jena.sparql.expr.E_Function;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.function.FunctionFactory;
+import org.apache.jena.sparql.function.FunctionRegistry;
+import org.apache.jena.sparql.util.Context;
+import org.spinrdf.statistics.SPINStatisticsManager;
+import org.spinrdf.system.SPINArgumentChecker;
+
+
+/**
+ * An ARQ OpExecutor that evaluates BIND(f(...) AS ?var) with batchable SPIN functions f
+ * over blocks of solutions, so that the body of f is executed once per block instead
+ * of once per row.
+ * 
+ * This is not active by default but can be installed globally or for individual
+ * query executions using
+ * 
+ * <code>
+ * 	SPINBatchOpExecutor.install(qexec.getContext());
+ * </code>
+ */
+public class SPINBatchOpExecutor extends OpExecutor {
+	
+	public final static OpExecutorFactory factory = new OpExecutorFactory() {
+		@Override
+		public OpExecutor create(ExecutionContext execCxt) {
+			return new SPINBatchOpExecutor(execCxt);
+		}
+	};
+	
+	private static int batchSize = 1000;
+	
+	
+	public static int getBatchSize() {
+		return batchSize;
+	}
+	
+	
+	/**
+	 * Installs this OpExecutor into a given ARQ Context.
+	 * @param context  the Context, e.g. ARQ.getContext() or the one of a QueryExecution
+	 */
+	public static void install(Context context) {
+		QC.setFactory(context, factory);
+	}
+	
+	
+	/**
+	 * Sets the maximum number of solutions that shall be passed into a single batch.
+	 * @param value  the new batch size (at least 1)
+	 */
+	public static void setBatchSize(int value) {
+		SPINBatchOpExecutor.batchSize = Math.max(1, value);
+	}
+	
+	
+	protected SPINBatchOpExecutor(ExecutionContext execCxt) {
+		super(execCxt);
+	}
+
+
+	@Override
+	protected QueryIterator execute(OpExtend opExtend, QueryIterator input) {
+		if(!isBatching()) {
+			return super.execute(opExtend, input);
+		}
+		VarExprList exprs = opExtend.getVarExprList();
+		boolean found = false;
+		for(Var var : exprs.getVars()) {
+			if(getBatchFunction(exprs.getExpr(var)) != null) {
+				found = true;
+				break;
+			}
+		}
+		if(!found) {
+			return super.execute(opExtend, input);
+		}
+		
+		// Evaluate the assignments from left to right, using batches where possible
+		QueryIterator result = exec(opExtend.getSubOp(), input);
+		for(Var var : exprs.getVars()) {
+			Expr expr = exprs.getExpr(var);
+			SPINARQFunction function = getBatchFunction(expr);
+			if(function != null) {
+				String uri = ((E_Function)expr).getFunctionIRI();
+				ExprList args = new ExprList(((E_Function)expr).getArgs());
+				result = new SPINFunctionBatchIterator(result, var, function, args, uri, batchSize, execCxt);
+			}
+			else {
+				result = new QueryIterAssign(result, new VarExprList(var, expr), execCxt, true);
+			}
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * Checks whether this executor shall evaluate batchable functions in batches.
+	 * Subclasses may override this to behave like the standard OpExecutor.
+	 * @return true by default
+	 */
+	protected boolean isBatching() {
+		return true;
+	}
+	
+	
+	private SPINARQFunction getBatchFunction(Expr expr) {
+		if(expr instanceof E_Function) {
+			return getBatchFunction(((E_Function)expr).getFunctionIRI());
+		}
+		else {
+			return null;
+		}
+	}
+	
+	
+	private SPINARQFunction getBatchFunction(String uri) {
+		if(SPINArgumentChecker.get() != null || 
+				(SPINStatisticsManager.get().isRecording() && SPINStatisticsManager.get().isRecordingSPINFunctions())) {
+			return null;
+		}
+		FunctionRegistry registry = FunctionRegistry.get(execCxt.getContext());
+		FunctionFactory ff = registry != null ? registry.get(uri) : null;
+		if(ff instanceof SPINARQFunction) {
+			SPINARQFunction function = (SPINARQFunction) ff;
+			if(function.isBatchable() && !function.isCachable() && !function.hasExpressionBody()) {
+				return function;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.arq;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.walker.Walker;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprAggregator;
+import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.ExprFunctionOp;
+import org.apache.jena.sparql.expr.ExprVisitorBase;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementBind;
+import org.apache.jena.sparql.syntax.ElementGroup;
+
+/**
+ * A compiled form of SPIN function bodies that only consist of expressions,
+ * i.e. bodies of the form <code>SELECT (expr AS ?result) WHERE { }</code>
+ * or a WHERE clause with nothing but a chain of BINDs.
+ * Such bodies can be evaluated natively against a Binding, without running
+ * a nested query.
+ */
+public class SPINExpressionFunctionBody {
+
+	private static boolean enabled = true;
+
+
+	/**
+	 * Attempts to compile a given function body query.
+	 * @param query  the body query
+	 * @return the compiled body or null if the query is not expression-only
+	 */
+	public static SPINExpressionFunctionBody compile(Query query) {
+
+		if(!enabled || !query.isSelectType() || query.isQueryResultStar()) {
+			return null;
+		}
+		if(query.hasAggregators() || query.hasGroupBy() || query.hasHaving() || query.hasOrderBy() || query.hasOffset() || query.hasValues()) {
+			return null;
+		}
+		if(query.hasLimit() && query.getLimit() == 0) {
+			return null;
+		}
+		if(!query.getGraphURIs().isEmpty() || !query.getNamedGraphURIs().isEmpty()) {
+			return null;
+		}
+		List<Var> projectVars = query.getProjectVars();
+		if(projectVars.isEmpty()) {
+			return null;
+		}
+
+		List<ElementBind> binds = new ArrayList<ElementBind>();
+		Element pattern = query.getQueryPattern();
+		if(pattern != null) {
+			if(!(pattern instanceof ElementGroup)) {
+				return null;
+			}
+			for(Element element : ((ElementGroup)pattern).getElements()) {
+				if(element instanceof ElementBind) {
+					binds.add((ElementBind) element);
+				}
+				else {
+					return null;
+				}
+			}
+		}
+
+		Var resultVar = projectVars.get(0);
+		Expr resultExpr = query.getProject().getExpr(resultVar);
+
+		Var[] vars = new Var[binds.size()];
+		Expr[] exprs = new Expr[binds.size()];
+		for(int i = 0; i < binds.size(); i++) {
+			vars[i] = binds.get(i).getVar();
+			exprs[i] = binds.get(i).getExpr();
+			if(!isNative(exprs[i])) {
+				return null;
+			}
+		}
+		if(resultExpr != null && !isNative(resultExpr)) {
+			return null;
+		}
+
+		return new SPINExpressionFunctionBody(vars, exprs, resultVar, resultExpr);
+	}
+
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+
+	/**
+	 * Checks whether a given Expr can be evaluated without an ExecutionContext,
+	 * i.e. it does not contain EXISTS/NOT EXISTS or aggregations.
+	 * @param expr  the Expr to check
+	 * @return true if expr can be evaluated natively
+	 */
+	public static boolean isNative(Expr expr) {
+		final boolean[] result = { true };
+		Walker.walk(expr, new ExprVisitorBase() {
+
+			@Override
+			public void visit(ExprFunctionOp funcOp) {
+				result[0] = false;
+			}
+
+			@Override
+			public void visit(ExprAggregator eAgg) {
+				result[0] = false;
+			}
+		});
+		return result[0];
+	}
+
+
+	/**
+	 * Globally switches the compilation of expression-only function bodies on or off.
+	 * This is on by default, and only affects functions that are created afterwards.
+	 * @param value  false to always execute function bodies as nested queries
+	 */
+	public static void setEnabled(boolean value) {
+		SPINExpressionFunctionBody.enabled = value;
+	}
+
+
+	private Expr[] bindExprs;
+
+	private Var[] bindVars;
+
+	private Expr resultExpr;
+
+	private Var resultVar;
+
+
+	private SPINExpressionFunctionBody(Var[] bindVars, Expr[] bindExprs, Var resultVar, Expr resultExpr) {
+		this.bindExprs = bindExprs;
+		this.bindVars = bindVars;
+		this.resultExpr = resultExpr;
+		this.resultVar = resultVar;
+	}
+
+
+	/**
+	 * Evaluates the body for a given set of input bindings (typically the
+	 * function arguments and ?this).
+	 * @param input  the input bindings
+	 * @param env  the FunctionEnv to evaluate the expressions in
+	 * @return the result of the body
+	 * @throws ExprEvalException  if the result variable remains unbound
+	 */
+	public NodeValue eval(Binding input, FunctionEnv env) {
+		Binding binding = input;
+		if(bindVars.length > 0) {
+			BindingMap map = BindingFactory.create(input);
+			for(int i = 0; i < bindVars.length; i++) {
+				try {
+					NodeValue value = bindExprs[i].eval(map, env);
+					if(value != null) {
+						map.add(bindVars[i], value.asNode());
+					}
+				}
+				catch(ExprEvalException ex) {
+					// Same as BIND: leave the variable unbound
+				}
+			}
+			binding = map;
+		}
+		if(resultExpr != null) {
+			return resultExpr.eval(binding, env);
+		}
+		else {
+			Node result = binding.get(resultVar);
+			if(result != null) {
+				return NodeValue.makeNode(result);
+			}
+			else {
+				throw new ExprEvalException("Unbound result variable ?" + resultVar.getVarName());
+			}
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.arq;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.iterator.QueryIter1;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.serializer.SerializationContext;
+
+
+/**
+ * A QueryIterator implementing BIND(f(...) AS ?var) for a batchable SPIN function f.
+ * 
+ * This reads blocks of input bindings and evaluates the SPIN function for all of
+ * them with a single call to <code>SPINARQFunction.execBatch</code>.
+ * As with BIND, rows for which the function fails are passed through unchanged.
+ */
+class SPINFunctionBatchIterator extends QueryIter1 {
+	
+	private ExprList args;
+	
+	private int batchSize;
+	
+	private SPINARQFunction function;
+	
+	private LinkedList<Binding> pending = new LinkedList<Binding>();
+	
+	private String uri;
+	
+	private Var var;
+	
+	
+	SPINFunctionBatchIterator(QueryIterator input, Var var, SPINARQFunction function, ExprList args, String uri, int batchSize, ExecutionContext execCxt) {
+		super(input, execCxt);
+		this.args = args;
+		this.batchSize = batchSize;
+		this.function = function;
+		this.uri = uri;
+		this.var = var;
+	}
+
+
+	@Override
+	protected boolean hasNextBinding() {
+		if(!pending.isEmpty()) {
+			return true;
+		}
+		List<Binding> block = new ArrayList<Binding>(batchSize);
+		QueryIterator input = getInput();
+		while(block.size() < batchSize && input.hasNext()) {
+			block.add(input.next());
+		}
+		if(block.isEmpty()) {
+			return false;
+		}
+		NodeValue[] results = function.execBatch(block, args, uri, getExecContext());
+		for(int i = 0; i < results.length; i++) {
+			Binding binding = block.get(i);
+			if(results[i] != null && !binding.contains(var)) {
+				pending.add(BindingFactory.binding(binding, var, results[i].asNode()));
+			}
+			else {
+				pending.add(binding);
+			}
+		}
+		return true;
+	}
+
+
+	@Override
+	protected Binding moveToNextBinding() {
+		return pending.removeFirst();
+	}
+
+
+	@Override
+	protected void closeSubIterator() {
+		pending.clear();
+	}
+
+
+	@Override
+	protected void requestSubCancel() {
+		pending.clear();
+	}
+
+
+	@Override
+	protected void details(IndentedWriter out, SerializationContext sCxt) {
+		out.print("SPINFunctionBatch ?" + var.getVarName() + " <" + uri + "> (" + batchSize + ")");
+	}
+}
@@ -0,0 +1,285 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.arq;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.function.FunctionFactory;
+import org.apache.jena.sparql.pfunction.PropertyFunctionFactory;
+import org.apache.jena.vocabulary.RDFS;
+import org.spinrdf.model.Function;
+import org.spinrdf.util.AbstractGraphListener;
+import org.spinrdf.util.JenaUtil;
+import org.spinrdf.util.SubGraphListeners;
+import org.spinrdf.vocabulary.SP;
+import org.spinrdf.vocabulary.SPIN;
+import org.spinrdf.vocabulary.SPL;
+
+/**
+ * A process-wide cache of the ARQ function factories that have been created
+ * for SPIN functions and magic properties declared in a given Model.
+ * This is used by SPINThreadFunctions so that repeated registrations of the
+ * same Model (e.g. once per servlet request) do not need to compile the same
+ * functions over and over again.
+ *
+ * <p>The cache only holds weak references to the Models' graphs.
+ * The entries of each graph are attached to the graph itself (as a GraphListener),
+ * so that they are garbage collected together with it.
+ * Any change to the graph or, for union graphs, to one of its sub-graphs that
+ * may affect a function declaration invalidates the entries of that graph.</p>
+ */
+public class SPINFunctionFactoryCache {
+
+	private static SPINFunctionFactoryCache singleton = new SPINFunctionFactoryCache();
+
+	public static SPINFunctionFactoryCache get() {
+		return singleton;
+	}
+
+
+	public static void set(SPINFunctionFactoryCache value) {
+		SPINFunctionFactoryCache.singleton = value;
+	}
+
+
+	// Marks failed attempts to create a factory
+	private static final Object NONE = new Object();
+
+
+	private Map<Graph,WeakReference<GraphEntry>> entries = Collections.synchronizedMap(new WeakHashMap<Graph,WeakReference<GraphEntry>>());
+
+
+	/**
+	 * Removes all cached function factories.
+	 */
+	public void clear() {
+		List<WeakReference<GraphEntry>> refs;
+		synchronized(entries) {
+			refs = new ArrayList<WeakReference<GraphEntry>>(entries.values());
+		}
+		for(WeakReference<GraphEntry> ref : refs) {
+			GraphEntry entry = ref.get();
+			if(entry != null) {
+				entry.clear();
+			}
+		}
+	}
+
+
+	/**
+	 * Gets the FunctionFactory for a SPIN function declared in a given Model,
+	 * creating it if needed.
+	 * @param model  the Model containing the function declaration
+	 * @param uri  the URI of the function
+	 * @return the FunctionFactory or null if uri is not a SPIN function in model
+	 */
+	public FunctionFactory getFunctionFactory(Model model, String uri) {
+		GraphEntry entry = getEntry(model);
+		Object old = entry.functions.get(uri);
+		if(old == null) {
+			int version = entry.version;
+			old = NONE;
+			Function spinFunction = model.getResource(uri).as(Function.class);
+			if(JenaUtil.hasIndirectType(spinFunction, SPIN.Function)) {
+				FunctionFactory arqFunction = SPINFunctionDrivers.get().create(spinFunction);
+				if(arqFunction != null) {
+					old = arqFunction;
+				}
+			}
+			// Remember failed attempts too
+			old = entry.put(entry.functions, uri, old, version);
+		}
+		return old == NONE ? null : (FunctionFactory) old;
+	}
+
+
+	/**
+	 * Gets the PropertyFunctionFactory for a SPIN magic property declared in a given Model,
+	 * creating it if needed.
+	 * @param model  the Model containing the magic property declaration
+	 * @param uri  the URI of the magic property
+	 * @return the PropertyFunctionFactory or null if uri is not a magic property in model
+	 */
+	public PropertyFunctionFactory getPropertyFunctionFactory(Model model, String uri) {
+		GraphEntry entry = getEntry(model);
+		Object old = entry.pfunctions.get(uri);
+		if(old == null) {
+			int version = entry.version;
+			old = NONE;
+			Function spinFunction = model.getResource(uri).as(Function.class);
+			if(JenaUtil.hasIndirectType(spinFunction, SPIN.MagicProperty)) {
+				if(spinFunction.hasProperty(SPIN.body)) {
+					old = SPINARQPFunctionFactory.get().create(spinFunction);
+				}
+			}
+			old = entry.put(entry.pfunctions, uri, old, version);
+		}
+		return old == NONE ? null : (PropertyFunctionFactory) old;
+	}
+
+
+	/**
+	 * Gets the number of function factories that are currently cached,
+	 * including remembered failed attempts.
+	 * @return the size of the cache
+	 */
+	public int size() {
+		List<WeakReference<GraphEntry>> refs;
+		synchronized(entries) {
+			refs = new ArrayList<WeakReference<GraphEntry>>(entries.values());
+		}
+		int result = 0;
+		for(WeakReference<GraphEntry> ref : refs) {
+			GraphEntry entry = ref.get();
+			if(entry != null) {
+				result += entry.functions.size() + entry.pfunctions.size();
+			}
+		}
+		return result;
+	}
+
+
+	private GraphEntry getEntry(Model model) {
+		Graph graph = model.getGraph();
+		synchronized(entries) {
+			WeakReference<GraphEntry> ref = entries.get(graph);
+			GraphEntry entry = ref != null ? ref.get() : null;
+			if(entry == null) {
+				entry = new GraphEntry();
+				graph.getEventManager().register(entry);
+				SubGraphListeners.register(graph, entry);
+				entries.put(graph, new WeakReference<GraphEntry>(entry));
+			}
+			return entry;
+		}
+	}
+
+
+	/**
+	 * The cached factories of a single graph.  Registered as listener so that
+	 * the graph keeps it alive, and so that relevant changes can clear it.
+	 * Relevant are all triples that may belong to the declaration of a function:
+	 * triples using SP, SPIN or SPL properties, rdfs:subClassOf triples, triples
+	 * about blank nodes (such as the bodies) and triples about any URI that has
+	 * been looked up.  Other changes, such as inferred instance data, keep the entries.
+	 */
+	private static class GraphEntry extends AbstractGraphListener {
+
+		Map<String,Object> functions = new ConcurrentHashMap<String,Object>();
+
+		Map<String,Object> pfunctions = new ConcurrentHashMap<String,Object>();
+
+		volatile int version;
+
+
+		synchronized void clear() {
+			version++;
+			functions.clear();
+			pfunctions.clear();
+		}
+
+
+		private void changed(Triple t) {
+			if(!isEmpty() && isRelevant(t)) {
+				clear();
+			}
+		}
+
+
+		private boolean isEmpty() {
+			return functions.isEmpty() && pfunctions.isEmpty();
+		}
+
+
+		private boolean isRelevant(Triple t) {
+			Node subject = t.getSubject();
+			Node predicate = t.getPredicate();
+			if(!subject.isURI() || RDFS.subClassOf.asNode().equals(predicate)) {
+				return true;
+			}
+			else if(predicate.isURI() && isSPINNamespace(predicate.getNameSpace())) {
+				return true;
+			}
+			else {
+				String uri = subject.getURI();
+				return functions.containsKey(uri) || pfunctions.containsKey(uri);
+			}
+		}
+
+
+		private static boolean isSPINNamespace(String ns) {
+			return SP.NS.equals(ns) || SPIN.NS.equals(ns) || SPL.NS.equals(ns);
+		}
+
+
+		// Don't remember values computed while the graph was changing
+		synchronized Object put(Map<String,Object> map, String uri, Object value, int oldVersion) {
+			if(version != oldVersion) {
+				return value;
+			}
+			Object other = map.putIfAbsent(uri, value);
+			return other != null ? other : value;
+		}
+
+
+		@Override
+		public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+			// Avoid iterating over large bulk additions if nothing needs to be invalidated
+			if(!isEmpty()) {
+				super.notifyAddIterator(g, it);
+			}
+		}
+
+
+		@Override
+		public void notifyAddTriple(Graph g, Triple t) {
+			changed(t);
+		}
+
+
+		@Override
+		public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+			if(!isEmpty()) {
+				super.notifyDeleteIterator(g, it);
+			}
+		}
+
+
+		@Override
+		public void notifyDeleteTriple(Graph g, Triple t) {
+			changed(t);
+		}
+
+
+		@Override
+		protected void notifyRemoveAll(Graph source, Triple pattern) {
+			clear();
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.arq;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.Symbol;
+
+/**
+ * A memo table that remembers the results of SPIN function and magic property
+ * calls for the duration of a single query execution.
+ *
+ * <p>Unlike the global SPINFunctionsCache, this also applies to functions that
+ * are not marked with spin:cachable, and it cannot return stale results across
+ * executions: the table is stored in the ARQ Context of the running query,
+ * which is a per-execution copy that is discarded when the execution ends.</p>
+ *
+ * <p>This is off by default.  It can be switched on either globally or for
+ * a specific QueryExecution using</p>
+ *
+ * <code>
+ * 	qexec.getContext().set(SPINFunctionMemo.ENABLED, true);
+ * </code>
+ */
+public class SPINFunctionMemo {
+
+	/**
+	 * The Context flag that activates the memo table.
+	 */
+	public static final Symbol ENABLED = Symbol.create("http://spinrdf.org/spin#functionMemoEnabled");
+
+	/**
+	 * The Context entry holding the memo table of the current execution.
+	 */
+	private static final Symbol MEMO = Symbol.create("http://spinrdf.org/spin#functionMemo");
+
+	/**
+	 * The maximum number of entries per execution, after which new results are no longer stored.
+	 */
+	private static int capacity = 100000;
+
+
+	/**
+	 * Gets the memo table associated with the Context of a given FunctionEnv,
+	 * creating it on demand.
+	 * @param env  the FunctionEnv of the current function call
+	 * @return the memo table or null if memoization is not enabled
+	 */
+	public static SPINFunctionMemo get(FunctionEnv env) {
+		Context context = env.getContext();
+		if(context == null || context == ARQ.getContext() || !context.isTrue(ENABLED)) {
+			// The global context is not bound to an execution and would never be discarded
+			return null;
+		}
+		Object old = context.get(MEMO);
+		if(old instanceof SPINFunctionMemo) {
+			return (SPINFunctionMemo) old;
+		}
+		synchronized(context) {
+			old = context.get(MEMO);
+			if(old instanceof SPINFunctionMemo) {
+				return (SPINFunctionMemo) old;
+			}
+			SPINFunctionMemo neo = new SPINFunctionMemo();
+			context.set(MEMO, neo);
+			return neo;
+		}
+	}
+
+
+	public static int getCapacity() {
+		return capacity;
+	}
+
+
+	/**
+	 * Sets the maximum number of results that shall be remembered per query execution.
+	 * @param value  the new capacity
+	 */
+	public static void setCapacity(int value) {
+		SPINFunctionMemo.capacity = value;
+	}
+
+
+	private Map<Key,Result> results = new ConcurrentHashMap<Key,Result>();
+	
+	private Map<Object,List<Binding>> rows = new ConcurrentHashMap<Object,List<Binding>>();
+
+
+	public void clear() {
+		results.clear();
+		rows.clear();
+	}
+
+
+	public NodeValue execute(SPINARQFunction function, Dataset dataset, Model defaultModel, QuerySolution bindings, Node thisNode, Node[] args) {
+		Key key = new Key(function.getSPINFunction().getURI(), defaultModel.getGraph(), thisNode, args);
+		Result result = results.get(key);
+		if(result == null) {
+			result = new Result();
+			try {
+				result.nodeValue = function.executeBody(dataset, defaultModel, bindings);
+			}
+			catch(ExprEvalException ex) {
+				result.ex = ex;
+			}
+			if(results.size() < capacity) {
+				results.put(key, result);
+			}
+		}
+		if(result.ex != null) {
+			throw new ExprEvalException(result.ex.getMessage());
+		}
+		else {
+			return result.nodeValue;
+		}
+	}
+
+
+	/**
+	 * Gets the remembered result rows of a previous magic property call.
+	 * @param key  the key of the call, as produced by SPINARQPFunction
+	 * @return the result rows or null
+	 */
+	public List<Binding> getRows(Object key) {
+		return rows.get(key);
+	}
+	
+	
+	public void putRows(Object key, List<Binding> value) {
+		if(rows.size() < capacity) {
+			rows.put(key, value);
+		}
+	}
+
+
+	public int size() {
+		return results.size() + rows.size();
+	}
+
+
+	private static class Key {
+
+		private Node[] args;
+
+		private String functionURI;
+
+		private Graph graph;
+
+		private int hashCode;
+
+		private Node thisNode;
+
+
+		Key(String functionURI, Graph graph, Node thisNode, Node[] args) {
+			this.args = args;
+			this.functionURI = functionURI;
+			this.graph = graph;
+			this.thisNode = thisNode;
+			hashCode = functionURI.hashCode() + System.identityHashCode(graph) + Arrays.hashCode(args);
+			if(thisNode != null) {
+				hashCode += thisNode.hashCode();
+			}
+		}
+
+
+		@Override
+		public boolean equals(Object obj) {
+
+			if(!(obj instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) obj;
+			if(graph != other.graph || !functionURI.equals(other.functionURI)) {
+				return false;
+			}
+
+			if(thisNode == null ? other.thisNode != null : !thisNode.equals(other.thisNode)) {
+				return false;
+			}
+
+			return Arrays.equals(args, other.args);
+		}
+
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+
+	private static class Result {
+
+		ExprEvalException ex;
+
+		NodeValue nodeValue;
+	}
+}
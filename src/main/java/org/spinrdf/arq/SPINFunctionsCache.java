@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.jena.graph.Node;
 import org.apache.jena.query.Dataset;
@@ -66,6 +67,10 @@ public class SPINFunctionsCache {
 	};
 	
 	private Map<Key,Result> cache = Collections.synchronizedMap(new MyCache());
+	
+	private LongAdder hits = new LongAdder();
+	
+	private LongAdder misses = new LongAdder();
 
 	
 	public void clear() {
@@ -73,10 +78,31 @@ public class SPINFunctionsCache {
 	}
 	
 	
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	
+	public long getHitCount() {
+		return hits.sum();
+	}
+	
+	
+	public long getMissCount() {
+		return misses.sum();
+	}
+	
+	
+	public int size() {
+		return cache.size();
+	}
+	
+	
 	public NodeValue execute(SPINARQFunction function, Dataset dataset, Model defaultModel, QuerySolution bindings, Node[] args) {
 		Key key = new Key(function.getSPINFunction().getURI(), args);
 		Result result = cache.get(key);
 		if(result == null) {
+			misses.increment();
 			result = new Result();
 			try {
 				result.nodeValue = function.executeBody(dataset, defaultModel, bindings);
@@ -86,6 +112,9 @@ public class SPINFunctionsCache {
 			}
 			cache.put(key, result);
 		}
+		else {
+			hits.increment();
+		}
 		if(result.ex != null) {
 			throw new ExprEvalException(result.ex.getMessage());
 		}
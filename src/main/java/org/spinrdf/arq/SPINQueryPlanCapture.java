@@ -0,0 +1,321 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.arq;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Substitute;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIterPeek;
+import org.apache.jena.sparql.engine.iterator.QueryIteratorWrapper;
+import org.apache.jena.sparql.engine.main.OpExecutor;
+import org.apache.jena.sparql.engine.main.OpExecutorFactory;
+import org.apache.jena.sparql.engine.main.QC;
+import org.apache.jena.sparql.engine.main.StageBuilder;
+import org.apache.jena.sparql.engine.main.StageGenerator;
+import org.apache.jena.sparql.engine.main.StageGeneratorGeneric;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderLib;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderProc;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import org.apache.jena.sparql.util.Context;
+
+
+/**
+ * Captures the query plan of one or more ARQ query executions: the optimized
+ * algebra that was executed, the join order of each basic graph pattern and
+ * the number of rows produced by each operator.
+ *
+ * This is used by SPINInferences and SPINConstraints to attach the plans of slow
+ * rules and constraints to their SPINStatistics (see setPlanCaptureThreshold there).
+ * A capture can also be installed into any other QueryExecution before it is executed:
+ *
+ * <code>
+ * 	SPINQueryPlanCapture capture = new SPINQueryPlanCapture();
+ * 	capture.install(qexec);
+ * 	...
+ * 	String plan = capture.getPlan();
+ * </code>
+ *
+ * If the same capture is installed into several executions of the same query
+ * (e.g. once per instance for rules using spin:thisDeep), the row counts are summed up.
+ * The profiling OpExecutor replaces any other custom OpExecutorFactory of the
+ * execution, except for SPINBatchOpExecutor which is preserved.
+ */
+public class SPINQueryPlanCapture {
+
+	private final static int MAX_LINE_LENGTH = 120;
+
+	private final static int MAX_OPERATORS = 50;
+
+
+	private Op algebra;
+
+	private Set<String> joinOrders = new LinkedHashSet<String>();
+
+	// Operator -> { number of executions, number of rows }
+	private Map<Op,long[]> rows = new LinkedHashMap<Op,long[]>();
+
+
+	/**
+	 * Gets the (first) optimized algebra expression that was executed.
+	 * @return the algebra or null if nothing has been executed yet
+	 */
+	public synchronized Op getAlgebra() {
+		return algebra;
+	}
+
+
+	/**
+	 * Gets a human-readable rendering of everything captured so far.
+	 * @return the plan or null if nothing has been executed yet
+	 */
+	public synchronized String getPlan() {
+		if(algebra == null) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("Algebra:\n");
+		sb.append(algebra.toString());
+		if(!joinOrders.isEmpty()) {
+			sb.append("Join order:\n");
+			for(String joinOrder : joinOrders) {
+				sb.append(joinOrder);
+				if(!joinOrder.endsWith("\n")) {
+					sb.append("\n");
+				}
+			}
+		}
+		sb.append("Rows (executions, rows, operator):\n");
+		for(Map.Entry<Op,long[]> entry : rows.entrySet()) {
+			long[] counts = entry.getValue();
+			sb.append(counts[0]);
+			sb.append("\t");
+			sb.append(counts[1]);
+			sb.append("\t");
+			sb.append(getShortLabel(entry.getKey()));
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * Installs this into a given QueryExecution, which must not have been executed yet.
+	 * @param qexec  the QueryExecution
+	 */
+	public void install(QueryExecution qexec) {
+		Context context = qexec.getContext();
+		final boolean batching = QC.getFactory(context) == SPINBatchOpExecutor.factory;
+		QC.setFactory(context, new OpExecutorFactory() {
+			@Override
+			public OpExecutor create(ExecutionContext execCxt) {
+				return new ProfilingOpExecutor(execCxt, batching);
+			}
+		});
+		StageGenerator generator = StageBuilder.chooseStageGenerator(context);
+		if(generator instanceof StageGeneratorGeneric) {
+			StageBuilder.setGenerator(context, new RecordingStageGeneratorGeneric());
+		}
+		else {
+			StageBuilder.setGenerator(context, new RecordingStageGenerator(generator));
+		}
+	}
+
+
+	private synchronized long[] getCounts(Op op) {
+		if(algebra == null) {
+			algebra = op;
+		}
+		long[] counts = rows.get(op);
+		if(counts == null) {
+			if(rows.size() >= MAX_OPERATORS) {
+				return null;
+			}
+			counts = new long[2];
+			rows.put(op, counts);
+		}
+		counts[0]++;
+		return counts;
+	}
+
+
+	private String getShortLabel(Op op) {
+		String str = op.toString().replaceAll("\\s+", " ").trim();
+		if(str.length() > MAX_LINE_LENGTH) {
+			str = str.substring(0, MAX_LINE_LENGTH - 3) + "...";
+		}
+		return str;
+	}
+
+
+	private synchronized void recordJoinOrder(BasicPattern pattern) {
+		joinOrders.add(pattern.toString());
+	}
+
+
+	private static class CountingIterator extends QueryIteratorWrapper {
+
+		private long[] counts;
+
+
+		CountingIterator(QueryIterator iterator, long[] counts) {
+			super(iterator);
+			this.counts = counts;
+		}
+
+
+		@Override
+		protected Binding moveToNextBinding() {
+			Binding binding = super.moveToNextBinding();
+			synchronized(counts) {
+				counts[1]++;
+			}
+			return binding;
+		}
+	}
+
+
+	private class ProfilingOpExecutor extends SPINBatchOpExecutor {
+
+		private boolean batching;
+
+
+		ProfilingOpExecutor(ExecutionContext execCxt, boolean batching) {
+			super(execCxt);
+			this.batching = batching;
+		}
+
+
+		@Override
+		protected QueryIterator exec(Op op, QueryIterator input) {
+			long[] counts = getCounts(op);
+			QueryIterator result = super.exec(op, input);
+			return counts != null ? new CountingIterator(result, counts) : result;
+		}
+
+
+		@Override
+		protected boolean isBatching() {
+			return batching;
+		}
+	}
+
+
+	/**
+	 * Records the join order that the standard StageGenerator uses.  Its ReorderTransformation
+	 * is wrapped, so that the ReorderProc that it computes from the pattern with the first
+	 * input binding substituted is recorded when it is applied.
+	 */
+	private class RecordingStageGeneratorGeneric extends StageGeneratorGeneric {
+
+		@Override
+		protected QueryIterator execute(BasicPattern pattern, ReorderTransformation reorder,
+				StageGenerator execution, QueryIterator input, ExecutionContext execCxt) {
+			if(reorder != null && pattern.size() >= 2) {
+				reorder = new RecordingReorderTransformation(reorder);
+			}
+			else {
+				// Not reordered
+				recordJoinOrder(pattern);
+			}
+			return super.execute(pattern, reorder, execution, input, execCxt);
+		}
+	}
+
+
+	private class RecordingReorderTransformation implements ReorderTransformation {
+
+		private ReorderTransformation delegate;
+
+
+		RecordingReorderTransformation(ReorderTransformation delegate) {
+			this.delegate = delegate;
+		}
+
+
+		@Override
+		public BasicPattern reorder(BasicPattern pattern) {
+			BasicPattern result = delegate.reorder(pattern);
+			recordJoinOrder(result);
+			return result;
+		}
+
+
+		@Override
+		public ReorderProc reorderIndexes(BasicPattern pattern) {
+			final ReorderProc proc = delegate.reorderIndexes(pattern);
+			return new ReorderProc() {
+				@Override
+				public BasicPattern reorder(BasicPattern pattern) {
+					BasicPattern result = proc.reorder(pattern);
+					recordJoinOrder(result);
+					return result;
+				}
+			};
+		}
+	}
+
+
+	/**
+	 * Used for non-standard StageGenerators, which are usually chained in front of
+	 * StageGeneratorGeneric, e.g. by TDB.  TDB graphs are reordered internally by TDB,
+	 * so only the patterns as passed into the generator can be recorded for them.
+	 * For other graphs, the join order of the StageGeneratorGeneric fallback is recorded,
+	 * computed in the same way from the first input binding.
+	 */
+	private class RecordingStageGenerator implements StageGenerator {
+
+		private StageGenerator delegate;
+
+
+		RecordingStageGenerator(StageGenerator delegate) {
+			this.delegate = delegate;
+		}
+
+
+		@Override
+		public QueryIterator execute(BasicPattern pattern, QueryIterator input, ExecutionContext execCxt) {
+			Graph graph = execCxt.getActiveGraph();
+			if(graph != null && graph.getClass().getName().startsWith("org.apache.jena.tdb")) {
+				recordJoinOrder(pattern);
+			}
+			else if(pattern.size() < 2) {
+				recordJoinOrder(pattern);
+			}
+			else if(input.hasNext()) {
+				BasicPattern substituted = pattern;
+				if(!input.isJoinIdentity()) {
+					QueryIterPeek peek = QueryIterPeek.create(input, execCxt);
+					input = peek;
+					substituted = Substitute.substitute(pattern, peek.peek());
+				}
+				recordJoinOrder(ReorderLib.fixed().reorderIndexes(substituted).reorder(pattern));
+			}
+			return delegate.execute(pattern, input, execCxt);
+		}
+	}
+}
@@ -17,25 +17,18 @@
 
 package org.spinrdf.arq;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.sparql.function.FunctionFactory;
 import org.apache.jena.sparql.pfunction.PropertyFunctionFactory;
-import org.spinrdf.model.Function;
-import org.spinrdf.util.JenaUtil;
-import org.spinrdf.vocabulary.SPIN;
 
 /**
  * A helper object that can be used to register SPARQL functions
  * (and property functions) per thread, e.g. per servlet request.
+ * 
+ * This is only a lightweight view on the Model: the actual function
+ * factories are shared across registrations via SPINFunctionFactoryCache.
  */
 public class SPINThreadFunctions {
-	
-	private Map<String,FunctionFactory> functionsCache = new HashMap<String,FunctionFactory>();
-	
-	private Map<String,PropertyFunctionFactory> pfunctionsCache = new HashMap<String,PropertyFunctionFactory>();
 
 	private Model model;
 	
@@ -46,59 +39,11 @@ public class SPINThreadFunctions {
 	
 	
 	FunctionFactory getFunctionFactory(String uri) {
-		FunctionFactory old = functionsCache.get(uri);
-		if(old != null) {
-			return old;
-		}
-		else if(functionsCache.containsKey(uri)) {
-			return null;
-		}
-		else {
-			return getFunctionFactoryFromModel(uri);
-		}
+		return SPINFunctionFactoryCache.get().getFunctionFactory(model, uri);
 	}
 	
 	
 	PropertyFunctionFactory getPFunctionFactory(String uri) {
-		PropertyFunctionFactory old = pfunctionsCache.get(uri);
-		if(old != null) {
-			return old;
-		}
-		else if(pfunctionsCache.containsKey(uri)) {
-			return null;
-		}
-		else {
-			return getPropertyFunctionFactoryFromModel(uri);
-		}
-	}
-
-
-	private FunctionFactory getFunctionFactoryFromModel(String uri) {
-		Function spinFunction = model.getResource(uri).as(Function.class);
-		if(JenaUtil.hasIndirectType(spinFunction, SPIN.Function)) {
-			FunctionFactory arqFunction = SPINFunctionDrivers.get().create(spinFunction);
-			if(arqFunction != null) {
-				functionsCache.put(uri, arqFunction);
-				return arqFunction;
-			}
-		}
-		// Remember failed attempt for future
-		functionsCache.put(uri, null);
-		return null;
-	}
-
-
-	private PropertyFunctionFactory getPropertyFunctionFactoryFromModel(String uri) {
-		Function spinFunction = model.getResource(uri).as(Function.class);
-		if(JenaUtil.hasIndirectType(spinFunction, SPIN.MagicProperty)) {
-			if(spinFunction.hasProperty(SPIN.body)) {
-				final SPINARQPFunction arqFunction = SPINARQPFunctionFactory.get().create(spinFunction);
-				pfunctionsCache.put(uri, arqFunction);
-				return arqFunction;
-			}
-		}
-		// Remember failed attempt for future
-		pfunctionsCache.put(uri, null);
-		return null;
+		return SPINFunctionFactoryCache.get().getPropertyFunctionFactory(model, uri);
 	}
 }
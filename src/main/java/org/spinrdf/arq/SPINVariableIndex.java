@@ -0,0 +1,233 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.arq;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.Dyadic;
+import org.apache.jena.graph.compose.Polyadic;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.spinrdf.util.AbstractGraphListener;
+import org.spinrdf.vocabulary.SP;
+
+/**
+ * A process-wide index of the named (URI) SPIN variables in a graph, from
+ * sp:varName to the variable's URI node.  ARQ2SPIN uses this to reuse existing
+ * URI variables instead of scanning all sp:varName triples each time a new
+ * instance is created.
+ *
+ * <p>The index of a graph is built on first use and then maintained through
+ * the graph's event manager: added triples are indexed incrementally, while
+ * deleted variables and bulk removals cause the index to be rebuilt on the
+ * next lookup.  Union graphs (e.g. those of OntModels) are not indexed as a
+ * whole - instead their sub-graphs are consulted in order, so that changes
+ * made directly to a sub-graph are also visible.</p>
+ *
+ * <p>As in SPINFunctionFactoryCache, only weak references to the graphs are
+ * held and the index of each graph is attached to it as a GraphListener.</p>
+ */
+public class SPINVariableIndex {
+
+	private static SPINVariableIndex singleton = new SPINVariableIndex();
+
+	public static SPINVariableIndex get() {
+		return singleton;
+	}
+
+
+	public static void set(SPINVariableIndex value) {
+		SPINVariableIndex.singleton = value;
+	}
+
+
+	private Map<Graph,WeakReference<GraphIndex>> entries = Collections.synchronizedMap(new WeakHashMap<Graph,WeakReference<GraphIndex>>());
+
+
+	/**
+	 * Removes all indices.  They will be rebuilt on demand.
+	 */
+	public void clear() {
+		List<WeakReference<GraphIndex>> refs;
+		synchronized(entries) {
+			refs = new ArrayList<WeakReference<GraphIndex>>(entries.values());
+		}
+		for(WeakReference<GraphIndex> ref : refs) {
+			GraphIndex index = ref.get();
+			if(index != null) {
+				index.invalidate();
+			}
+		}
+	}
+
+
+	/**
+	 * Gets a URI variable with a given name from a graph.
+	 * @param graph  the Graph to search in
+	 * @param varName  the name of the variable (without ?)
+	 * @return the URI Node of a variable with that sp:varName or null
+	 */
+	public Node getVariable(Graph graph, String varName) {
+		if(graph instanceof Polyadic) {
+			// getSubGraphs() does not include the base graph
+			Graph baseGraph = ((Polyadic)graph).getBaseGraph();
+			if(baseGraph != null) {
+				Node result = getVariable(baseGraph, varName);
+				if(result != null) {
+					return result;
+				}
+			}
+			for(Graph subGraph : ((Polyadic)graph).getSubGraphs()) {
+				Node result = getVariable(subGraph, varName);
+				if(result != null) {
+					return result;
+				}
+			}
+			return null;
+		}
+		else if(graph instanceof Dyadic) {
+			Node result = getVariable(((Dyadic)graph).getL(), varName);
+			if(result == null) {
+				result = getVariable(((Dyadic)graph).getR(), varName);
+			}
+			return result;
+		}
+		else {
+			return getIndex(graph).get(varName);
+		}
+	}
+
+
+	private GraphIndex getIndex(Graph graph) {
+		synchronized(entries) {
+			WeakReference<GraphIndex> ref = entries.get(graph);
+			GraphIndex index = ref != null ? ref.get() : null;
+			if(index == null) {
+				index = new GraphIndex(graph);
+				graph.getEventManager().register(index);
+				entries.put(graph, new WeakReference<GraphIndex>(index));
+			}
+			return index;
+		}
+	}
+
+
+	/**
+	 * The index of a single graph.  Registered as listener so that the graph keeps
+	 * it alive, and so that changes to the graph can be tracked.
+	 */
+	private static class GraphIndex extends AbstractGraphListener {
+
+		private Graph graph;
+
+		private volatile boolean populated;
+
+		private Map<String,Node> vars = new ConcurrentHashMap<String,Node>();
+
+
+		GraphIndex(Graph graph) {
+			this.graph = graph;
+		}
+
+
+		Node get(String varName) {
+			if(!populated) {
+				populate();
+			}
+			return vars.get(varName);
+		}
+
+
+		void invalidate() {
+			populated = false;
+			vars.clear();
+		}
+
+
+		private synchronized void populate() {
+			if(!populated) {
+				ExtendedIterator<Triple> it = graph.find(Node.ANY, SP.varName.asNode(), Node.ANY);
+				try {
+					while(it.hasNext()) {
+						put(it.next());
+					}
+				}
+				finally {
+					it.close();
+				}
+				populated = true;
+			}
+		}
+
+
+		private void put(Triple triple) {
+			if(triple.getSubject().isURI() && triple.getObject().isLiteral()) {
+				vars.put(triple.getObject().getLiteralLexicalForm(), triple.getSubject());
+			}
+		}
+
+
+		@Override
+		public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+			// Avoid iterating over large bulk additions if nothing needs to be maintained
+			if(populated) {
+				super.notifyAddIterator(g, it);
+			}
+		}
+
+
+		@Override
+		public void notifyAddTriple(Graph g, Triple t) {
+			if(populated && SP.varName.asNode().equals(t.getPredicate())) {
+				put(t);
+			}
+		}
+
+
+		@Override
+		public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+			if(populated) {
+				super.notifyDeleteIterator(g, it);
+			}
+		}
+
+
+		@Override
+		public void notifyDeleteTriple(Graph g, Triple t) {
+			if(populated && SP.varName.asNode().equals(t.getPredicate()) && t.getSubject().isURI()) {
+				// Another variable may have the same name, so re-scan on demand
+				invalidate();
+			}
+		}
+
+
+		@Override
+		protected void notifyRemoveAll(Graph source, Triple pattern) {
+			invalidate();
+		}
+	}
+}
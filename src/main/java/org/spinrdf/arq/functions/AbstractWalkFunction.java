@@ -17,13 +17,18 @@
 
 package org.spinrdf.arq.functions;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
@@ -34,9 +39,19 @@ import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.sparql.core.DatasetImpl;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.expr.E_Function;
+import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.ExprVar;
 import org.apache.jena.sparql.expr.NodeValue;
 import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.function.FunctionRegistry;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.Symbol;
 import org.apache.jena.util.iterator.ExtendedIterator;
 import org.spinrdf.arq.ARQFactory;
 import org.spinrdf.arq.AbstractFunction;
@@ -44,31 +59,84 @@ import org.spinrdf.arq.DatasetWithDifferentDefaultModel;
 
 /**
  * The base implementation of sh:walkObjects and sh:walkSubjects.
+ * 
+ * The tree is walked breadth-first, so that the result of the node that is
+ * closest to the start node is returned.  The results of the callback function
+ * are remembered for each visited node for the duration of the surrounding
+ * query execution, so that shared ancestors are only evaluated once.
  */
 public abstract class AbstractWalkFunction extends AbstractFunction {
+	
+	private static final Symbol MEMO = Symbol.create("http://spinrdf.org/spin#walkMemo");
+	
+	/**
+	 * Marks nodes in the memo for which the callback did not produce a result.
+	 */
+	private static final Node NO_RESULT = Node.ANY;
+	
+	private static final Var ARG1 = Var.alloc("arg1");
+	
+	private static boolean evaluateNatively = true;
+	
+	private static int maxDepth = Integer.MAX_VALUE;
+	
+	
+	public static int getMaxDepth() {
+		return maxDepth;
+	}
+	
+	
+	public static boolean isEvaluatingNatively() {
+		return evaluateNatively;
+	}
+	
+	
+	/**
+	 * Specifies whether the callback function shall be called directly if it is
+	 * registered with the ARQ FunctionRegistry, instead of executing a nested
+	 * SELECT query for each visited node.  This is on by default.
+	 * @param value  false to always use nested queries
+	 */
+	public static void setEvaluateNatively(boolean value) {
+		AbstractWalkFunction.evaluateNatively = value;
+	}
+	
+	
+	/**
+	 * Limits how many steps away from the start node the walk may go.
+	 * A value of 0 only evaluates the start node itself.  Unlimited by default.
+	 * @param value  the new maximum depth
+	 */
+	public static void setMaxDepth(int value) {
+		AbstractWalkFunction.maxDepth = value;
+	}
+	
 
 	@Override
 	protected NodeValue exec(Node[] nodes, FunctionEnv env) {
 		Node startNode = nodes[0];
 		Node predicate = nodes[1];
 		Node function = nodes[2];
-		Model model = ModelFactory.createModelForGraph(env.getActiveGraph());
-		QuerySolutionMap initialBinding = new QuerySolutionMap();
-		StringBuffer expression = new StringBuffer("<" + function + ">(?arg1");
+		
+		// The memo key consists of the graph, function, predicate, extra args and the visited node
+		List<Object> keyPrefix = new ArrayList<Object>(nodes.length + 2);
+		keyPrefix.add(env.getActiveGraph());
+		keyPrefix.add(function);
+		keyPrefix.add(predicate);
 		for(int i = 3; i < nodes.length; i++) {
-			expression.append(", ");
-			expression.append("?");
-			String varName = "arg" + (i - 1);
-			expression.append(varName);
-			if(nodes[i] != null) {
-				initialBinding.add(varName, model.asRDFNode(nodes[i]));
-			}
+			keyPrefix.add(nodes[i]);
+		}
+		
+		Callback callback = null;
+		if(evaluateNatively && function.isURI() && env.getContext() != null &&
+				FunctionRegistry.get(env.getContext()).isRegistered(function.getURI())) {
+			callback = new NativeCallback(function, nodes, env);
 		}
-		expression.append(")");
-		Query query = ARQFactory.get().createExpressionQuery(expression.toString());
-		Node result = walkTree(model, 
-				DatasetImpl.wrap(env.getDataset()), 
-				startNode, predicate, query, initialBinding, new HashSet<Node>());
+		if(callback == null) {
+			callback = new QueryCallback(function, nodes, env);
+		}
+		
+		Node result = walkTree(env.getActiveGraph(), startNode, predicate, callback, keyPrefix, getMemo(env));
 		if(result != null) {
 			return NodeValue.makeNode(result);
 		}
@@ -78,44 +146,71 @@ public abstract class AbstractWalkFunction extends AbstractFunction {
 	}
 	
 	
-	private Node walkTree(Model model, Dataset oldDataset, Node node, Node predicate, 
-			Query query, QuerySolution initialBinding, Set<Node> reached) {
-		QuerySolutionMap localBinding = new QuerySolutionMap();
-		localBinding.addAll(initialBinding);
-		localBinding.add("arg1", model.asRDFNode(node));
-		Dataset dataset = new DatasetWithDifferentDefaultModel(model, oldDataset);
-		QueryExecution qexec = ARQFactory.get().createQueryExecution(query, dataset, localBinding);
-		ResultSet rs = qexec.execSelect();
-		try {
-			if(rs.hasNext()) {
-				List<String> resultVars = rs.getResultVars();
-				String varName = resultVars.get(0);
-				RDFNode resultNode = rs.next().get(varName);
-				if(resultNode != null) {
-					return resultNode.asNode();
+	private Map<List<Object>,Node> getMemo(FunctionEnv env) {
+		Context context = env.getContext();
+		if(context == null || context == ARQ.getContext()) {
+			// Never keep memos in the global context
+			return null;
+		}
+		@SuppressWarnings("unchecked")
+		Map<List<Object>,Node> memo = (Map<List<Object>,Node>) context.get(MEMO);
+		if(memo == null) {
+			synchronized(context) {
+				memo = context.get(MEMO);
+				if(memo == null) {
+					memo = new ConcurrentHashMap<List<Object>,Node>();
+					context.set(MEMO, memo);
 				}
 			}
-		} 
-		finally {
-			qexec.close();
 		}
+		return memo;
+	}
+	
+	
+	private Node walkTree(Graph graph, Node startNode, Node predicate, Callback callback, List<Object> keyPrefix, Map<List<Object>,Node> memo) {
 		
-		// Recurse into parents
-		ExtendedIterator<Triple> it = createIterator(model.getGraph(), node, predicate);
-		try {
-			while(it.hasNext()) {
-				Node next = getNext(it.next());
-				if((next.isBlank() || next.isURI()) && !reached.contains(next)) {
-					reached.add(next);
-					Node nextResult = walkTree(model, oldDataset, next, predicate, query, initialBinding, reached);
-					if(nextResult != null) {
-						return nextResult;
+		Set<Node> reached = new HashSet<Node>();
+		reached.add(startNode);
+		List<Node> level = Collections.singletonList(startNode);
+		for(int depth = 0; !level.isEmpty() && depth <= maxDepth; depth++) {
+			List<Node> nextLevel = new ArrayList<Node>();
+			for(Node node : level) {
+				Node result;
+				if(memo != null) {
+					List<Object> key = new ArrayList<Object>(keyPrefix);
+					key.add(node);
+					result = memo.get(key);
+					if(result == null) {
+						result = callback.eval(node);
+						memo.put(key, result != null ? result : NO_RESULT);
+					}
+					else if(result == NO_RESULT) {
+						result = null;
+					}
+				}
+				else {
+					result = callback.eval(node);
+				}
+				if(result != null) {
+					return result;
+				}
+				
+				if(depth < maxDepth) {
+					ExtendedIterator<Triple> it = createIterator(graph, node, predicate);
+					try {
+						while(it.hasNext()) {
+							Node next = getNext(it.next());
+							if((next.isBlank() || next.isURI()) && reached.add(next)) {
+								nextLevel.add(next);
+							}
+						}
+					}
+					finally {
+						it.close();
 					}
 				}
 			}
-		}
-		finally {
-			it.close();
+			level = nextLevel;
 		}
 		
 		return null;
@@ -126,4 +221,108 @@ public abstract class AbstractWalkFunction extends AbstractFunction {
 	
 	
 	protected abstract Node getNext(Triple triple);
+	
+	
+	private static interface Callback {
+		
+		Node eval(Node node);
+	}
+	
+	
+	/**
+	 * Calls the function directly, bypassing the ARQ query engine.
+	 */
+	private static class NativeCallback implements Callback {
+		
+		private FunctionEnv env;
+		
+		private Expr expr;
+		
+		private BindingMap binding;
+		
+		
+		NativeCallback(Node function, Node[] nodes, FunctionEnv env) {
+			this.env = env;
+			this.binding = BindingFactory.create();
+			ExprList args = new ExprList(new ExprVar(ARG1));
+			for(int i = 3; i < nodes.length; i++) {
+				Var var = Var.alloc("arg" + (i - 1));
+				args.add(new ExprVar(var));
+				if(nodes[i] != null) {
+					binding.add(var, nodes[i]);
+				}
+			}
+			this.expr = new E_Function(function.getURI(), args);
+		}
+
+
+		@Override
+		public Node eval(Node node) {
+			try {
+				NodeValue result = expr.eval(BindingFactory.binding(binding, ARG1, node), env);
+				return result != null ? result.asNode() : null;
+			}
+			catch(ExprEvalException ex) {
+				return null;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Executes a nested SELECT query for each node.
+	 */
+	private static class QueryCallback implements Callback {
+		
+		private QuerySolutionMap initialBinding = new QuerySolutionMap();
+		
+		private Model model;
+		
+		private Dataset oldDataset;
+		
+		private Query query;
+		
+		
+		QueryCallback(Node function, Node[] nodes, FunctionEnv env) {
+			model = ModelFactory.createModelForGraph(env.getActiveGraph());
+			oldDataset = DatasetImpl.wrap(env.getDataset());
+			StringBuffer expression = new StringBuffer("<" + function + ">(?arg1");
+			for(int i = 3; i < nodes.length; i++) {
+				expression.append(", ");
+				expression.append("?");
+				String varName = "arg" + (i - 1);
+				expression.append(varName);
+				if(nodes[i] != null) {
+					initialBinding.add(varName, model.asRDFNode(nodes[i]));
+				}
+			}
+			expression.append(")");
+			query = ARQFactory.get().createExpressionQuery(expression.toString());
+		}
+		
+		
+		@Override
+		public Node eval(Node node) {
+			QuerySolutionMap localBinding = new QuerySolutionMap();
+			localBinding.addAll(initialBinding);
+			localBinding.add("arg1", model.asRDFNode(node));
+			Dataset dataset = new DatasetWithDifferentDefaultModel(model, oldDataset);
+			QueryExecution qexec = ARQFactory.get().createQueryExecution(query, dataset, localBinding);
+			ResultSet rs = qexec.execSelect();
+			try {
+				if(rs.hasNext()) {
+					List<String> resultVars = rs.getResultVars();
+					String varName = resultVars.get(0);
+					RDFNode resultNode = rs.next().get(varName);
+					if(resultNode != null) {
+						return resultNode.asNode();
+					}
+				}
+				return null;
+			} 
+			finally {
+				qexec.close();
+			}
+		}
+	}
 }
@@ -18,10 +18,13 @@
 package org.spinrdf.arq.functions;
 
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.compose.MultiUnion;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
@@ -32,13 +35,21 @@ import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.sparql.core.DatasetImpl;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprEvalException;
 import org.apache.jena.sparql.expr.NodeValue;
 import org.apache.jena.sparql.function.Function;
 import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.function.FunctionEnvBase;
 import org.apache.jena.sparql.function.FunctionFactory;
 import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.sparql.util.Context;
 import org.apache.jena.sparql.util.FmtUtils;
+import org.apache.jena.sparql.util.Symbol;
 import org.apache.jena.vocabulary.RDF;
 import org.spinrdf.arq.ARQFactory;
 import org.spinrdf.arq.AbstractFunction;
@@ -46,6 +57,7 @@ import org.spinrdf.arq.DatasetWithDifferentDefaultModel;
 import org.spinrdf.model.Ask;
 import org.spinrdf.model.SPINFactory;
 import org.spinrdf.model.Select;
+import org.spinrdf.model.Variable;
 import org.spinrdf.statistics.SPINStatistics;
 import org.spinrdf.statistics.SPINStatisticsManager;
 import org.spinrdf.util.JenaDatatypes;
@@ -66,6 +78,8 @@ import org.spinrdf.vocabulary.SPIN;
  * The expression will be evaluated with all bindings from the property-value pairs above.
  */
 public class EvalFunction extends AbstractFunction implements FunctionFactory {
+	
+	private static final Symbol STATES = Symbol.create("http://spinrdf.org/spin#evalStates");
 
 
 	private void addStatistics(Node[] nodes, FunctionEnv env, long startTime, String expr, RDFNode result) {
@@ -106,7 +120,6 @@ public class EvalFunction extends AbstractFunction implements FunctionFactory {
 			throw new ExprEvalException("Missing arguments");
 		}
 
-		Model baseModel = ModelFactory.createModelForGraph(env.getActiveGraph());
 		Node exprNode = nodes[0];
 		if(exprNode == null) {
 			throw new ExprEvalException("No expression specified");
@@ -115,25 +128,45 @@ public class EvalFunction extends AbstractFunction implements FunctionFactory {
 			return NodeValue.makeNode(exprNode);
 		}
 		else {
-			Model model = baseModel;
-			if(!model.contains(SPIN._arg1, RDF.type, SP.Variable)) {
-				MultiUnion multiUnion = JenaUtil.createMultiUnion(new Graph[] {
-						env.getActiveGraph(),
-						SPIN.getModel().getGraph()
-				});
-				model = ModelFactory.createModelForGraph(multiUnion);
+			EvalState state = getState(env);
+			Model model = state.model;
+			CompiledEval compiled = state.compiled.get(exprNode);
+			if(compiled == null) {
+				compiled = compile(exprNode, model);
+				state.compiled.put(exprNode, compiled);
+			}
+			boolean recording = SPINStatisticsManager.get().isRecording() && SPINStatisticsManager.get().isRecordingSPINFunctions();
+			long startTime = System.currentTimeMillis();
+			
+			// Fast path: evaluate the expression directly
+			if(compiled.expr != null) {
+				RDFNode result = null;
+				try {
+					NodeValue nv = compiled.expr.eval(getBinding(nodes), new FunctionEnvBase(env.getContext(), model.getGraph(), env.getDataset()));
+					if(nv != null) {
+						result = model.asRDFNode(nv.asNode());
+					}
+				}
+				catch(ExprEvalException ex) {
+					// Leave result null
+				}
+				if(recording) {
+					addStatistics(nodes, env, startTime, SPINExpressions.getExpressionString(compiled.expression), result);
+				}
+				if(result != null) {
+					return NodeValue.makeNode(result.asNode());
+				}
+				throw new ExprEvalException("Expression has no result");
 			}
-			Resource exprRDFNode = (Resource) model.asRDFNode(exprNode);
+			
 			QuerySolutionMap bindings = getBindings(nodes, model);
-			org.spinrdf.model.Query spinQuery = SPINFactory.asQuery(exprRDFNode);
 			Dataset newDataset = new DatasetWithDifferentDefaultModel(model, DatasetImpl.wrap(env.getDataset()));
-			long startTime = System.currentTimeMillis();
-			if(spinQuery instanceof Select || spinQuery instanceof Ask) {
-				Query query = ARQFactory.get().createQuery(spinQuery);
+			if(compiled.query != null) {
+				Query query = compiled.query;
 				QueryExecution qexec = ARQFactory.get().createQueryExecution(query, newDataset, bindings);
 				if(query.isAskType()) {
 					boolean result = qexec.execAsk();
-					if(SPINStatisticsManager.get().isRecording() && SPINStatisticsManager.get().isRecordingSPINFunctions()) {
+					if(recording) {
 						addStatistics(nodes, env, startTime, "ASK...", result ? JenaDatatypes.TRUE : JenaDatatypes.FALSE);
 					}
 					return NodeValue.makeBoolean(result);
@@ -144,7 +177,7 @@ public class EvalFunction extends AbstractFunction implements FunctionFactory {
 						String var = rs.getResultVars().get(0);
 						if(rs.hasNext()) {
 							RDFNode result = rs.next().get(var);
-							if(SPINStatisticsManager.get().isRecording() && SPINStatisticsManager.get().isRecordingSPINFunctions()) {
+							if(recording) {
 								addStatistics(nodes, env, startTime, "SELECT...", result);
 							}
 							if(result != null) {
@@ -158,9 +191,9 @@ public class EvalFunction extends AbstractFunction implements FunctionFactory {
 				}
 			}
 			else {
-				RDFNode expr = SPINFactory.asExpression(exprRDFNode);
+				RDFNode expr = compiled.expression;
 				RDFNode result = SPINExpressions.evaluate((Resource) expr, newDataset, bindings);
-				if(SPINStatisticsManager.get().isRecording() && SPINStatisticsManager.get().isRecordingSPINFunctions()) {
+				if(recording) {
 					addStatistics(nodes, env, startTime, SPINExpressions.getExpressionString(expr), result);
 				}
 				if(result != null) {
@@ -170,6 +203,68 @@ public class EvalFunction extends AbstractFunction implements FunctionFactory {
 			throw new ExprEvalException("Expression has no result");
 		}
 	}
+	
+	
+	private CompiledEval compile(Node exprNode, Model model) {
+		CompiledEval result = new CompiledEval();
+		Resource exprRDFNode = (Resource) model.asRDFNode(exprNode);
+		org.spinrdf.model.Query spinQuery = SPINFactory.asQuery(exprRDFNode);
+		if(spinQuery instanceof Select || spinQuery instanceof Ask) {
+			result.query = ARQFactory.get().createQuery(spinQuery);
+		}
+		else {
+			RDFNode expr = SPINFactory.asExpression(exprRDFNode);
+			result.expression = expr;
+			if(expr instanceof Resource && !(expr instanceof Variable) && !expr.isURIResource()) {
+				result.expr = ARQFactory.get().createNativeExpression(expr);
+			}
+		}
+		return result;
+	}
+	
+	
+	private Binding getBinding(Node[] nodes) {
+		BindingMap binding = BindingFactory.create();
+		for(int i = 1; i < nodes.length - 1; i += 2) {
+			Node property = nodes[i];
+			Node value = nodes[i + 1];
+			if(value != null) {
+				binding.add(Var.alloc(property.getLocalName()), value);
+			}
+		}
+		return binding;
+	}
+	
+	
+	/**
+	 * Gets the query Model and compiled expressions for the active graph.
+	 * If possible, these are kept in the Context of the surrounding query execution,
+	 * so that they are only created once per execution and active graph.
+	 */
+	private EvalState getState(FunctionEnv env) {
+		Graph activeGraph = env.getActiveGraph();
+		Context context = env.getContext();
+		if(context == null || context == ARQ.getContext()) {
+			return new EvalState(activeGraph);
+		}
+		@SuppressWarnings("unchecked")
+		Map<Graph,EvalState> states = (Map<Graph,EvalState>) context.get(STATES);
+		if(states == null) {
+			synchronized(context) {
+				states = context.get(STATES);
+				if(states == null) {
+					states = new ConcurrentHashMap<Graph,EvalState>();
+					context.set(STATES, states);
+				}
+			}
+		}
+		EvalState state = states.get(activeGraph);
+		if(state == null) {
+			state = new EvalState(activeGraph);
+			states.put(activeGraph, state);
+		}
+		return state;
+	}
 
 
 	private QuerySolutionMap getBindings(Node[] nodes, Model model) {
@@ -183,4 +278,40 @@ public class EvalFunction extends AbstractFunction implements FunctionFactory {
 		}
 		return bindings;
 	}
+	
+	
+	private static class CompiledEval {
+		
+		// A natively evaluable version of expression, or null
+		Expr expr;
+		
+		// The SPIN expression if this is not a query
+		RDFNode expression;
+		
+		// The ASK or SELECT query, or null
+		Query query;
+	}
+	
+	
+	private static class EvalState {
+		
+		Map<Node,CompiledEval> compiled = new ConcurrentHashMap<Node,CompiledEval>();
+		
+		Model model;
+		
+		
+		EvalState(Graph activeGraph) {
+			Model baseModel = ModelFactory.createModelForGraph(activeGraph);
+			if(!baseModel.contains(SPIN._arg1, RDF.type, SP.Variable)) {
+				MultiUnion multiUnion = JenaUtil.createMultiUnion(new Graph[] {
+						activeGraph,
+						SPIN.getModel().getGraph()
+				});
+				model = ModelFactory.createModelForGraph(multiUnion);
+			}
+			else {
+				model = baseModel;
+			}
+		}
+	}
 }
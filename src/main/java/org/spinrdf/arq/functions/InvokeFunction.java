@@ -17,6 +17,9 @@
 
 package org.spinrdf.arq.functions;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.jena.graph.Node;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
@@ -26,7 +29,22 @@ import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
 import org.apache.jena.sparql.engine.binding.BindingHashMap;
+import org.apache.jena.sparql.expr.E_Add;
+import org.apache.jena.sparql.expr.E_Divide;
+import org.apache.jena.sparql.expr.E_Equals;
+import org.apache.jena.sparql.expr.E_GreaterThan;
+import org.apache.jena.sparql.expr.E_GreaterThanOrEqual;
+import org.apache.jena.sparql.expr.E_LessThan;
+import org.apache.jena.sparql.expr.E_LessThanOrEqual;
+import org.apache.jena.sparql.expr.E_LogicalAnd;
+import org.apache.jena.sparql.expr.E_LogicalOr;
+import org.apache.jena.sparql.expr.E_Multiply;
+import org.apache.jena.sparql.expr.E_NotEquals;
+import org.apache.jena.sparql.expr.E_Subtract;
+import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprEvalException;
 import org.apache.jena.sparql.expr.ExprList;
 import org.apache.jena.sparql.expr.NodeValue;
@@ -45,6 +63,52 @@ import org.spinrdf.vocabulary.SPL;
  * The function sh:invoke (and spif:invoke).
  */
 public class InvokeFunction	extends AbstractFunction {
+	
+	/**
+	 * The native implementations of the SPARQL operators, by their spin:symbol.
+	 */
+	private static final Map<String,Operator> symbol2Operator = new HashMap<String,Operator>();
+	static {
+		symbol2Operator.put("=", new Operator() { public Expr create(Expr a, Expr b) { return new E_Equals(a, b); }});
+		symbol2Operator.put("!=", new Operator() { public Expr create(Expr a, Expr b) { return new E_NotEquals(a, b); }});
+		symbol2Operator.put("<", new Operator() { public Expr create(Expr a, Expr b) { return new E_LessThan(a, b); }});
+		symbol2Operator.put("<=", new Operator() { public Expr create(Expr a, Expr b) { return new E_LessThanOrEqual(a, b); }});
+		symbol2Operator.put(">", new Operator() { public Expr create(Expr a, Expr b) { return new E_GreaterThan(a, b); }});
+		symbol2Operator.put(">=", new Operator() { public Expr create(Expr a, Expr b) { return new E_GreaterThanOrEqual(a, b); }});
+		symbol2Operator.put("+", new Operator() { public Expr create(Expr a, Expr b) { return new E_Add(a, b); }});
+		symbol2Operator.put("-", new Operator() { public Expr create(Expr a, Expr b) { return new E_Subtract(a, b); }});
+		symbol2Operator.put("*", new Operator() { public Expr create(Expr a, Expr b) { return new E_Multiply(a, b); }});
+		symbol2Operator.put("/", new Operator() { public Expr create(Expr a, Expr b) { return new E_Divide(a, b); }});
+		symbol2Operator.put("&&", new Operator() { public Expr create(Expr a, Expr b) { return new E_LogicalAnd(a, b); }});
+		symbol2Operator.put("||", new Operator() { public Expr create(Expr a, Expr b) { return new E_LogicalOr(a, b); }});
+	}
+	
+	/**
+	 * The dispatch table from sp: function URIs to native operators,
+	 * built on first use from the spin:symbols in the SPL model.
+	 */
+	private static volatile Map<String,Operator> uri2Operator;
+	
+	
+	private static Map<String,Operator> getOperators() {
+		Map<String,Operator> result = uri2Operator;
+		if(result == null) {
+			result = new HashMap<String,Operator>();
+			StmtIterator it = SPL.getModel().listStatements(null, SPIN.symbol, (RDFNode)null);
+			while(it.hasNext()) {
+				Statement s = it.next();
+				if(s.getSubject().isURIResource() && SP.NS.equals(s.getSubject().getNameSpace()) && s.getObject().isLiteral()) {
+					Operator operator = symbol2Operator.get(s.getString());
+					if(operator != null) {
+						result.put(s.getSubject().getURI(), operator);
+					}
+				}
+			}
+			uri2Operator = result;
+		}
+		return result;
+	}
+	
 
 	@Override
 	protected NodeValue exec(Node[] nodes, FunctionEnv env) {
@@ -59,6 +123,14 @@ public class InvokeFunction	extends AbstractFunction {
 		String uri = commandNode.getURI();
 		
 		// Special handling of SPARQL system functions such as sp:gt
+		Operator operator = getOperators().get(uri);
+		if(operator != null) {
+			if(nodes.length != 3 || nodes[1] == null || nodes[2] == null) {
+				throw new ExprEvalException("Operator " + uri + " requires two arguments");
+			}
+			Expr expr = operator.create(NodeValue.makeNode(nodes[1]), NodeValue.makeNode(nodes[2]));
+			return expr.eval(BindingFactory.binding(), env);
+		}
 		Resource functionResource = SPL.getModel().getResource(uri);
 		if(SP.NS.equals(functionResource.getNameSpace())) {
 			Statement symbolS = functionResource.getProperty(SPIN.symbol);
@@ -116,4 +188,10 @@ public class InvokeFunction	extends AbstractFunction {
 		NodeValue result = function.exec(new BindingHashMap(), exprList, uri, env);
 		return result;
 	}
+	
+	
+	private static interface Operator {
+		
+		Expr create(Expr a, Expr b);
+	}
 }
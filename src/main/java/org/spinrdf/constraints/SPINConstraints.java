@@ -49,8 +49,11 @@ import org.apache.jena.sparql.syntax.Element;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.spinrdf.arq.ARQFactory;
+import org.spinrdf.arq.SPINQueryPlanCapture;
 import org.spinrdf.model.*;
 import org.spinrdf.progress.ProgressMonitor;
+import org.spinrdf.statistics.SPINActiveRun;
+import org.spinrdf.statistics.SPINExecutionMonitor;
 import org.spinrdf.statistics.SPINStatistics;
 import org.spinrdf.system.SPINImports;
 import org.spinrdf.system.SPINLabels;
@@ -67,7 +70,31 @@ public class SPINConstraints {
 	
 	private static List<TemplateCall> NO_FIXES = Collections.emptyList();
 	
+	private static long planCaptureThreshold = -1;
+	
 
+	/**
+	 * Gets the duration (in ms) above which the query plans of constraints are captured.
+	 * @return the threshold or a negative value if disabled
+	 */
+	public static long getPlanCaptureThreshold() {
+		return planCaptureThreshold;
+	}
+	
+	
+	/**
+	 * Activates the capturing of query plans for slow constraints.
+	 * If active and statistics are collected, each constraint query is executed with a
+	 * SPINQueryPlanCapture, and the plans of those executions that took at least as long
+	 * as the threshold are attached to their SPINStatistics.
+	 * Capturing adds some overhead to every constraint check and should only be used for tuning.
+	 * @param value  the threshold in ms (0 to capture all plans, negative to disable)
+	 */
+	public static void setPlanCaptureThreshold(long value) {
+		SPINConstraints.planCaptureThreshold = value;
+	}
+	
+	
 	public static void addConstraintViolations(List<ConstraintViolation> results, SPINInstance instance, Property predicate, boolean matchValue, List<SPINStatistics> stats, ProgressMonitor monitor) {
 		if(predicate == null) {
 			predicate = SPIN.constraint;
@@ -171,43 +198,59 @@ public class SPINConstraints {
 		QueryExecution qexec = ARQFactory.get().createQueryExecution(arq, model);
 		
 		qexec.setInitialBinding(arqBindings);
+		SPINQueryPlanCapture planCapture = null;
+		if(stats != null && planCaptureThreshold >= 0) {
+			planCapture = new SPINQueryPlanCapture();
+			planCapture.install(qexec);
+		}
 		
 		long startTime = System.currentTimeMillis();
-		if(arq.isAskType()) {
-			if(qexec.execAsk() != matchValue) {
-				String message;
-				String comment = qot.getQuery().getComment();
-				if(comment == null) {
-					comment = JenaUtil.getStringProperty(qot.getQuery(), RDFS.label);
-				}
-				if(comment == null) {
-					message = SPINLabels.get().getLabel(qot.getQuery());
-				}
-				else {
-					message = comment;
-				}
-				message += "\n(SPIN constraint at " + SPINLabels.get().getLabel(qot.getCls()) + ")";
-				List<SimplePropertyPath> paths;
-				Resource path = JenaUtil.getPropertyResourceValue(qot.getQuery(), SPIN.violationPath);
-				if(path != null && path.isURIResource()) {
-					paths = new ArrayList<SimplePropertyPath>(1);
-					paths.add(new ObjectPropertyPath(resource, JenaUtil.asProperty(path)));
-				}
-				else {
-					paths = getPropertyPaths(resource, qot.getQuery().getWhere(), null);
+		SPINExecutionMonitor executionMonitor = SPINExecutionMonitor.get();
+		Object executionToken = executionMonitor != null ?
+				executionMonitor.beginConstraint(qot.toString(), qot.getCls() != null ? qot.getCls().asNode() : null) : null;
+		int oldSize = results.size();
+		try {
+			if(arq.isAskType()) {
+				if(qexec.execAsk() != matchValue) {
+					String message;
+					String comment = qot.getQuery().getComment();
+					if(comment == null) {
+						comment = JenaUtil.getStringProperty(qot.getQuery(), RDFS.label);
+					}
+					if(comment == null) {
+						message = SPINLabels.get().getLabel(qot.getQuery());
+					}
+					else {
+						message = comment;
+					}
+					message += "\n(SPIN constraint at " + SPINLabels.get().getLabel(qot.getCls()) + ")";
+					List<SimplePropertyPath> paths;
+					Resource path = JenaUtil.getPropertyResourceValue(qot.getQuery(), SPIN.violationPath);
+					if(path != null && path.isURIResource()) {
+						paths = new ArrayList<SimplePropertyPath>(1);
+						paths.add(new ObjectPropertyPath(resource, JenaUtil.asProperty(path)));
+					}
+					else {
+						paths = getPropertyPaths(resource, qot.getQuery().getWhere(), null);
+					}
+					Resource source = getSource(qot);
+					results.add(createConstraintViolation(paths, null, NO_FIXES, resource, message, source, null));
 				}
-				Resource source = getSource(qot);
-				results.add(createConstraintViolation(paths, null, NO_FIXES, resource, message, source, null));
+			}
+			else if(arq.isConstructType()) {
+				Model cm = qexec.execConstruct();
+				qexec.close();
+				addConstructedProblemReports(cm, results, model, qot.getCls(), resource, qot.getQuery().getComment(), getSource(qot));
 			}
 		}
-		else if(arq.isConstructType()) {
-			Model cm = qexec.execConstruct();
-			qexec.close();
-			addConstructedProblemReports(cm, results, model, qot.getCls(), resource, qot.getQuery().getComment(), getSource(qot));
+		finally {
+			if(executionMonitor != null) {
+				executionMonitor.endConstraint(executionToken, results.size() - oldSize);
+			}
 		}
 		long endTime = System.currentTimeMillis();
 		if(stats != null) {
-			long duration = startTime - endTime;
+			long duration = endTime - startTime;
 			String label = qot.toString();
 			String queryText;
 			if(qot.getTemplateCall() != null) {
@@ -217,7 +260,11 @@ public class SPINConstraints {
 				queryText = SPINLabels.get().getLabel(qot.getQuery());
 			}
 			Node cls = qot.getCls() != null ? qot.getCls().asNode() : null;
-			stats.add(new SPINStatistics(label, queryText, duration, startTime, cls));
+			SPINStatistics s = new SPINStatistics(label, queryText, duration, startTime, cls);
+			if(planCapture != null && duration >= planCaptureThreshold) {
+				s.setPlan(planCapture.getPlan());
+			}
+			stats.add(s);
 		}
 	}
 
@@ -243,7 +290,7 @@ public class SPINConstraints {
 			if(spinQuery instanceof Ask || spinQuery instanceof Construct) {
 
 				QuerySolutionMap bindings = createInitialBindings(resource, templateCall);
-				for(Argument arg : template.getArguments(false)) {
+				for(ArgumentDescriptor arg : template.getArgumentDescriptors()) {
 					if(!arg.isOptional()) {
 						if(!bindings.contains(arg.getVarName())) {
 							// Don't execute this template if any non-optional argument is missing
@@ -429,10 +476,16 @@ public class SPINConstraints {
 	private static QuerySolutionMap createInitialBindings(Resource resource, TemplateCall templateCall) {
 		QuerySolutionMap arqBindings = new QuerySolutionMap();
 		arqBindings.add(SPIN.THIS_VAR_NAME, resource);
-		Map<Argument,RDFNode> args = templateCall.getArgumentsMap();
-		for(Argument arg : args.keySet()) {
-			RDFNode value = args.get(arg);
-			arqBindings.add(arg.getVarName(), value);
+		Template template = templateCall.getTemplate();
+		if(template != null) {
+			for(ArgumentDescriptor arg : template.getArgumentDescriptors()) {
+				if(arg.getPredicate() != null) {
+					Statement s = templateCall.getProperty(arg.getPredicate());
+					if(s != null) {
+						arqBindings.add(arg.getVarName(), s.getObject());
+					}
+				}
+			}
 		}
 		return arqBindings;
 	}
@@ -524,6 +577,17 @@ public class SPINConstraints {
 
 	
 	private static void run(Model model, Property predicate, List<ConstraintViolation> results, List<SPINStatistics> stats, ProgressMonitor monitor) {
+		SPINActiveRun activeRun = SPINActiveRun.begin(SPINActiveRun.CONSTRAINTS);
+		try {
+			run(model, predicate, results, stats, monitor, activeRun);
+		}
+		finally {
+			SPINActiveRun.end(activeRun);
+		}
+	}
+	
+	
+	private static void run(Model model, Property predicate, List<ConstraintViolation> results, List<SPINStatistics> stats, ProgressMonitor monitor, SPINActiveRun activeRun) {
 		
 		if(predicate == null) {
 			predicate = SPIN.constraint;
@@ -556,6 +620,7 @@ public class SPINConstraints {
 				QueryWrapper queryWrapper = (QueryWrapper) arqWrapper;
 				Query arq = queryWrapper.getQuery();
 				String label = arqWrapper.getLabel();
+				activeRun.setCurrentLabel(label != null ? label : arqWrapper.getText());
 				if(arq.isAskType()) {
 					arq = convertAskToConstruct(arq, queryWrapper.getSPINQuery(), label);
 				}
@@ -598,33 +663,55 @@ public class SPINConstraints {
 			}
 			
 			long startTime = System.currentTimeMillis();
-			Model cm = JenaUtil.createDefaultModel();
-			if(thisDeep && !thisUnbound) {
-				StmtIterator it = model.listStatements(null, RDF.type, cls);
-				while(it.hasNext()) {
-					Resource instance = it.next().getSubject();
-					arqBindings.add(SPIN.THIS_VAR_NAME, instance);
+			SPINExecutionMonitor executionMonitor = SPINExecutionMonitor.get();
+			Object executionToken = executionMonitor != null ?
+					executionMonitor.beginConstraint(label, cls.asNode()) : null;
+			int oldSize = results.size();
+			try {
+				SPINQueryPlanCapture planCapture = stats != null && planCaptureThreshold >= 0 ? new SPINQueryPlanCapture() : null;
+				Model cm = JenaUtil.createDefaultModel();
+				if(thisDeep && !thisUnbound) {
+					StmtIterator it = model.listStatements(null, RDF.type, cls);
+					while(it.hasNext()) {
+						Resource instance = it.next().getSubject();
+						arqBindings.add(SPIN.THIS_VAR_NAME, instance);
+						QueryExecution qexec = ARQFactory.get().createQueryExecution(arq, model, arqBindings);
+						if(planCapture != null) {
+							planCapture.install(qexec);
+						}
+						qexec.execConstruct(cm);
+						qexec.close();
+					}
+				}
+				else {
 					QueryExecution qexec = ARQFactory.get().createQueryExecution(arq, model, arqBindings);
+					if(planCapture != null) {
+						planCapture.install(qexec);
+					}
 					qexec.execConstruct(cm);
 					qexec.close();
 				}
-			}
-			else {
-				QueryExecution qexec = ARQFactory.get().createQueryExecution(arq, model, arqBindings);
-				qexec.execConstruct(cm);
-				qexec.close();
-			}
 			
-			long endTime = System.currentTimeMillis();
-			if(stats != null) {
-				long duration = endTime - startTime;
-				String queryText = SPINLabels.get().getLabel(spinQuery);
-				if(label == null) {
-					label = queryText;
+				long endTime = System.currentTimeMillis();
+				if(stats != null) {
+					long duration = endTime - startTime;
+					String queryText = SPINLabels.get().getLabel(spinQuery);
+					if(label == null) {
+						label = queryText;
+					}
+					SPINStatistics s = new SPINStatistics(label, queryText, duration, startTime, cls.asNode());
+					if(planCapture != null && duration >= planCaptureThreshold) {
+						s.setPlan(planCapture.getPlan());
+					}
+					stats.add(s);
+				}
+				addConstructedProblemReports(cm, results, model, cls, null, label, source);
+			}
+			finally {
+				if(executionMonitor != null) {
+					executionMonitor.endConstraint(executionToken, results.size() - oldSize);
 				}
-				stats.add(new SPINStatistics(label, queryText, duration, startTime, cls.asNode()));
 			}
-			addConstructedProblemReports(cm, results, model, cls, null, label, source);
 		}
 	}
 }
@@ -47,6 +47,7 @@ import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.spinrdf.arq.ARQFactory;
 import org.spinrdf.progress.ProgressMonitor;
+import org.spinrdf.statistics.SPINExecutionMonitor;
 import org.spinrdf.statistics.SPINStatistics;
 import org.spinrdf.system.SPINLabels;
 import org.spinrdf.util.*;
@@ -209,83 +210,100 @@ public class SPINConstructors {
 				}
 				
 				long startTime = System.currentTimeMillis();
+				SPINExecutionMonitor executionMonitor = SPINExecutionMonitor.get();
+				Object executionToken = executionMonitor != null ?
+						executionMonitor.beginConstructor(commandWrapper.getLabel() != null ? commandWrapper.getLabel() : commandWrapper.getText(), instance != null ? instance.asNode() : null) : null;
+				int tripleCount = 0;
+				int existingCount = 0;
 				
-				if(commandWrapper instanceof QueryWrapper) {
+				try {
+					if(commandWrapper instanceof QueryWrapper) {
 					
-					final List<Triple> triples = new LinkedList<Triple>();
-					AbstractGraphListener listener = new AbstractGraphListener() {
+						final List<Triple> triples = new LinkedList<Triple>();
+						AbstractGraphListener listener = new AbstractGraphListener() {
 						
-						@Override
-						public void notifyAddTriple(Graph g, Triple t) {
-							triples.add(t);
-						}
+							@Override
+							public void notifyAddTriple(Graph g, Triple t) {
+								triples.add(t);
+							}
 						
-						@Override
-						public void notifyDeleteTriple(Graph g, Triple t) {
-						}
+							@Override
+							public void notifyDeleteTriple(Graph g, Triple t) {
+							}
 						
-						@Override
-						protected void notifyRemoveAll(Graph source, Triple pattern) {
-						}
-					};
+							@Override
+							protected void notifyRemoveAll(Graph source, Triple pattern) {
+							}
+						};
 					
-					QueryWrapper queryWrapper = (QueryWrapper) commandWrapper;
-					Query arqQuery = queryWrapper.getQuery();
-					if(arqQuery.isConstructType()) {
+						QueryWrapper queryWrapper = (QueryWrapper) commandWrapper;
+						Query arqQuery = queryWrapper.getQuery();
+						if(arqQuery.isConstructType()) {
 						
-						QueryExecution qexec = ARQFactory.get().createQueryExecution(arqQuery, queryModel);
-						qexec.setInitialBinding(bindings);
+							QueryExecution qexec = ARQFactory.get().createQueryExecution(arqQuery, queryModel);
+							qexec.setInitialBinding(bindings);
 						
-						// Execute construct and remember the order in which triples were inserted
-						// Note that this does not work yet since Jena appears to have random order
-						Model resultModel = ModelFactory.createDefaultModel();
-						resultModel.getGraph().getEventManager().register(listener);
-						qexec.execConstruct(resultModel);
-						qexec.close();
+							// Execute construct and remember the order in which triples were inserted
+							// Note that this does not work yet since Jena appears to have random order
+							Model resultModel = ModelFactory.createDefaultModel();
+							resultModel.getGraph().getEventManager().register(listener);
+							qexec.execConstruct(resultModel);
+							qexec.close();
+							tripleCount = triples.size();
 						
-						StringBuffer sb = new StringBuffer();
-						sb.append("Inferred by SPIN constructor at class ");
-						sb.append(SPINLabels.get().getLabel(type));
-						sb.append(":\n\n" + commandWrapper.getText());
-						String explanationText = sb.toString();
+							StringBuffer sb = new StringBuffer();
+							sb.append("Inferred by SPIN constructor at class ");
+							sb.append(SPINLabels.get().getLabel(type));
+							sb.append(":\n\n" + commandWrapper.getText());
+							String explanationText = sb.toString();
 		
-						// Add all new triples and any new resources
-						for(Triple triple : triples) {
-							Statement rs = queryModel.asStatement(triple);
-							if(!targetModel.contains(rs)) {
-								targetModel.add(rs);
+							// Add all new triples and any new resources
+							for(Triple triple : triples) {
+								Statement rs = queryModel.asStatement(triple);
+								if(targetModel.contains(rs)) {
+									existingCount++;
+								}
+								else {
+									targetModel.add(rs);
+									if(RDF.type.equals(rs.getPredicate())) {
+										Resource subject = rs.getSubject();
+										if(!newResources.contains(subject)) {
+											newResources.add(subject);
+										}
+									}
+									if(explanations != null) {
+										Resource source = commandWrapper.getStatement().getSubject();
+										explanations.put(triple, explanationText, source.asNode(),
+												commandWrapper.getSource() != null ? commandWrapper.getSource().asNode() : null);
+									}
+								}
+							}
+						}
+					}
+					else if(commandWrapper instanceof UpdateWrapper) {
+						Update update = ((UpdateWrapper)commandWrapper).getUpdate();
+						Dataset dataset = ARQFactory.get().getDataset(queryModel);
+						Collection<Graph> updateGraphs = UpdateUtil.getUpdatedGraphs(update, dataset.asDatasetGraph(), initialBindings);
+						ControlledUpdateGraphStore cugs = new ControlledUpdateGraphStore(dataset, updateGraphs);
+						UpdateProcessor up = UpdateExecutionFactory.create(update, cugs, JenaUtil.asBinding(bindings));
+						up.execute();
+						for(ControlledUpdateGraph cug : cugs.getControlledUpdateGraphs()) {
+							for(Triple triple : cug.getAddedTriples()) {
+								tripleCount++;
+								Statement rs = queryModel.asStatement(triple);
 								if(RDF.type.equals(rs.getPredicate())) {
 									Resource subject = rs.getSubject();
 									if(!newResources.contains(subject)) {
 										newResources.add(subject);
 									}
 								}
-								if(explanations != null) {
-									Resource source = commandWrapper.getStatement().getSubject();
-									explanations.put(triple, explanationText, source.asNode(),
-											commandWrapper.getSource() != null ? commandWrapper.getSource().asNode() : null);
-								}
 							}
 						}
 					}
 				}
-				else if(commandWrapper instanceof UpdateWrapper) {
-					Update update = ((UpdateWrapper)commandWrapper).getUpdate();
-					Dataset dataset = ARQFactory.get().getDataset(queryModel);
-					Collection<Graph> updateGraphs = UpdateUtil.getUpdatedGraphs(update, dataset.asDatasetGraph(), initialBindings);
-					ControlledUpdateGraphStore cugs = new ControlledUpdateGraphStore(dataset, updateGraphs);
-					UpdateProcessor up = UpdateExecutionFactory.create(update, cugs, JenaUtil.asBinding(bindings));
-					up.execute();
-					for(ControlledUpdateGraph cug : cugs.getControlledUpdateGraphs()) {
-						for(Triple triple : cug.getAddedTriples()) {
-							Statement rs = queryModel.asStatement(triple);
-							if(RDF.type.equals(rs.getPredicate())) {
-								Resource subject = rs.getSubject();
-								if(!newResources.contains(subject)) {
-									newResources.add(subject);
-								}
-							}
-						}
+				finally {
+					if(executionMonitor != null) {
+						executionMonitor.endConstructor(executionToken, tripleCount);
 					}
 				}
 				
@@ -296,7 +314,7 @@ public class SPINConstructors {
 					if(label == null) {
 						label = queryText;
 					}
-					statistics.add(new SPINStatistics(label, queryText, endTime - startTime, startTime, instance.asNode()));
+					statistics.add(new SPINStatistics(label, queryText, endTime - startTime, startTime, instance.asNode(), -1, tripleCount, existingCount));
 				}
 			}
 		}
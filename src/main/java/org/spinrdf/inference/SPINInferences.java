@@ -43,8 +43,11 @@ import org.apache.jena.update.UpdateExecutionFactory;
 import org.apache.jena.update.UpdateProcessor;
 import org.apache.jena.vocabulary.RDF;
 import org.spinrdf.arq.ARQFactory;
+import org.spinrdf.arq.SPINQueryPlanCapture;
 import org.spinrdf.model.Command;
 import org.spinrdf.progress.ProgressMonitor;
+import org.spinrdf.statistics.SPINActiveRun;
+import org.spinrdf.statistics.SPINExecutionMonitor;
 import org.spinrdf.statistics.SPINStatistics;
 import org.spinrdf.system.SPINLabels;
 import org.spinrdf.util.*;
@@ -70,6 +73,31 @@ public class SPINInferences {
 	}
 	
 	
+	private static long planCaptureThreshold = -1;
+	
+	
+	/**
+	 * Gets the duration (in ms) above which the query plans of rules are captured.
+	 * @return the threshold or a negative value if disabled
+	 */
+	public static long getPlanCaptureThreshold() {
+		return planCaptureThreshold;
+	}
+	
+	
+	/**
+	 * Activates the capturing of query plans for slow rules.
+	 * If active and statistics are collected, each CONSTRUCT rule is executed with a
+	 * SPINQueryPlanCapture, and the plans of those executions that took at least as long
+	 * as the threshold are attached to their SPINStatistics.
+	 * Capturing adds some overhead to every rule execution and should only be used for tuning.
+	 * @param value  the threshold in ms (0 to capture all plans, negative to disable)
+	 */
+	public static void setPlanCaptureThreshold(long value) {
+		SPINInferences.planCaptureThreshold = value;
+	}
+	
+	
 	/**
 	 * Checks if a given property is a SPIN rule property.
 	 * This is (currently) defined as a property that has type spin:RuleProperty
@@ -175,6 +203,29 @@ public class SPINInferences {
 			SPINRuleComparator comparator,
 			ProgressMonitor monitor) {
 		
+		SPINActiveRun activeRun = SPINActiveRun.begin(SPINActiveRun.INFERENCES);
+		try {
+			return run(queryModel, newTriples, class2Query, class2Constructor, explanations, statistics, singlePass, rulePredicate, comparator, monitor, activeRun);
+		}
+		finally {
+			SPINActiveRun.end(activeRun);
+		}
+	}
+	
+	
+	private static int run(
+			Model queryModel,
+			Model newTriples,
+			Map<Resource, List<CommandWrapper>> class2Query,
+			Map<Resource, List<CommandWrapper>> class2Constructor,
+			SPINExplanations explanations,
+			List<SPINStatistics> statistics,
+			boolean singlePass,
+			Property rulePredicate,
+			SPINRuleComparator comparator,
+			ProgressMonitor monitor,
+			SPINActiveRun activeRun) {
+		
 		// Run optimizers (if available)
 		for(SPINInferencesOptimizer optimizer : optimizers) {
 			class2Query = optimizer.optimize(class2Query);
@@ -219,6 +270,9 @@ public class SPINInferences {
 				}
 				
 				Resource cls = rule2Class.get(arqWrapper);
+				
+				activeRun.setCurrentIteration(iteration);
+				activeRun.setCurrentLabel(arqWrapper.getLabel() != null ? arqWrapper.getLabel() : arqWrapper.getText());
 					
 				if(monitor != null) {
 					
@@ -243,11 +297,11 @@ public class SPINInferences {
 				sb.append(":\n\n" + arqWrapper.getText());
 				String explanationText = sb.toString();
 				boolean thisUnbound = arqWrapper.isThisUnbound();
-				changed |= runCommandOnClass(arqWrapper, arqWrapper.getLabel(), queryModel, newTriples, cls, true, class2Constructor, statistics, explanations, explanationText, newRules, thisUnbound, monitor);
+				changed |= runCommandOnClass(arqWrapper, arqWrapper.getLabel(), queryModel, newTriples, cls, true, class2Constructor, statistics, explanations, explanationText, newRules, thisUnbound, iteration, monitor);
 				if(!SPINUtil.isRootClass(cls) && !thisUnbound) {
 					Set<Resource> subClasses = JenaUtil.getAllSubClasses(cls);
 					for(Resource subClass : subClasses) {
-						changed |= runCommandOnClass(arqWrapper, arqWrapper.getLabel(), queryModel, newTriples, subClass, true, class2Constructor, statistics, explanations, explanationText, newRules, thisUnbound, monitor);
+						changed |= runCommandOnClass(arqWrapper, arqWrapper.getLabel(), queryModel, newTriples, subClass, true, class2Constructor, statistics, explanations, explanationText, newRules, thisUnbound, iteration, monitor);
 					}
 				}
 			}
@@ -278,6 +332,7 @@ public class SPINInferences {
 			String explanationText, 
 			Set<Statement> newRules, 
 			boolean thisUnbound, 
+			int iteration,
 			ProgressMonitor monitor) {
 		
 		// Check if query is needed at all
@@ -293,91 +348,118 @@ public class SPINInferences {
 				}
 			}
 			long startTime = System.currentTimeMillis();
+			SPINExecutionMonitor executionMonitor = SPINExecutionMonitor.get();
+			Object executionToken = executionMonitor != null ? 
+					executionMonitor.beginRule(queryLabel != null ? queryLabel : commandWrapper.getText(), cls.asNode(), iteration) : null;
+			int tripleCount = 0;
+			int existingCount = 0;
 			final Map<Resource,Resource> newInstances = new HashMap<Resource,Resource>();
-			if(commandWrapper instanceof QueryWrapper) {
-				Query arq = ((QueryWrapper)commandWrapper).getQuery();
-				Model cm;
-				if(commandWrapper.isThisDeep() && needsClass) {
-					
-					// If there is no simple way to bind ?this inside of the query then
-					// do the iteration over all instances in an "outer" loop
-					cm = JenaUtil.createDefaultModel();
-					StmtIterator it = queryModel.listStatements(null, RDF.type, cls);
-					while(it.hasNext()) {
-						Resource instance = it.next().getSubject();
-						QueryExecution qexec = ARQFactory.get().createQueryExecution(arq, queryModel);
-						bindings.add(SPIN.THIS_VAR_NAME, instance);
-						qexec.setInitialBinding(bindings);
-						qexec.execConstruct(cm);
-						qexec.close();
+			SPINQueryPlanCapture planCapture = null;
+			try {
+				if(commandWrapper instanceof QueryWrapper) {
+					Query arq = ((QueryWrapper)commandWrapper).getQuery();
+					if(statistics != null && planCaptureThreshold >= 0) {
+						planCapture = new SPINQueryPlanCapture();
 					}
-				}
-				else {
-					if(needsClass) {
-						bindings.add(SPINUtil.TYPE_CLASS_VAR_NAME, cls);
+					Model cm;
+					if(commandWrapper.isThisDeep() && needsClass) {
+					
+						// If there is no simple way to bind ?this inside of the query then
+						// do the iteration over all instances in an "outer" loop
+						cm = JenaUtil.createDefaultModel();
+						StmtIterator it = queryModel.listStatements(null, RDF.type, cls);
+						while(it.hasNext()) {
+							Resource instance = it.next().getSubject();
+							QueryExecution qexec = ARQFactory.get().createQueryExecution(arq, queryModel);
+							bindings.add(SPIN.THIS_VAR_NAME, instance);
+							qexec.setInitialBinding(bindings);
+							if(planCapture != null) {
+								planCapture.install(qexec);
+							}
+							qexec.execConstruct(cm);
+							qexec.close();
+						}
 					}
-					QueryExecution qexec = ARQFactory.get().createQueryExecution(arq, queryModel, bindings);
-					cm = qexec.execConstruct();
-					qexec.close();
-				}
-				StmtIterator cit = cm.listStatements();
-				while(cit.hasNext()) {
-					Statement s = cit.next();
-					if(!checkContains || !queryModel.contains(s)) {
-						changed = true;
-						newTriples.add(s);
-						if(explanations != null && commandWrapper.getStatement() != null) {
-							Resource source = commandWrapper.getStatement().getSubject();
-							explanations.put(s.asTriple(), explanationText, source.asNode(), 
-									commandWrapper.getSource() != null ? commandWrapper.getSource().asNode() : null);
+					else {
+						if(needsClass) {
+							bindings.add(SPINUtil.TYPE_CLASS_VAR_NAME, cls);
 						}
-						
-						// New rdf:type triple -> run constructors later
-						if(RDF.type.equals(s.getPredicate()) && s.getObject().isResource()) {
-							Resource subject = s.getSubject().inModel(queryModel);
-							newInstances.put(subject, s.getResource());
+						QueryExecution qexec = ARQFactory.get().createQueryExecution(arq, queryModel, bindings);
+						if(planCapture != null) {
+							planCapture.install(qexec);
 						}
+						cm = qexec.execConstruct();
+						qexec.close();
+					}
+					StmtIterator cit = cm.listStatements();
+					while(cit.hasNext()) {
+						Statement s = cit.next();
+						tripleCount++;
+						if(!checkContains || !queryModel.contains(s)) {
+							changed = true;
+							newTriples.add(s);
+							if(explanations != null && commandWrapper.getStatement() != null) {
+								Resource source = commandWrapper.getStatement().getSubject();
+								explanations.put(s.asTriple(), explanationText, source.asNode(), 
+										commandWrapper.getSource() != null ? commandWrapper.getSource().asNode() : null);
+							}
+						
+							// New rdf:type triple -> run constructors later
+							if(RDF.type.equals(s.getPredicate()) && s.getObject().isResource()) {
+								Resource subject = s.getSubject().inModel(queryModel);
+								newInstances.put(subject, s.getResource());
+							}
 						
-						if(SPIN.rule.equals(s.getPredicate())) {
-							newRules.add(s);
+							if(SPIN.rule.equals(s.getPredicate())) {
+								newRules.add(s);
+							}
+						}
+						else {
+							existingCount++;
 						}
 					}
 				}
-			}
-			else {
-				UpdateWrapper updateWrapper = (UpdateWrapper) commandWrapper;
-				Map<String,RDFNode> templateBindings = commandWrapper.getTemplateBinding();
-				Dataset dataset = ARQFactory.get().getDataset(queryModel);
-				Update update = updateWrapper.getUpdate();
-				Iterable<Graph> updateGraphs = UpdateUtil.getUpdatedGraphs(update, dataset.asDatasetGraph(), templateBindings);
-				ControlledUpdateGraphStore cugs = new ControlledUpdateGraphStore(dataset, updateGraphs);
+				else {
+					UpdateWrapper updateWrapper = (UpdateWrapper) commandWrapper;
+					Map<String,RDFNode> templateBindings = commandWrapper.getTemplateBinding();
+					Dataset dataset = ARQFactory.get().getDataset(queryModel);
+					Update update = updateWrapper.getUpdate();
+					Iterable<Graph> updateGraphs = UpdateUtil.getUpdatedGraphs(update, dataset.asDatasetGraph(), templateBindings);
+					ControlledUpdateGraphStore cugs = new ControlledUpdateGraphStore(dataset, updateGraphs);
 				
-				if(commandWrapper.isThisDeep() && needsClass) {
-					for(Statement s : queryModel.listStatements(null, RDF.type, cls).toList()) {
-						Resource instance = s.getSubject();
-						bindings.add(SPIN.THIS_VAR_NAME, instance);
+					if(commandWrapper.isThisDeep() && needsClass) {
+						for(Statement s : queryModel.listStatements(null, RDF.type, cls).toList()) {
+							Resource instance = s.getSubject();
+							bindings.add(SPIN.THIS_VAR_NAME, instance);
+							UpdateProcessor up = UpdateExecutionFactory.create(update, cugs, JenaUtil.asBinding(bindings));
+							up.execute();
+						}
+					}
+					else {
+						if(needsClass) {
+							bindings.add(SPINUtil.TYPE_CLASS_VAR_NAME, cls);
+						}
 						UpdateProcessor up = UpdateExecutionFactory.create(update, cugs, JenaUtil.asBinding(bindings));
 						up.execute();
 					}
-				}
-				else {
-					if(needsClass) {
-						bindings.add(SPINUtil.TYPE_CLASS_VAR_NAME, cls);
-					}
-					UpdateProcessor up = UpdateExecutionFactory.create(update, cugs, JenaUtil.asBinding(bindings));
-					up.execute();
-				}
 				
-				for(ControlledUpdateGraph cug : cugs.getControlledUpdateGraphs()) {
-					changed |= cug.isChanged();
-					for(Triple triple : cug.getAddedTriples()) {
-						if(RDF.type.asNode().equals(triple.getPredicate()) && !triple.getObject().isLiteral()) {
-							Resource subject = (Resource) queryModel.asRDFNode(triple.getSubject());
-							newInstances.put(subject, (Resource)queryModel.asRDFNode(triple.getObject()));
+					for(ControlledUpdateGraph cug : cugs.getControlledUpdateGraphs()) {
+						changed |= cug.isChanged();
+						for(Triple triple : cug.getAddedTriples()) {
+							tripleCount++;
+							if(RDF.type.asNode().equals(triple.getPredicate()) && !triple.getObject().isLiteral()) {
+								Resource subject = (Resource) queryModel.asRDFNode(triple.getSubject());
+								newInstances.put(subject, (Resource)queryModel.asRDFNode(triple.getObject()));
+							}
 						}
 					}
 				}
 			}
+			finally {
+				if(executionMonitor != null) {
+					executionMonitor.endRule(executionToken, tripleCount);
+				}
+			}
 			
 			if(statistics != null) {
 				long endTime = System.currentTimeMillis();
@@ -387,7 +469,11 @@ public class SPINInferences {
 				if(queryLabel == null) {
 					queryLabel = queryText;
 				}
-				statistics.add(new SPINStatistics(queryLabel, queryText, duration, startTime, cls.asNode()));
+				SPINStatistics stats = new SPINStatistics(queryLabel, queryText, duration, startTime, cls.asNode(), iteration, tripleCount, existingCount);
+				if(planCapture != null && duration >= planCaptureThreshold) {
+					stats.setPlan(planCapture.getPlan());
+				}
+				statistics.add(stats);
 			}
 			
 			if(!newInstances.isEmpty()) {
@@ -0,0 +1,111 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.model;
+
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+
+
+/**
+ * An immutable snapshot of the metadata of an Argument, as returned by
+ * Module.getArgumentDescriptors().  Unlike the Argument itself, reading
+ * these values does not require any graph access.
+ */
+public final class ArgumentDescriptor {
+
+	private Argument argument;
+
+	private RDFNode defaultValue;
+
+	private boolean optional;
+
+	private Property predicate;
+
+	private Resource valueType;
+
+	private String varName;
+
+
+	/**
+	 * Creates a descriptor from the current values of a given Argument.
+	 * @param argument  the Argument
+	 */
+	public ArgumentDescriptor(Argument argument) {
+		this.argument = argument;
+		this.defaultValue = argument.getDefaultValue();
+		this.optional = argument.isOptional();
+		this.predicate = argument.getPredicate();
+		this.valueType = argument.getValueType();
+		this.varName = predicate != null ? predicate.getLocalName() : null;
+	}
+
+
+	/**
+	 * Gets the Argument that this has been created from.
+	 * @return the Argument
+	 */
+	public Argument getArgument() {
+		return argument;
+	}
+
+
+	/**
+	 * Gets the spl:defaultValue of the Argument.
+	 * @return the default value or null
+	 */
+	public RDFNode getDefaultValue() {
+		return defaultValue;
+	}
+
+
+	/**
+	 * Gets the spl:predicate of the Argument.
+	 * @return the predicate or null
+	 */
+	public Property getPredicate() {
+		return predicate;
+	}
+
+
+	/**
+	 * Gets the spl:valueType of the Argument.
+	 * @return the value type or null
+	 */
+	public Resource getValueType() {
+		return valueType;
+	}
+
+
+	/**
+	 * Gets the variable name, i.e. the local name of the predicate.
+	 * @return the variable name or null if there is no predicate
+	 */
+	public String getVarName() {
+		return varName;
+	}
+
+
+	/**
+	 * Checks whether the Argument has been declared to be spl:optional.
+	 * @return true  if optional
+	 */
+	public boolean isOptional() {
+		return optional;
+	}
+}
@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.jena.rdf.model.Resource;
+import org.spinrdf.model.impl.ArgumentDescriptorCache;
 
 
 /**
@@ -36,6 +37,17 @@ public interface Module extends Resource {
 	 */
 	List<Argument> getArguments(boolean ordered);
 	
+	
+	/**
+	 * Gets the ArgumentDescriptors of all declared Arguments, ordered by the
+	 * local names of their predicates.  The result is cached until the
+	 * declarations change, and should be preferred over getArguments in loops.
+	 * @return the (possibly empty) unmodifiable List of ArgumentDescriptors
+	 */
+	default List<ArgumentDescriptor> getArgumentDescriptors() {
+		return ArgumentDescriptorCache.get().getArgumentDescriptors(this);
+	}
+	
 
 	/**
 	 * Gets a Map of variable names to Arguments.
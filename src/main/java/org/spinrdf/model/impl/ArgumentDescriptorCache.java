@@ -0,0 +1,247 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.model.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.spinrdf.model.Argument;
+import org.spinrdf.model.ArgumentDescriptor;
+import org.spinrdf.model.Module;
+import org.spinrdf.util.AbstractGraphListener;
+import org.spinrdf.util.ConcurrentHashSet;
+import org.spinrdf.util.JenaUtil;
+import org.spinrdf.util.SubGraphListeners;
+import org.spinrdf.vocabulary.SPIN;
+import org.spinrdf.vocabulary.SPL;
+
+/**
+ * A process-wide cache of the ArgumentDescriptors of SPIN modules, so that
+ * Module.getArguments and the argument maps of template calls do not need to
+ * walk the superclasses of the module and sort its arguments each time.
+ *
+ * <p>As in SPINFunctionFactoryCache, only weak references to the graphs are held
+ * and the entries of each graph are attached to it as a GraphListener.
+ * An entry is invalidated whenever a triple that may affect the arguments is
+ * added or removed: spin:constraint and rdfs:subClassOf triples, triples using
+ * SPL properties, rdf:type triples of blank nodes or with spl:Argument or one
+ * of its subclasses as object, and any triple about a known argument.  Other changes, such as inferred instance data, keep the entries.
+ * For union graphs, changes to the sub-graphs are also observed using
+ * SubGraphListeners.</p>
+ */
+public class ArgumentDescriptorCache {
+
+	private static ArgumentDescriptorCache singleton = new ArgumentDescriptorCache();
+
+	public static ArgumentDescriptorCache get() {
+		return singleton;
+	}
+
+
+	public static void set(ArgumentDescriptorCache value) {
+		ArgumentDescriptorCache.singleton = value;
+	}
+
+
+	private Map<Graph,WeakReference<GraphEntry>> entries = Collections.synchronizedMap(new WeakHashMap<Graph,WeakReference<GraphEntry>>());
+
+
+	/**
+	 * Removes all cached descriptors.  They will be recomputed on demand.
+	 */
+	public void clear() {
+		List<WeakReference<GraphEntry>> refs;
+		synchronized(entries) {
+			refs = new ArrayList<WeakReference<GraphEntry>>(entries.values());
+		}
+		for(WeakReference<GraphEntry> ref : refs) {
+			GraphEntry entry = ref.get();
+			if(entry != null) {
+				entry.invalidate();
+			}
+		}
+	}
+
+
+	/**
+	 * Gets the ArgumentDescriptors of a given Module, ordered by the local names
+	 * of their predicates.
+	 * @param module  the Module to get the descriptors of
+	 * @return an unmodifiable List of ArgumentDescriptors
+	 */
+	public List<ArgumentDescriptor> getArgumentDescriptors(Module module) {
+		GraphEntry entry = getEntry(module.getModel().getGraph());
+		Node node = module.asNode();
+		List<ArgumentDescriptor> result = entry.descriptors.get(node);
+		if(result == null) {
+			int version = entry.version;
+			Set<Node> argumentClasses = entry.argumentClasses == null ? collectArgumentClasses(module.getModel()) : null;
+			List<Argument> arguments = ModuleImpl.collectArguments(module, true);
+			ArgumentDescriptor[] array = new ArgumentDescriptor[arguments.size()];
+			for(int i = 0; i < array.length; i++) {
+				array[i] = new ArgumentDescriptor(arguments.get(i));
+			}
+			result = Collections.unmodifiableList(Arrays.asList(array));
+			synchronized(entry) {
+				// Don't remember values computed while the graph was changing
+				if(entry.version == version) {
+					if(entry.argumentClasses == null) {
+						entry.argumentClasses = argumentClasses;
+					}
+					for(Argument argument : arguments) {
+						entry.arguments.add(argument.asNode());
+					}
+					List<ArgumentDescriptor> old = entry.descriptors.putIfAbsent(node, result);
+					if(old != null) {
+						result = old;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+
+	private GraphEntry getEntry(Graph graph) {
+		synchronized(entries) {
+			WeakReference<GraphEntry> ref = entries.get(graph);
+			GraphEntry entry = ref != null ? ref.get() : null;
+			if(entry == null) {
+				entry = new GraphEntry();
+				graph.getEventManager().register(entry);
+				entries.put(graph, new WeakReference<GraphEntry>(entry));
+				SubGraphListeners.register(graph, entry);
+			}
+			return entry;
+		}
+	}
+
+
+	// spl:Argument and all its subclasses in a given Model
+	private static Set<Node> collectArgumentClasses(Model model) {
+		Set<Node> results = new HashSet<Node>();
+		results.add(SPL.Argument.asNode());
+		for(Resource cls : JenaUtil.getAllSubClasses(SPL.Argument.inModel(model))) {
+			results.add(cls.asNode());
+		}
+		return results;
+	}
+
+
+	private static boolean isRelevant(Triple triple, Set<Node> arguments, Set<Node> argumentClasses) {
+		Node predicate = triple.getPredicate();
+		if(SPIN.constraint.asNode().equals(predicate) || RDFS.subClassOf.asNode().equals(predicate)) {
+			return true;
+		}
+		else if(predicate.isURI() && SPL.NS.equals(predicate.getNameSpace())) {
+			return true;
+		}
+		else if(RDF.type.asNode().equals(predicate)) {
+			// URI resources may also be declared as arguments
+			return !triple.getSubject().isURI() || argumentClasses == null || argumentClasses.contains(triple.getObject());
+		}
+		else {
+			return arguments.contains(triple.getSubject());
+		}
+	}
+
+
+	/**
+	 * The descriptors of the modules in a single graph.  Registered as listener so
+	 * that the graph keeps it alive, and so that relevant changes can clear it.
+	 */
+	private static class GraphEntry extends AbstractGraphListener {
+
+		// The nodes of all arguments that descriptors have been created for
+		Set<Node> arguments = new ConcurrentHashSet<Node>();
+
+		Map<Node,List<ArgumentDescriptor>> descriptors = new ConcurrentHashMap<Node,List<ArgumentDescriptor>>();
+
+		// spl:Argument and its subclasses, only changed together with the descriptors
+		volatile Set<Node> argumentClasses;
+
+		volatile int version;
+
+
+		synchronized void invalidate() {
+			version++;
+			argumentClasses = null;
+			descriptors.clear();
+			arguments.clear();
+		}
+
+
+		void changed(Triple triple) {
+			if(!descriptors.isEmpty() && isRelevant(triple, arguments, argumentClasses)) {
+				invalidate();
+			}
+		}
+
+
+		@Override
+		public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+			// Avoid iterating over large bulk additions if nothing needs to be invalidated
+			if(!descriptors.isEmpty()) {
+				super.notifyAddIterator(g, it);
+			}
+		}
+
+
+		@Override
+		public void notifyAddTriple(Graph g, Triple t) {
+			changed(t);
+		}
+
+
+		@Override
+		public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+			if(!descriptors.isEmpty()) {
+				super.notifyDeleteIterator(g, it);
+			}
+		}
+
+
+		@Override
+		public void notifyDeleteTriple(Graph g, Triple t) {
+			changed(t);
+		}
+
+
+		@Override
+		protected void notifyRemoveAll(Graph source, Triple pattern) {
+			invalidate();
+		}
+	}
+
+}
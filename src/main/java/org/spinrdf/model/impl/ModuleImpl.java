@@ -35,6 +35,7 @@ import org.apache.jena.rdf.model.StmtIterator;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.spinrdf.model.Argument;
+import org.spinrdf.model.ArgumentDescriptor;
 import org.spinrdf.model.Command;
 import org.spinrdf.model.Module;
 import org.spinrdf.model.SPINFactory;
@@ -54,12 +55,29 @@ public class ModuleImpl extends AbstractSPINResourceImpl implements Module {
 
 	
 	public List<Argument> getArguments(boolean ordered) {
+		// The cached descriptors are always ordered
+		List<Argument> results = new ArrayList<Argument>();
+		for(ArgumentDescriptor descriptor : getArgumentDescriptors()) {
+			results.add(descriptor.getArgument());
+		}
+		return results;
+	}
+
+
+	/**
+	 * Collects the Arguments of a module and its superclasses from the graph.
+	 * This is slow, and usually only called by ArgumentDescriptorCache.
+	 * @param module  the module to get the Arguments of
+	 * @param ordered  true to sort by the local names of the predicates
+	 * @return the (possibly empty) List of Arguments
+	 */
+	static List<Argument> collectArguments(Resource module, boolean ordered) {
 		List<Argument> results = new ArrayList<Argument>();
 		StmtIterator it = null;
 		JenaUtil.setGraphReadOptimization(true);
 		try {
-			Set<Resource> classes = JenaUtil.getAllSuperClasses(this);
-			classes.add(this);
+			Set<Resource> classes = JenaUtil.getAllSuperClasses(module);
+			classes.add(module);
 			for(Resource cls : classes) {
 				it = cls.listProperties(SPIN.constraint);
 				while(it.hasNext()) {
@@ -94,11 +112,11 @@ public class ModuleImpl extends AbstractSPINResourceImpl implements Module {
 	}
 
 	/**
-	 * 
+	 * Adds the object of a spin:constraint triple to a List if it is an Argument.
 	 * @param constaint is a statement whose subject is a class, and whose predicate is SPIN.constraint
-	 * @param results
+	 * @param results  the List to add to
 	 */
-	private void addArgumentFromConstraint(Statement constaint, List<Argument> results) {
+	public static void addArgumentFromConstraint(Statement constaint, List<Argument> results) {
 		if(constaint.getObject().isAnon()) {
 			// Optimized case to avoid walking up class hierarchy
 			StmtIterator types = constaint.getResource().listProperties(RDF.type);
@@ -124,10 +142,9 @@ public class ModuleImpl extends AbstractSPINResourceImpl implements Module {
 
 	public Map<String, Argument> getArgumentsMap() {
 		Map<String,Argument> results = new HashMap<String,Argument>();
-		for(Argument argument : getArguments(false)) {
-			Property property = argument.getPredicate();
-			if(property != null) {
-				results.put(property.getLocalName(), argument);
+		for(ArgumentDescriptor descriptor : getArgumentDescriptors()) {
+			if(descriptor.getVarName() != null) {
+				results.put(descriptor.getVarName(), descriptor.getArgument());
 			}
 		}
 		return results;
@@ -34,6 +34,7 @@ import org.spinrdf.model.*;
 import org.spinrdf.model.print.PrintContext;
 import org.spinrdf.model.print.Printable;
 import org.spinrdf.util.JenaUtil;
+import org.spinrdf.util.SPINRDFMaterializer;
 import org.spinrdf.vocabulary.SP;
 
 
@@ -95,6 +96,13 @@ public abstract class QueryImpl extends AbstractSPINResourceImpl implements Solu
 
 	public ElementList getWhere() {
 		Statement whereS = getProperty(SP.where);
+		if(whereS == null) {
+			// Commands that only have an sp:text get their SPIN RDF on demand
+			Command command = SPINRDFMaterializer.get().getSPINRDF(this);
+			if(command != null && command != this) {
+				whereS = command.getProperty(SP.where);
+			}
+		}
 		if(whereS != null) {
 			Element element = SPINFactory.asElement(whereS.getResource());
 			return (ElementList) element;
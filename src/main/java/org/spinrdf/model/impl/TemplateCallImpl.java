@@ -18,6 +18,7 @@
 package org.spinrdf.model.impl;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.jena.enhanced.EnhGraph;
@@ -53,70 +54,62 @@ public class TemplateCallImpl extends ModuleCallImpl implements TemplateCall {
 		Module template = getModule();
 		Query query = ARQFactory.get().createQuery(SPINFactory.asQuery(template.getBody()));
 		QuerySolutionMap initialBindings = new QuerySolutionMap();
-		Map<Argument,RDFNode> args = getArgumentsMap();
-		for(Argument arg : args.keySet()) {
-			RDFNode value = args.get(arg);
-			initialBindings.add(arg.getVarName(), value);
+		for(Map.Entry<ArgumentDescriptor,RDFNode> entry : getArgumentValues(false).entrySet()) {
+			initialBindings.add(entry.getKey().getVarName(), entry.getValue());
 		}
 		return ARQFactory.get().createQueryExecution(query, dataset, initialBindings);
 	}
 
 
-	public Map<Argument,RDFNode> getArgumentsMap() {
-		Map<Argument,RDFNode> map = new HashMap<Argument,RDFNode>();
+	/**
+	 * Gets the values of the arguments of the template that have a predicate,
+	 * in the order of the template's ArgumentDescriptors.
+	 * @param withDefaults  true to use the default values of arguments without value
+	 * @return the values, keyed by the descriptors of their arguments
+	 */
+	private Map<ArgumentDescriptor,RDFNode> getArgumentValues(boolean withDefaults) {
+		Map<ArgumentDescriptor,RDFNode> results = new LinkedHashMap<ArgumentDescriptor,RDFNode>();
 		Template template = getTemplate();
 		if(template != null) {
-			for(Argument ad : template.getArguments(false)) {
+			for(ArgumentDescriptor ad : template.getArgumentDescriptors()) {
 				Property argProperty = ad.getPredicate();
 				if(argProperty != null) {
 					Statement valueS = getProperty(argProperty);
 					if(valueS != null) {
-						map.put(ad, valueS.getObject());
+						results.put(ad, valueS.getObject());
+					}
+					else if(withDefaults && ad.getDefaultValue() != null) {
+						results.put(ad, ad.getDefaultValue());
 					}
 				}
 			}
 		}
-		
+		return results;
+	}
+
+
+	public Map<Argument,RDFNode> getArgumentsMap() {
+		Map<Argument,RDFNode> map = new HashMap<Argument,RDFNode>();
+		for(Map.Entry<ArgumentDescriptor,RDFNode> entry : getArgumentValues(false).entrySet()) {
+			map.put(entry.getKey().getArgument(), entry.getValue());
+		}
 		return map;
 	}
 
 
 	public Map<Property, RDFNode> getArgumentsMapByProperties() {
 		Map<Property,RDFNode> map = new HashMap<Property,RDFNode>();
-		Template template = getTemplate();
-		if(template != null) {
-			for(Argument ad : template.getArguments(false)) {
-				Property argProperty = ad.getPredicate();
-				if(argProperty != null) {
-					Statement valueS = getProperty(argProperty);
-					if(valueS != null) {
-						map.put(argProperty, valueS.getObject());
-					}
-				}
-			}
+		for(Map.Entry<ArgumentDescriptor,RDFNode> entry : getArgumentValues(false).entrySet()) {
+			map.put(entry.getKey().getPredicate(), entry.getValue());
 		}
-		
 		return map;
 	}
 
 
 	public Map<String, RDFNode> getArgumentsMapByVarNames() {
 		Map<String,RDFNode> map = new HashMap<String,RDFNode>();
-		Template template = getTemplate();
-		if(template != null) {
-			for(Argument ad : template.getArguments(false)) {
-				Property argProperty = ad.getPredicate();
-				if(argProperty != null) {
-					String varName = ad.getVarName();
-					Statement valueS = getProperty(argProperty);
-					if(valueS != null) {
-						map.put(varName, valueS.getObject());
-					}
-					else if(ad.getDefaultValue() != null) {
-						map.put(varName, ad.getDefaultValue());
-					}
-				}
-			}
+		for(Map.Entry<ArgumentDescriptor,RDFNode> entry : getArgumentValues(true).entrySet()) {
+			map.put(entry.getKey().getVarName(), entry.getValue());
 		}
 		return map;
 	}
@@ -125,10 +118,8 @@ public class TemplateCallImpl extends ModuleCallImpl implements TemplateCall {
 	@Override
 	public QuerySolutionMap getInitialBinding() {
 		QuerySolutionMap map = new QuerySolutionMap();
-		Map<String,RDFNode> input = getArgumentsMapByVarNames();
-		for(String varName : input.keySet()) {
-			RDFNode value = input.get(varName);
-			map.add(varName, value);
+		for(Map.Entry<ArgumentDescriptor,RDFNode> entry : getArgumentValues(true).entrySet()) {
+			map.add(entry.getKey().getVarName(), entry.getValue());
 		}
 		return map;
 	}
@@ -35,6 +35,7 @@ import org.spinrdf.model.print.PrintContext;
 import org.spinrdf.model.update.Update;
 import org.spinrdf.util.JenaDatatypes;
 import org.spinrdf.util.JenaUtil;
+import org.spinrdf.util.SPINRDFMaterializer;
 import org.spinrdf.vocabulary.SP;
 
 public abstract class UpdateImpl extends AbstractSPINResourceImpl implements Update {
@@ -46,6 +47,13 @@ public abstract class UpdateImpl extends AbstractSPINResourceImpl implements Upd
 
 	public ElementList getWhere() {
 		Statement whereS = getProperty(SP.where);
+		if(whereS == null) {
+			// Commands that only have an sp:text get their SPIN RDF on demand
+			Command command = SPINRDFMaterializer.get().getSPINRDF(this);
+			if(command != null && command != this) {
+				whereS = command.getProperty(SP.where);
+			}
+		}
 		if(whereS != null) {
 			Element element = SPINFactory.asElement(whereS.getResource());
 			return (ElementList) element;
@@ -0,0 +1,131 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.statistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes an inferencing or constraint checking run that is currently in progress,
+ * so that monitoring tools (such as the JMX beans) can see what the engines are doing.
+ * The engines call <code>begin</code> when they start and <code>end</code> when they
+ * are done, and update the current iteration and rule in between.
+ */
+public class SPINActiveRun {
+
+	public final static String CONSTRAINTS = "constraints";
+
+	public final static String INFERENCES = "inferences";
+
+	private static Set<SPINActiveRun> runs = Collections.newSetFromMap(new ConcurrentHashMap<SPINActiveRun,Boolean>());
+
+
+	/**
+	 * Registers a new run for the current Thread.
+	 * @param kind  the kind of run, e.g. INFERENCES
+	 * @return the new run, to be passed into end
+	 */
+	public static SPINActiveRun begin(String kind) {
+		SPINActiveRun run = new SPINActiveRun(kind);
+		runs.add(run);
+		return run;
+	}
+
+
+	/**
+	 * Unregisters a run.  This should be called in a finally block.
+	 * @param run  the run that has ended
+	 */
+	public static void end(SPINActiveRun run) {
+		runs.remove(run);
+	}
+
+
+	/**
+	 * Gets all runs that are currently in progress.
+	 * @return the runs
+	 */
+	public static List<SPINActiveRun> getAll() {
+		return new ArrayList<SPINActiveRun>(runs);
+	}
+
+
+	private volatile int currentIteration;
+
+	private volatile String currentLabel;
+
+	private String kind;
+
+	private long startTime;
+
+	private String threadName;
+
+
+	private SPINActiveRun(String kind) {
+		this.kind = kind;
+		this.startTime = System.currentTimeMillis();
+		this.threadName = Thread.currentThread().getName();
+	}
+
+
+	public int getCurrentIteration() {
+		return currentIteration;
+	}
+
+
+	/**
+	 * Gets the label of the rule or constraint that is currently executed.
+	 * @return the label or null
+	 */
+	public String getCurrentLabel() {
+		return currentLabel;
+	}
+
+
+	public long getElapsedTime() {
+		return System.currentTimeMillis() - startTime;
+	}
+
+
+	public String getKind() {
+		return kind;
+	}
+
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+
+	public String getThreadName() {
+		return threadName;
+	}
+
+
+	public void setCurrentIteration(int value) {
+		this.currentIteration = value;
+	}
+
+
+	public void setCurrentLabel(String value) {
+		this.currentLabel = value;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.statistics;
+
+import org.apache.jena.graph.Node;
+
+/**
+ * A singleton that is notified about the start and end of each rule, constraint,
+ * constructor and SPIN function execution, e.g. to emit Java Flight Recorder
+ * events (see the optional jfr profile of the build).
+ *
+ * By default the singleton is null (indicating a no-op), so that the engines only
+ * pay for a null check.  Each begin method returns an arbitrary token (or null) that
+ * is passed into the matching end method.
+ */
+public abstract class SPINExecutionMonitor {
+
+	private static SPINExecutionMonitor singleton;
+
+	public static SPINExecutionMonitor get() {
+		return singleton;
+	}
+
+	public static void set(SPINExecutionMonitor value) {
+		singleton = value;
+	}
+
+
+	/**
+	 * Called before a constraint is checked, either on all instances of a class or on a single instance.
+	 * @param label  the label of the constraint (may be null)
+	 * @param cls  the class holding the constraint (may be null)
+	 * @return a token for endConstraint
+	 */
+	public abstract Object beginConstraint(String label, Node cls);
+
+
+	/**
+	 * Called before a SPIN constructor is executed on a new instance.
+	 * @param label  the label of the constructor
+	 * @param instance  the instance
+	 * @return a token for endConstructor
+	 */
+	public abstract Object beginConstructor(String label, Node instance);
+
+
+	/**
+	 * Called before a SPIN function is executed.
+	 * @param uri  the URI of the function
+	 * @return a token for endFunction
+	 */
+	public abstract Object beginFunction(String uri);
+
+
+	/**
+	 * Called before a rule is executed on the instances of a class.
+	 * @param label  the label of the rule
+	 * @param cls  the class holding the rule
+	 * @param iteration  the current inferencing iteration, starting at 1
+	 * @return a token for endRule
+	 */
+	public abstract Object beginRule(String label, Node cls, int iteration);
+
+
+	/**
+	 * Called after a constraint has been checked.
+	 * @param token  the result of beginConstraint
+	 * @param violationCount  the number of constraint violations found
+	 */
+	public abstract void endConstraint(Object token, int violationCount);
+
+
+	/**
+	 * Called after a SPIN constructor has been executed.
+	 * @param token  the result of beginConstructor
+	 * @param tripleCount  the number of triples produced by the constructor
+	 */
+	public abstract void endConstructor(Object token, int tripleCount);
+
+
+	/**
+	 * Called after a SPIN function has been executed.
+	 * @param token  the result of beginFunction
+	 * @param failed  true if the function did not produce a result
+	 */
+	public abstract void endFunction(Object token, boolean failed);
+
+
+	/**
+	 * Called after a rule has been executed.
+	 * @param token  the result of beginRule
+	 * @param tripleCount  the number of triples produced by the rule
+	 */
+	public abstract void endRule(Object token, int tripleCount);
+}
@@ -0,0 +1,289 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.statistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.util.FmtUtils;
+
+
+/**
+ * Aggregated statistics about all calls of a single SPARQL function,
+ * as recorded by the SPINStatisticsManager in aggregating mode.
+ * All durations are in nanoseconds.
+ *
+ * Instead of a formatted SPINStatistics object per call, this only keeps
+ * counters, a latency histogram and the details of the slowest calls.
+ */
+public class SPINFunctionMetrics {
+
+	/**
+	 * The upper bounds (exclusive, in nanoseconds) of the histogram buckets,
+	 * from 1 microsecond to 10 seconds.  The last bucket has no upper bound.
+	 */
+	private final static long[] HISTOGRAM_BOUNDS = {
+		1000L,
+		10000L,
+		100000L,
+		1000000L,
+		10000000L,
+		100000000L,
+		1000000000L,
+		10000000000L
+	};
+
+
+	/**
+	 * Gets the upper bounds of the latency histogram buckets.
+	 * The histogram has one more bucket than there are bounds.
+	 * @return the bounds in nanoseconds
+	 */
+	public static long[] getHistogramBounds() {
+		return HISTOGRAM_BOUNDS.clone();
+	}
+
+
+	private LongAdder count = new LongAdder();
+
+	private LongAdder errorCount = new LongAdder();
+
+	private String functionURI;
+
+	private AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BOUNDS.length + 1);
+
+	private SPINStatisticsManager manager;
+
+	private AtomicLong maxDuration = new AtomicLong();
+
+	private AtomicLong sampleCounter = new AtomicLong();
+
+	// Sorted by descending duration
+	private List<SPINStatistics> slowest = new ArrayList<SPINStatistics>();
+
+	private List<Long> slowestDurations = new ArrayList<Long>();
+
+	// Copies of the size of slowest and its shortest duration, read by isSlowest without locking
+	private volatile int slowestSize;
+
+	private volatile long slowestThreshold;
+
+	private LongAdder totalDuration = new LongAdder();
+
+
+	SPINFunctionMetrics(String functionURI, SPINStatisticsManager manager) {
+		this.functionURI = functionURI;
+		this.manager = manager;
+	}
+
+
+	/**
+	 * Adds the details of a call that was either sampled or reported as
+	 * one of the slowest calls by <code>isSlowest</code>.
+	 * Only the slowest calls (up to the slowest count of the manager) are kept.
+	 * @param stats  the details of the call
+	 * @param duration  the exact duration in nanoseconds
+	 */
+	public synchronized void addDetails(SPINStatistics stats, long duration) {
+		int index = 0;
+		while(index < slowest.size() && slowestDurations.get(index) >= duration) {
+			index++;
+		}
+		int max = manager.getSlowestCount();
+		if(index < max) {
+			slowest.add(index, stats);
+			slowestDurations.add(index, duration);
+			while(slowest.size() > max) {
+				slowest.remove(max);
+				slowestDurations.remove(max);
+			}
+			slowestThreshold = slowestDurations.get(slowestDurations.size() - 1);
+			slowestSize = slowest.size();
+		}
+	}
+
+
+	/**
+	 * Executes a function call, records it and, if it was sampled or is among the slowest
+	 * calls, adds its details.  The label of the call is only created in those cases.
+	 * @param uri  the URI of the function
+	 * @param queryText  the query text of the SPINStatistics, e.g. the body of the function
+	 * @param prefixes  the PrefixMapping to format the result with
+	 * @param call  the call to execute
+	 * @return the result of the call
+	 */
+	public static NodeValue execAggregated(String uri, String queryText, PrefixMapping prefixes, Call call) {
+		long startNanos = System.nanoTime();
+		NodeValue result = null;
+		ExprEvalException error = null;
+		try {
+			result = call.exec();
+			return result;
+		}
+		catch(ExprEvalException ex) {
+			error = ex;
+			throw ex;
+		}
+		finally {
+			long duration = System.nanoTime() - startNanos;
+			SPINFunctionMetrics metrics = SPINStatisticsManager.get().getFunctionMetrics(uri);
+			boolean sampled = metrics.record(duration, error != null || result == null);
+			if(sampled || metrics.isSlowest(duration)) {
+				StringBuffer sb = call.createLabel();
+				if(result != null) {
+					sb.append(" = ");
+					sb.append(FmtUtils.stringForNode(result.asNode(), prefixes));
+				}
+				else if(error != null) {
+					sb.append(" : ");
+					sb.append(error.getLocalizedMessage());
+				}
+				long durationMillis = duration / 1000000;
+				SPINStatistics stats = new SPINStatistics(sb.toString(), queryText, durationMillis, System.currentTimeMillis() - durationMillis, NodeFactory.createURI(uri));
+				metrics.addDetails(stats, duration);
+				if(sampled) {
+					SPINStatisticsManager.get().addSilently(Collections.singleton(stats));
+				}
+			}
+		}
+	}
+
+
+	public long getCount() {
+		return count.sum();
+	}
+
+
+	public long getErrorCount() {
+		return errorCount.sum();
+	}
+
+
+	public String getFunctionURI() {
+		return functionURI;
+	}
+
+
+	/**
+	 * Gets the number of calls per bucket of the latency histogram.
+	 * @return the histogram counts
+	 * @see #getHistogramBounds()
+	 */
+	public long[] getHistogram() {
+		long[] result = new long[histogram.length()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = histogram.get(i);
+		}
+		return result;
+	}
+
+
+	public long getMaxDuration() {
+		return maxDuration.get();
+	}
+
+
+	public long getMeanDuration() {
+		long c = count.sum();
+		return c > 0 ? totalDuration.sum() / c : 0;
+	}
+
+
+	/**
+	 * Gets the details of the slowest recorded calls, slowest first.
+	 * @return the slowest calls
+	 */
+	public synchronized List<SPINStatistics> getSlowest() {
+		return new ArrayList<SPINStatistics>(slowest);
+	}
+
+
+	public long getTotalDuration() {
+		return totalDuration.sum();
+	}
+
+
+	/**
+	 * Checks whether a call with a given duration would be among the slowest calls,
+	 * so that it is worth creating its details.
+	 * @param duration  the duration in nanoseconds
+	 * @return true if the details of the call should be passed into addDetails
+	 */
+	public boolean isSlowest(long duration) {
+		int max = manager.getSlowestCount();
+		if(max <= 0) {
+			return false;
+		}
+		return slowestSize < max || duration > slowestThreshold;
+	}
+
+
+	/**
+	 * Records a single call.
+	 * @param duration  the duration of the call in nanoseconds
+	 * @param failed  true if the call ended with an error
+	 * @return true if the call has been picked as a sample and its details should be recorded
+	 */
+	public boolean record(long duration, boolean failed) {
+		count.increment();
+		totalDuration.add(duration);
+		if(failed) {
+			errorCount.increment();
+		}
+		long max = maxDuration.get();
+		while(duration > max && !maxDuration.compareAndSet(max, duration)) {
+			max = maxDuration.get();
+		}
+		int bucket = 0;
+		while(bucket < HISTOGRAM_BOUNDS.length && duration >= HISTOGRAM_BOUNDS[bucket]) {
+			bucket++;
+		}
+		histogram.incrementAndGet(bucket);
+		int interval = manager.getSampleInterval();
+		return interval > 0 && sampleCounter.incrementAndGet() % interval == 0;
+	}
+
+
+	/**
+	 * A function call executed by <code>execAggregated</code>.
+	 */
+	public interface Call {
+
+		/**
+		 * Executes the call.
+		 * @return the result
+		 */
+		NodeValue exec();
+
+
+		/**
+		 * Creates the label of the call, e.g. the function name and its arguments,
+		 * to which the result or error will be appended.
+		 * @return the label
+		 */
+		StringBuffer createLabel();
+	}
+}
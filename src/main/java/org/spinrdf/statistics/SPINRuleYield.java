@@ -0,0 +1,124 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.statistics;
+
+import org.apache.jena.graph.Node;
+
+/**
+ * The accumulated yield of a rule (or constructor) at a given context node,
+ * over all iterations.  Created by SPINYieldReport.
+ */
+public class SPINRuleYield {
+
+	private Node context;
+
+	private int executionCount;
+
+	private long existingCount;
+
+	private int lastIteration = -1;
+
+	private String label;
+
+	private long producedCount;
+
+	private String queryText;
+
+	private long totalDuration;
+
+
+	SPINRuleYield(String label, String queryText, Node context) {
+		this.context = context;
+		this.label = label;
+		this.queryText = queryText;
+	}
+
+
+	void add(SPINStatistics stats) {
+		executionCount++;
+		totalDuration += stats.getDuration();
+		producedCount += stats.getProducedCount();
+		existingCount += stats.getExistingCount();
+		lastIteration = Math.max(lastIteration, stats.getIteration());
+	}
+
+
+	public Node getContext() {
+		return context;
+	}
+
+
+	/**
+	 * Gets the average time spent per genuinely new triple.
+	 * Rules that took any time without producing new triples have an infinite cost.
+	 * @return the cost in ms per new triple
+	 */
+	public double getCostPerNewTriple() {
+		long newCount = getNewCount();
+		if(newCount > 0) {
+			return (double) totalDuration / newCount;
+		}
+		else {
+			return totalDuration > 0 ? Double.POSITIVE_INFINITY : 0;
+		}
+	}
+
+
+	public int getExecutionCount() {
+		return executionCount;
+	}
+
+
+	public long getExistingCount() {
+		return existingCount;
+	}
+
+
+	public String getLabel() {
+		return label;
+	}
+
+
+	/**
+	 * Gets the last iteration in which the rule has been executed.
+	 * @return the iteration or -1 if unknown
+	 */
+	public int getLastIteration() {
+		return lastIteration;
+	}
+
+
+	public long getNewCount() {
+		return producedCount - existingCount;
+	}
+
+
+	public long getProducedCount() {
+		return producedCount;
+	}
+
+
+	public String getQueryText() {
+		return queryText;
+	}
+
+
+	public long getTotalDuration() {
+		return totalDuration;
+	}
+}
@@ -23,6 +23,13 @@ import org.apache.jena.graph.Node;
 /**
  * A wrapper to record the execution time of a given Query
  * for statistical purposes.
+ * 
+ * For rules and constructors, this may also record the yield of the execution,
+ * i.e. how many triples were produced and how many of those were already present.
+ * These values are -1 if unknown.
+ * 
+ * For slow executions, the engines may also attach the query plan
+ * (see SPINQueryPlanCapture).
  */
 public class SPINStatistics {
 	
@@ -30,8 +37,16 @@ public class SPINStatistics {
 
 	private long duration;
 	
+	private int existingCount = -1;
+	
+	private int iteration = -1;
+	
 	private String label;
 	
+	private String plan;
+	
+	private int producedCount = -1;
+	
 	private String queryText;
 	
 	private long startTime;
@@ -54,6 +69,25 @@ public class SPINStatistics {
 	}
 	
 	
+	/**
+	 * Creates a new SPINStatistics object for a rule or constructor execution.
+	 * @param label  the label of the action that has been measured
+	 * @param queryText  the text of the query that was executed
+	 * @param duration  the total duration in ms
+	 * @param startTime  the start time of execution (for ordering)
+	 * @param context  the Node that for example was holding the spin:rule
+	 * @param iteration  the inferencing iteration, starting at 1
+	 * @param producedCount  the number of triples produced by the query
+	 * @param existingCount  the number of produced triples that were already present
+	 */
+	public SPINStatistics(String label, String queryText, long duration, long startTime, Node context, int iteration, int producedCount, int existingCount) {
+		this(label, queryText, duration, startTime, context);
+		this.existingCount = existingCount;
+		this.iteration = iteration;
+		this.producedCount = producedCount;
+	}
+	
+	
 	public Node getContext() {
 		return context;
 	}
@@ -64,11 +98,59 @@ public class SPINStatistics {
 	}
 	
 	
+	/**
+	 * Gets the number of produced triples that were already present in the queried Model.
+	 * @return the number of triples or -1 if unknown
+	 */
+	public int getExistingCount() {
+		return existingCount;
+	}
+	
+	
+	/**
+	 * Gets the inferencing iteration in which the execution happened.
+	 * @return the iteration (starting at 1) or -1 if unknown
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+	
+	
 	public String getLabel() {
 		return label;
 	}
 	
 	
+	/**
+	 * Gets the captured query plan of the execution, if any.
+	 * @return the plan or null
+	 * @see org.spinrdf.arq.SPINQueryPlanCapture
+	 */
+	public String getPlan() {
+		return plan;
+	}
+	
+	
+	/**
+	 * Gets the number of genuinely new triples, i.e. the produced triples that
+	 * were not present yet.
+	 * @return the number of triples or -1 if unknown
+	 */
+	public int getNewCount() {
+		return producedCount >= 0 && existingCount >= 0 ? producedCount - existingCount : -1;
+	}
+	
+	
+	/**
+	 * Gets the number of triples produced by the execution, including those
+	 * that were already present.
+	 * @return the number of triples or -1 if unknown
+	 */
+	public int getProducedCount() {
+		return producedCount;
+	}
+	
+	
 	public String getQueryText() {
 		return queryText;
 	}
@@ -77,4 +159,9 @@ public class SPINStatistics {
 	public long getStartTime() {
 		return startTime;
 	}
+	
+	
+	public void setPlan(String plan) {
+		this.plan = plan;
+	}
 }
@@ -0,0 +1,142 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.graph.Node;
+
+
+/**
+ * Aggregated SPINStatistics of all executions of the same query
+ * (e.g. a rule or constraint) with the same context node.
+ * These are maintained continuously by the SPINStatisticsManager,
+ * independently of how many raw SPINStatistics it keeps.
+ * All durations are in milliseconds, like in SPINStatistics.
+ */
+public class SPINStatisticsAggregate {
+
+	// Bucket i counts durations d with 2^(i-1) <= d < 2^i, bucket 0 counts d == 0
+	private final static int BUCKETS = Long.SIZE;
+
+
+	private Node context;
+
+	private LongAdder count = new LongAdder();
+
+	private AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+	private String label;
+
+	private AtomicLong maxDuration = new AtomicLong();
+
+	private String queryText;
+
+	private LongAdder totalDuration = new LongAdder();
+
+
+	SPINStatisticsAggregate(String label, String queryText, Node context) {
+		this.context = context;
+		this.label = label;
+		this.queryText = queryText;
+	}
+
+
+	void add(long duration) {
+		long d = Math.max(0, duration);
+		count.increment();
+		totalDuration.add(d);
+		long max = maxDuration.get();
+		while(d > max && !maxDuration.compareAndSet(max, d)) {
+			max = maxDuration.get();
+		}
+		histogram.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(d));
+	}
+
+
+	public Node getContext() {
+		return context;
+	}
+
+
+	public long getCount() {
+		return count.sum();
+	}
+
+
+	/**
+	 * Gets the label of the first recorded execution.
+	 * @return the label
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+
+	public long getMaxDuration() {
+		return maxDuration.get();
+	}
+
+
+	public long getMeanDuration() {
+		long c = count.sum();
+		return c > 0 ? totalDuration.sum() / c : 0;
+	}
+
+
+	/**
+	 * Gets an estimate of a given percentile of the durations.
+	 * The durations are kept in power-of-two buckets, so the result is the upper
+	 * bound of the bucket that contains the percentile, capped at the max duration.
+	 * @param percentile  the percentile, e.g. 0.5 for the median or 0.99
+	 * @return the estimated duration
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++) {
+			counts[i] = histogram.get(i);
+			total += counts[i];
+		}
+		if(total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile * total);
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if(seen >= rank && counts[i] > 0) {
+				long upper = i == 0 ? 0 : (1L << i) - 1;
+				return Math.min(upper, getMaxDuration());
+			}
+		}
+		return getMaxDuration();
+	}
+
+
+	public String getQueryText() {
+		return queryText;
+	}
+
+
+	public long getTotalDuration() {
+		return totalDuration.sum();
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * A lock-free ring buffer holding the most recent SPINStatistics.
+ * Once full, each new entry overwrites the oldest one.
+ */
+class SPINStatisticsBuffer {
+
+	private AtomicReferenceArray<SPINStatistics> entries;
+
+	private AtomicLong next = new AtomicLong();
+
+
+	SPINStatisticsBuffer(int capacity) {
+		entries = new AtomicReferenceArray<SPINStatistics>(Math.max(1, capacity));
+	}
+
+
+	void add(SPINStatistics stats) {
+		long index = next.getAndIncrement();
+		entries.set((int)(index % entries.length()), stats);
+	}
+
+
+	int getCapacity() {
+		return entries.length();
+	}
+
+
+	/**
+	 * Gets a snapshot of the current entries, oldest first.
+	 * Entries that are concurrently being overwritten may be skipped.
+	 * @return the entries
+	 */
+	List<SPINStatistics> toList() {
+		long end = next.get();
+		long start = Math.max(0, end - entries.length());
+		List<SPINStatistics> results = new ArrayList<SPINStatistics>((int)(end - start));
+		for(long i = start; i < end; i++) {
+			SPINStatistics stats = entries.get((int)(i % entries.length()));
+			if(stats != null) {
+				results.add(stats);
+			}
+		}
+		return results;
+	}
+}
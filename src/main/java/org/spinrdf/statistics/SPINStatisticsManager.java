@@ -17,12 +17,21 @@
 
 package org.spinrdf.statistics;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.jena.graph.Node;
 
 
 /**
@@ -34,6 +43,17 @@ import java.util.Set;
  * The SPINStatisticsManager is off by default, and needs to be activated
  * with <code>setRecording(true);</code>.
  * 
+ * By default, each recorded function call produces a SPINStatistics object with
+ * a formatted description.  With <code>setAggregatingFunctions(true)</code>,
+ * function calls are instead only counted and timed per function (see
+ * SPINFunctionMetrics), and descriptions are only created for every n-th call
+ * (the sample interval) and for the slowest calls of each function.
+ * 
+ * Only the most recent SPINStatistics (see <code>setCapacity</code>) are kept,
+ * while SPINStatisticsAggregates for each query and context node are maintained
+ * for all added statistics.  Listeners are notified at most once per
+ * notification interval.
+ * 
  * @author Holger Knublauch
  */
 public class SPINStatisticsManager {
@@ -49,7 +69,23 @@ public class SPINStatisticsManager {
 	}
 	
 	
-	private Set<SPINStatisticsListener> listeners = new HashSet<SPINStatisticsListener>();
+	private Map<List<Object>,SPINStatisticsAggregate> aggregates = new ConcurrentHashMap<List<Object>,SPINStatisticsAggregate>();
+	
+	private boolean aggregatingFunctions;
+	
+	private volatile SPINStatisticsBuffer buffer = new SPINStatisticsBuffer(10000);
+	
+	private Map<String,SPINFunctionMetrics> functionMetrics = new ConcurrentHashMap<String,SPINFunctionMetrics>();
+	
+	private long lastNotification;
+	
+	private Set<SPINStatisticsListener> listeners = new CopyOnWriteArraySet<SPINStatisticsListener>();
+	
+	private long notificationInterval = 500;
+	
+	private AtomicBoolean notificationPending = new AtomicBoolean();
+	
+	private ScheduledExecutorService notifier;
 	
 	private boolean recording;
 	
@@ -57,7 +93,9 @@ public class SPINStatisticsManager {
 	
 	private boolean recordingSPINFunctions;
 	
-	private List<SPINStatistics> stats = Collections.synchronizedList(new LinkedList<SPINStatistics>());
+	private int sampleInterval = 1000;
+	
+	private int slowestCount = 10;
 	
 	
 	public void addListener(SPINStatisticsListener listener) {
@@ -69,11 +107,14 @@ public class SPINStatisticsManager {
 	 * Adds new statistics and notifies any registered listeners.
 	 * This should only be called if <code>isRecording()</code> is true
 	 * to prevent the unnecessary creation of SPINStatistics objects.
+	 * Notifications are coalesced: if the listeners have been notified less
+	 * than the notification interval ago, a single delayed notification is
+	 * scheduled instead.
 	 * @param values  the statistics to add
 	 */
-	public synchronized void add(Iterable<SPINStatistics> values) {
+	public void add(Iterable<SPINStatistics> values) {
 		addSilently(values);
-		notifyListeners();
+		requestNotification();
 	}
 
 
@@ -84,18 +125,118 @@ public class SPINStatisticsManager {
 	 * @param values  the statistics to add
 	 */
 	public void addSilently(Iterable<SPINStatistics> values) {
+		SPINStatisticsBuffer b = buffer;
 		for(SPINStatistics s : values) {
-			stats.add(s);
+			b.add(s);
+			getAggregate(s).add(s.getDuration());
+		}
+	}
+	
+	
+	private SPINStatisticsAggregate getAggregate(SPINStatistics s) {
+		List<Object> key = Arrays.<Object>asList(s.getQueryText(), s.getContext());
+		SPINStatisticsAggregate aggregate = aggregates.get(key);
+		if(aggregate == null) {
+			aggregate = new SPINStatisticsAggregate(s.getLabel(), s.getQueryText(), s.getContext());
+			SPINStatisticsAggregate old = aggregates.putIfAbsent(key, aggregate);
+			if(old != null) {
+				aggregate = old;
+			}
 		}
+		return aggregate;
+	}
+	
+	
+	/**
+	 * Gets the aggregated statistics for a given query and context node.
+	 * @param queryText  the query text, as in SPINStatistics
+	 * @param context  the context node, as in SPINStatistics
+	 * @return the aggregate or null if no such statistics have been added
+	 */
+	public SPINStatisticsAggregate getAggregate(String queryText, Node context) {
+		return aggregates.get(Arrays.<Object>asList(queryText, context));
 	}
 	
 	
 	/**
-	 * Gets all previously added statistics.
-	 * @return the statistics
+	 * Gets the aggregated statistics for all queries and context nodes that have
+	 * been added since the last reset.
+	 * @return the aggregates
 	 */
-	public synchronized List<SPINStatistics> getStatistics() {
-		return stats;
+	public Collection<SPINStatisticsAggregate> getAggregates() {
+		return Collections.unmodifiableCollection(aggregates.values());
+	}
+	
+	
+	/**
+	 * Gets the maximum number of individual SPINStatistics that are kept.
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return buffer.getCapacity();
+	}
+	
+	
+	/**
+	 * Gets the aggregated metrics of all functions that have been recorded
+	 * in aggregating mode.
+	 * @return the function metrics
+	 */
+	public Collection<SPINFunctionMetrics> getFunctionMetrics() {
+		return Collections.unmodifiableCollection(functionMetrics.values());
+	}
+	
+	
+	/**
+	 * Gets the aggregated metrics of a given function, creating them on demand.
+	 * @param functionURI  the URI of the function
+	 * @return the metrics (never null)
+	 */
+	public SPINFunctionMetrics getFunctionMetrics(String functionURI) {
+		SPINFunctionMetrics metrics = functionMetrics.get(functionURI);
+		if(metrics == null) {
+			metrics = new SPINFunctionMetrics(functionURI, this);
+			SPINFunctionMetrics old = functionMetrics.putIfAbsent(functionURI, metrics);
+			if(old != null) {
+				metrics = old;
+			}
+		}
+		return metrics;
+	}
+	
+	
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+	
+	
+	public int getSlowestCount() {
+		return slowestCount;
+	}
+	
+	
+	public long getNotificationInterval() {
+		return notificationInterval;
+	}
+	
+	
+	/**
+	 * Gets the most recently added statistics, oldest first.
+	 * At most <code>getCapacity()</code> statistics are kept.
+	 * @return a snapshot of the statistics
+	 */
+	public List<SPINStatistics> getStatistics() {
+		return buffer.toList();
+	}
+	
+	
+	/**
+	 * Checks whether function calls are recorded as aggregated metrics
+	 * instead of individual SPINStatistics.
+	 * @return true if aggregating
+	 */
+	public boolean isAggregatingFunctions() {
+		return aggregatingFunctions;
 	}
 	
 	
@@ -120,7 +261,9 @@ public class SPINStatisticsManager {
 	
 	
 	public synchronized void reset() {
-		stats.clear();
+		buffer = new SPINStatisticsBuffer(buffer.getCapacity());
+		aggregates.clear();
+		functionMetrics.clear();
 		notifyListeners();
 	}
 	
@@ -129,12 +272,81 @@ public class SPINStatisticsManager {
 	 * Notifies all registered SPINStatisticsListeners so that they can refresh themselves.
 	 */
 	public void notifyListeners() {
-		for(SPINStatisticsListener listener : new ArrayList<SPINStatisticsListener>(listeners)) {
+		synchronized(this) {
+			lastNotification = System.currentTimeMillis();
+		}
+		for(SPINStatisticsListener listener : listeners) {
 			listener.statisticsUpdated();
 		}
 	}
 	
 	
+	private void requestNotification() {
+		if(listeners.isEmpty()) {
+			return;
+		}
+		long delay;
+		synchronized(this) {
+			delay = lastNotification + notificationInterval - System.currentTimeMillis();
+		}
+		if(delay <= 0) {
+			notificationPending.set(false);
+			notifyListeners();
+		}
+		else if(notificationPending.compareAndSet(false, true)) {
+			getNotifier().schedule(new Runnable() {
+				@Override
+				public void run() {
+					if(notificationPending.compareAndSet(true, false)) {
+						notifyListeners();
+					}
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	
+	private synchronized ScheduledExecutorService getNotifier() {
+		if(notifier == null) {
+			notifier = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "SPINStatisticsManager notifier");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return notifier;
+	}
+	
+	
+	/**
+	 * Sets the maximum number of individual SPINStatistics that are kept.
+	 * Changing the capacity discards the current individual statistics, but not the aggregates.
+	 * @param value  the new capacity
+	 */
+	public synchronized void setCapacity(int value) {
+		if(value != buffer.getCapacity()) {
+			buffer = new SPINStatisticsBuffer(value);
+		}
+	}
+	
+	
+	public void setAggregatingFunctions(boolean value) {
+		this.aggregatingFunctions = value;
+	}
+	
+	
+	/**
+	 * Sets the minimum time between two listener notifications triggered by <code>add</code>.
+	 * @param value  the interval in milliseconds, or 0 to notify on every add
+	 */
+	public void setNotificationInterval(long value) {
+		this.notificationInterval = value;
+	}
+	
+	
 	public void setRecording(boolean value) {
 		this.recording = value;
 	}
@@ -148,4 +360,24 @@ public class SPINStatisticsManager {
 	public void setRecordingSPINFunctions(boolean value) {
 		this.recordingSPINFunctions = value;
 	}
+	
+	
+	/**
+	 * Sets the interval at which function calls are sampled in aggregating mode,
+	 * i.e. every n-th call of a function is added as a SPINStatistics object.
+	 * @param value  the interval or 0 to not sample any calls
+	 */
+	public void setSampleInterval(int value) {
+		this.sampleInterval = value;
+	}
+	
+	
+	/**
+	 * Sets the number of slowest calls per function whose details are
+	 * kept in aggregating mode.
+	 * @param value  the number of calls
+	 */
+	public void setSlowestCount(int value) {
+		this.slowestCount = value;
+	}
 }
@@ -0,0 +1,106 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates a report that ranks rules by the time they spend per genuinely new
+ * triple, based on the SPINStatistics collected during inferencing
+ * (e.g. via the statistics argument of SPINInferences.run).
+ * This helps to find rules that spend their time re-deriving known facts.
+ *
+ * Only SPINStatistics that have yield information (see
+ * <code>SPINStatistics.getProducedCount()</code>) are considered.
+ */
+public class SPINYieldReport {
+
+	/**
+	 * Accumulates the given statistics per rule and context node and sorts the results
+	 * with the highest cost per new triple first.  Rules with equal costs are sorted by
+	 * total duration.
+	 * @param statistics  the statistics to analyze
+	 * @return the ranked rule yields
+	 */
+	public static List<SPINRuleYield> create(Iterable<SPINStatistics> statistics) {
+		Map<List<Object>,SPINRuleYield> map = new LinkedHashMap<List<Object>,SPINRuleYield>();
+		for(SPINStatistics stats : statistics) {
+			if(stats.getProducedCount() >= 0 && stats.getExistingCount() >= 0) {
+				List<Object> key = Arrays.<Object>asList(stats.getQueryText(), stats.getContext());
+				SPINRuleYield yield = map.get(key);
+				if(yield == null) {
+					yield = new SPINRuleYield(stats.getLabel(), stats.getQueryText(), stats.getContext());
+					map.put(key, yield);
+				}
+				yield.add(stats);
+			}
+		}
+		List<SPINRuleYield> results = new ArrayList<SPINRuleYield>(map.values());
+		Collections.sort(results, new Comparator<SPINRuleYield>() {
+			@Override
+			public int compare(SPINRuleYield y1, SPINRuleYield y2) {
+				int c = Double.compare(y2.getCostPerNewTriple(), y1.getCostPerNewTriple());
+				if(c == 0) {
+					c = Long.compare(y2.getTotalDuration(), y1.getTotalDuration());
+				}
+				return c;
+			}
+		});
+		return results;
+	}
+
+
+	/**
+	 * Renders a list of rule yields as a plain text table, one line per rule.
+	 * @param yields  the yields, e.g. from create
+	 * @return the text
+	 */
+	public static String toString(List<SPINRuleYield> yields) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("ms/new\tms\truns\titer\tproduced\texisting\tnew\tcontext\trule\n");
+		for(SPINRuleYield yield : yields) {
+			double cost = yield.getCostPerNewTriple();
+			sb.append(Double.isInfinite(cost) ? "inf" : String.format("%.3f", cost));
+			sb.append('\t');
+			sb.append(yield.getTotalDuration());
+			sb.append('\t');
+			sb.append(yield.getExecutionCount());
+			sb.append('\t');
+			sb.append(yield.getLastIteration());
+			sb.append('\t');
+			sb.append(yield.getProducedCount());
+			sb.append('\t');
+			sb.append(yield.getExistingCount());
+			sb.append('\t');
+			sb.append(yield.getNewCount());
+			sb.append('\t');
+			sb.append(yield.getContext());
+			sb.append('\t');
+			String label = yield.getLabel();
+			sb.append(label != null ? label.replace('\n', ' ') : null);
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,664 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.system;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.compose.MultiUnion;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.shared.JenaException;
+import org.apache.jena.sparql.util.NodeFactoryExtra;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.spinrdf.arq.ARQ2SPIN;
+import org.spinrdf.arq.ARQFactory;
+import org.spinrdf.model.Argument;
+import org.spinrdf.model.Command;
+import org.spinrdf.model.Function;
+import org.spinrdf.model.Module;
+import org.spinrdf.model.SPINFactory;
+import org.spinrdf.model.Template;
+import org.spinrdf.model.impl.ModuleImpl;
+import org.spinrdf.model.print.StringPrintContext;
+import org.spinrdf.model.update.Update;
+import org.spinrdf.util.JenaDatatypes;
+import org.spinrdf.util.JenaUtil;
+import org.spinrdf.vocabulary.SP;
+import org.spinrdf.vocabulary.SPIN;
+import org.spinrdf.vocabulary.SPL;
+
+/**
+ * Reads and writes a compact binary representation of a SPIN library: its functions,
+ * magic properties, templates, and the rules, constructors and constraints attached
+ * to classes.  Each command is stored as SPARQL text, so that loading a library
+ * neither needs to parse the SPIN RDF triples nor to print them as SPARQL again.
+ *
+ * <p>A file starts with the int MAGIC and the int VERSION, followed by a sequence of
+ * records.  Each record starts with a type byte and the int length of its payload,
+ * so that readers can skip record types that they do not know.  Strings are stored
+ * as int length (-1 for null) followed by UTF-8 bytes, RDF nodes as strings in
+ * N-Triples syntax.  The record types are:</p>
+ * <ul>
+ * <li>PREFIX: prefix, namespace</li>
+ * <li>TRIPLE: subject, predicate, object of rdfs:subClassOf and rdfs:subPropertyOf triples</li>
+ * <li>FUNCTION: URI, flags, label, return type, arguments, body type, body text</li>
+ * <li>TEMPLATE: URI, flags, label, label template, arguments, body type, body text</li>
+ * <li>COMMAND: class, predicate, command (null for blank nodes), type, text, other properties</li>
+ * <li>TEMPLATE_CALL: class, predicate, call (null for blank nodes), template, argument values</li>
+ * </ul>
+ *
+ * <p>Loading creates a Model in which all commands only have sp:text, which is
+ * much smaller than the SPIN RDF.  Files are read using a memory-mapped FileChannel.</p>
+ */
+public class SPINLibraryFile {
+
+	public final static int MAGIC = 0x5350494E; // "SPIN"
+
+	public final static int VERSION = 1;
+
+	private final static byte PREFIX = 1;
+
+	private final static byte TRIPLE = 2;
+
+	private final static byte FUNCTION = 3;
+
+	private final static byte TEMPLATE = 4;
+
+	private final static byte COMMAND = 5;
+
+	private final static byte TEMPLATE_CALL = 6;
+
+	// Flags of functions and templates
+	private final static int ABSTRACT = 1;
+
+	private final static int CACHABLE = 2;
+
+	private final static int MAGIC_PROPERTY = 4;
+
+	private final static int PRIVATE = 8;
+
+	// Flags of arguments
+	private final static int OPTIONAL = 1;
+
+
+	/**
+	 * Loads a library file and registers its functions and templates with the
+	 * SPINModuleRegistry.
+	 * @param path  the file to load
+	 * @param parseCommands  true to also parse all commands into the ARQFactory caches,
+	 *                       instead of on first use
+	 * @return the Model created from the file
+	 * @throws IOException  if the file could not be read
+	 */
+	public static Model load(Path path, boolean parseCommands) throws IOException {
+		Model model = read(path);
+		SPINModuleRegistry.get().registerAll(model, path);
+		if(parseCommands) {
+			for(Resource type : JenaUtil.getAllSubClasses(SP.Command.inModel(SP.getModel()))) {
+				for(Resource instance : model.listSubjectsWithProperty(RDF.type, type).toList()) {
+					Command command = SPINFactory.asCommand(instance);
+					if(command != null) {
+						String str = ARQFactory.get().createCommandString(command);
+						if(command instanceof Update) {
+							ARQFactory.get().createUpdateRequest(str);
+						}
+						else {
+							ARQFactory.get().createQuery(str);
+						}
+					}
+				}
+			}
+		}
+		return model;
+	}
+
+
+	/**
+	 * Reads a library file into a new Model, without registering anything.
+	 * @param path  the file to read
+	 * @return a new Model
+	 * @throws IOException  if the file could not be read or has the wrong format
+	 */
+	public static Model read(Path path) throws IOException {
+		Model model = JenaUtil.createDefaultModel();
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+				throw new IOException("Not a SPIN library file: " + path);
+			}
+			int version = buffer.getInt();
+			if(version != VERSION) {
+				throw new IOException("Unsupported SPIN library file version " + version + ": " + path);
+			}
+			boolean magicProperties = false;
+			try {
+				while(buffer.hasRemaining()) {
+					byte type = buffer.get();
+					int length = buffer.getInt();
+					if(length < 0 || length > buffer.remaining()) {
+						throw new IOException("Corrupt SPIN library file, invalid record length " + length + " at position " + buffer.position() + ": " + path);
+					}
+					// Records cannot read beyond their own payload
+					ByteBuffer payload = buffer.slice();
+					payload.limit(length);
+					switch(type) {
+						case PREFIX: model.setNsPrefix(readString(payload), readString(payload)); break;
+						case TRIPLE: model.add(readResource(payload, model), model.getProperty(readString(payload)), readNode(payload, model)); break;
+						case FUNCTION: magicProperties |= readFunction(payload, model); break;
+						case TEMPLATE: readTemplate(payload, model); break;
+						case COMMAND: readCommand(payload, model); break;
+						case TEMPLATE_CALL: readTemplateCall(payload, model); break;
+					}
+					// Skips unknown records
+					buffer.position(buffer.position() + length);
+				}
+			}
+			catch(BufferUnderflowException | IllegalArgumentException | JenaException ex) {
+				throw new IOException("Corrupt SPIN library file: " + path, ex);
+			}
+			if(magicProperties) {
+				// Normally from spin.owl, needed so that registerFunctions finds the magic properties
+				model.add(SPIN.MagicProperty, RDFS.subClassOf, SPIN.Function);
+			}
+		}
+		return model;
+	}
+
+
+	private static void readArguments(ByteBuffer buffer, Resource module) {
+		Model model = module.getModel();
+		int count = buffer.getInt();
+		for(int i = 0; i < count; i++) {
+			Resource arg = model.createResource(SPL.Argument);
+			arg.addProperty(SPL.predicate, model.getProperty(readString(buffer)));
+			String valueType = readString(buffer);
+			if(valueType != null) {
+				arg.addProperty(SPL.valueType, model.getResource(valueType));
+			}
+			int flags = buffer.get();
+			if((flags & OPTIONAL) != 0) {
+				arg.addLiteral(SPL.optional, true);
+			}
+			RDFNode defaultValue = readNode(buffer, model);
+			if(defaultValue != null) {
+				arg.addProperty(SPL.defaultValue, defaultValue);
+			}
+			module.addProperty(SPIN.constraint, arg);
+		}
+	}
+
+
+	private static void readBody(ByteBuffer buffer, Resource module) {
+		String type = readString(buffer);
+		String text = readString(buffer);
+		if(type != null) {
+			Resource body = module.getModel().createResource(module.getModel().getResource(type));
+			body.addProperty(SP.text, text);
+			module.addProperty(SPIN.body, body);
+		}
+	}
+
+
+	private static void readCommand(ByteBuffer buffer, Model model) {
+		Resource cls = readResource(buffer, model);
+		Property predicate = model.getProperty(readString(buffer));
+		Resource command = createResource(readString(buffer), model);
+		command.addProperty(RDF.type, model.getResource(readString(buffer)));
+		command.addProperty(SP.text, readString(buffer));
+		readProperties(buffer, command);
+		cls.addProperty(predicate, command);
+	}
+
+
+	private static boolean readFunction(ByteBuffer buffer, Model model) {
+		Resource function = model.getResource(readString(buffer));
+		int flags = buffer.get();
+		boolean magicProperty = (flags & MAGIC_PROPERTY) != 0;
+		function.addProperty(RDF.type, magicProperty ? SPIN.MagicProperty : SPIN.Function);
+		readModuleFlags(flags, function);
+		if((flags & CACHABLE) != 0) {
+			function.addLiteral(SPIN.cachable, true);
+		}
+		if((flags & PRIVATE) != 0) {
+			function.addLiteral(SPIN.private_, true);
+		}
+		String label = readString(buffer);
+		if(label != null) {
+			function.addProperty(RDFS.label, label);
+		}
+		String returnType = readString(buffer);
+		if(returnType != null) {
+			function.addProperty(SPIN.returnType, model.getResource(returnType));
+		}
+		readArguments(buffer, function);
+		readBody(buffer, function);
+		return magicProperty;
+	}
+
+
+	private static void readModuleFlags(int flags, Resource module) {
+		if((flags & ABSTRACT) != 0) {
+			module.addLiteral(SPIN.abstract_, true);
+		}
+	}
+
+
+	private static RDFNode readNode(ByteBuffer buffer, Model model) {
+		String str = readString(buffer);
+		return str != null ? model.asRDFNode(NodeFactoryExtra.parseNode(str)) : null;
+	}
+
+
+	private static void readProperties(ByteBuffer buffer, Resource subject) {
+		Model model = subject.getModel();
+		int count = buffer.getInt();
+		for(int i = 0; i < count; i++) {
+			Property predicate = model.getProperty(readString(buffer));
+			subject.addProperty(predicate, readNode(buffer, model));
+		}
+	}
+
+
+	private static Resource readResource(ByteBuffer buffer, Model model) {
+		return (Resource) readNode(buffer, model);
+	}
+
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if(length < 0) {
+			return null;
+		}
+		if(length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	private static void readTemplate(ByteBuffer buffer, Model model) {
+		Resource template = model.createResource(readString(buffer), SPIN.Template);
+		readModuleFlags(buffer.get(), template);
+		String label = readString(buffer);
+		if(label != null) {
+			template.addProperty(RDFS.label, label);
+		}
+		String labelTemplate = readString(buffer);
+		if(labelTemplate != null) {
+			template.addProperty(SPIN.labelTemplate, labelTemplate);
+		}
+		readArguments(buffer, template);
+		readBody(buffer, template);
+	}
+
+
+	private static void readTemplateCall(ByteBuffer buffer, Model model) {
+		Resource cls = readResource(buffer, model);
+		Property predicate = model.getProperty(readString(buffer));
+		Resource call = createResource(readString(buffer), model);
+		call.addProperty(RDF.type, model.getResource(readString(buffer)));
+		readProperties(buffer, call);
+		cls.addProperty(predicate, call);
+	}
+
+
+	private static Resource createResource(String uri, Model model) {
+		return uri != null ? model.getResource(uri) : model.createResource();
+	}
+
+
+	/**
+	 * Writes the SPIN library contained in a given Model into a file.
+	 * The Model should include the SPIN system triples (e.g. by importing spin.owl),
+	 * so that all functions, templates and sub-properties of spin:rule are found.
+	 * However, only the schema triples, functions, templates and class-attached commands
+	 * of the base graph of the Model are written, excluding modules from the SP, SPIN and SPL
+	 * namespaces - imported libraries need to be written and loaded separately.
+	 * @param model  the Model containing the library
+	 * @param path  the file to write to (will be overwritten)
+	 * @return the number of records written
+	 * @throws IOException  if the file could not be written
+	 */
+	public static int write(Model model, Path path) throws IOException {
+		try(OutputStream os = new BufferedOutputStream(Files.newOutputStream(path))) {
+			return new Writer(model, os).write();
+		}
+	}
+
+
+	private static class Writer {
+
+		private DataOutputStream out;
+
+		// Only triples from this graph are written
+		private Graph baseGraph;
+
+		private ByteArrayOutputStream payload = new ByteArrayOutputStream();
+
+		private DataOutputStream record = new DataOutputStream(payload);
+
+		private int records;
+
+		private Model model;
+
+		// Used to print SPIN RDF, which may need the SPIN system triples
+		private Model unionModel;
+
+
+		Writer(Model model, OutputStream os) {
+			this.model = model;
+			this.out = new DataOutputStream(os);
+			Graph graph = JenaUtil.getBaseGraph(model);
+			this.baseGraph = graph != null ? graph : model.getGraph();
+			MultiUnion unionGraph = new MultiUnion(new Graph[] {
+					model.getGraph(),
+					SPIN.getModel().getGraph()
+			});
+			unionGraph.setBaseGraph(model.getGraph());
+			this.unionModel = ModelFactory.createModelForGraph(unionGraph);
+		}
+
+
+		int write() throws IOException {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			for(Map.Entry<String,String> entry : model.getNsPrefixMap().entrySet()) {
+				writeString(entry.getKey());
+				writeString(entry.getValue());
+				endRecord(PREFIX);
+			}
+			writeSchema(RDFS.subClassOf);
+			writeSchema(RDFS.subPropertyOf);
+			Set<Resource> functions = new LinkedHashSet<Resource>();
+			functions.addAll(JenaUtil.getAllInstances(SPIN.Function.inModel(model)));
+			functions.addAll(JenaUtil.getAllInstances(SPIN.MagicProperty.inModel(model)));
+			for(Resource resource : functions) {
+				if(isLibraryResource(resource)) {
+					writeFunction(SPINFactory.asFunction(resource));
+				}
+			}
+			for(Resource resource : JenaUtil.getAllInstances(SPIN.Template.inModel(model))) {
+				if(isLibraryResource(resource)) {
+					writeTemplate(resource.as(Template.class));
+				}
+			}
+			for(Property predicate : getCommandProperties()) {
+				StmtIterator it = model.listStatements(null, predicate, (RDFNode)null);
+				try {
+					while(it.hasNext()) {
+						writeCommand(it.next());
+					}
+				}
+				finally {
+					it.close();
+				}
+			}
+			out.flush();
+			return records;
+		}
+
+
+		private void endRecord(byte type) throws IOException {
+			record.flush();
+			out.writeByte(type);
+			out.writeInt(payload.size());
+			payload.writeTo(out);
+			payload.reset();
+			records++;
+		}
+
+
+		private Set<Property> getCommandProperties() {
+			Set<Property> results = new LinkedHashSet<Property>();
+			for(Property base : new Property[] { SPIN.rule, SPIN.constructor, SPIN.constraint }) {
+				Property property = base.inModel(unionModel);
+				results.add(base);
+				for(Resource sub : JenaUtil.getAllSubProperties(property)) {
+					if(sub.isURIResource()) {
+						results.add(model.getProperty(sub.getURI()));
+					}
+				}
+			}
+			return results;
+		}
+
+
+		private String getText(Command command) {
+			String text = ARQ2SPIN.getTextOnly(command);
+			if(text == null) {
+				StringPrintContext p = new StringPrintContext();
+				p.setUsePrefixes(true);
+				p.setPrintPrefixes(false);
+				SPINFactory.asCommand(command.inModel(unionModel)).print(p);
+				text = p.getString();
+			}
+			return text;
+		}
+
+
+		// URI resources described in the base graph, outside of the system namespaces
+		private boolean isLibraryResource(Resource resource) {
+			if(!resource.isURIResource()) {
+				return false;
+			}
+			String uri = resource.getURI();
+			if(uri.startsWith(SP.NS) || uri.startsWith(SPIN.NS) || uri.startsWith(SPL.NS)) {
+				return false;
+			}
+			return baseGraph.contains(resource.asNode(), Node.ANY, Node.ANY);
+		}
+
+
+		private void writeArguments(Module module) throws IOException {
+			// Only the declared arguments: the inherited ones are found through
+			// the rdfs:subClassOf triples after loading
+			List<Argument> declared = new ArrayList<Argument>();
+			StmtIterator it = module.listProperties(SPIN.constraint);
+			try {
+				while(it.hasNext()) {
+					ModuleImpl.addArgumentFromConstraint(it.next(), declared);
+				}
+			}
+			finally {
+				it.close();
+			}
+			List<Argument> arguments = new ArrayList<Argument>();
+			for(Argument argument : declared) {
+				if(argument.getPredicate() != null) {
+					arguments.add(argument);
+				}
+			}
+			record.writeInt(arguments.size());
+			for(Argument argument : arguments) {
+				writeString(argument.getPredicate().getURI());
+				Resource valueType = argument.getValueType();
+				writeString(valueType != null && valueType.isURIResource() ? valueType.getURI() : null);
+				record.writeByte(argument.isOptional() ? OPTIONAL : 0);
+				writeNode(argument.getDefaultValue());
+			}
+		}
+
+
+		private void writeBody(Module module) throws IOException {
+			Command body = module.getBody();
+			if(body != null) {
+				writeString(JenaUtil.getType(body).getURI());
+				writeString(getText(body));
+			}
+			else {
+				writeString(null);
+				writeString(null);
+			}
+		}
+
+
+		private void writeCommand(Statement s) throws IOException {
+			if(!s.getObject().isResource() || !isLibraryResource(s.getSubject()) || !baseGraph.contains(s.asTriple())) {
+				return;
+			}
+			Resource object = s.getResource();
+			// spin:constraint is also used for the arguments of functions and templates
+			if(object.hasProperty(RDF.type, SPL.Argument) || object.hasProperty(RDF.type, SPL.Attribute)) {
+				return;
+			}
+			Command command = SPINFactory.asCommand(object);
+			if(command != null) {
+				writeNode(s.getSubject());
+				writeString(s.getPredicate().getURI());
+				writeString(object.isURIResource() ? object.getURI() : null);
+				writeString(JenaUtil.getType(command).getURI());
+				writeString(getText(command));
+				writeProperties(object, true);
+				endRecord(COMMAND);
+			}
+			else {
+				Resource type = JenaUtil.getType(object);
+				if(type != null && type.isURIResource() && SPINModuleRegistry.get().getTemplate(type.getURI(), model) != null) {
+					writeNode(s.getSubject());
+					writeString(s.getPredicate().getURI());
+					writeString(object.isURIResource() ? object.getURI() : null);
+					writeString(type.getURI());
+					writeProperties(object, false);
+					endRecord(TEMPLATE_CALL);
+				}
+			}
+		}
+
+
+		private void writeFunction(Function function) throws IOException {
+			writeString(function.getURI());
+			int flags = 0;
+			if(function.isAbstract()) {
+				flags |= ABSTRACT;
+			}
+			if(function.hasProperty(SPIN.cachable, JenaDatatypes.TRUE)) {
+				flags |= CACHABLE;
+			}
+			if(function.isMagicProperty()) {
+				flags |= MAGIC_PROPERTY;
+			}
+			if(function.isPrivate()) {
+				flags |= PRIVATE;
+			}
+			record.writeByte(flags);
+			writeString(JenaUtil.getStringProperty(function, RDFS.label));
+			Resource returnType = function.getReturnType();
+			writeString(returnType != null && returnType.isURIResource() ? returnType.getURI() : null);
+			writeArguments(function);
+			writeBody(function);
+			endRecord(FUNCTION);
+		}
+
+
+		private void writeNode(RDFNode node) throws IOException {
+			writeString(node != null ? NodeFmtLib.str(node.asNode()) : null);
+		}
+
+
+		/**
+		 * Writes all properties apart from rdf:type, and for commands also apart from
+		 * sp:text and the SPIN RDF syntax.
+		 */
+		private void writeProperties(Resource subject, boolean command) throws IOException {
+			List<Statement> statements = new ArrayList<Statement>();
+			for(Statement s : subject.listProperties().toList()) {
+				Property predicate = s.getPredicate();
+				if(!RDF.type.equals(predicate) && !(command && SP.NS.equals(predicate.getNameSpace()))) {
+					statements.add(s);
+				}
+			}
+			record.writeInt(statements.size());
+			for(Statement s : statements) {
+				writeString(s.getPredicate().getURI());
+				writeNode(s.getObject());
+			}
+		}
+
+
+		private void writeSchema(Property predicate) throws IOException {
+			Set<Statement> written = new HashSet<Statement>();
+			StmtIterator it = model.listStatements(null, predicate, (RDFNode)null);
+			try {
+				while(it.hasNext()) {
+					Statement s = it.next();
+					Node object = s.getObject().asNode();
+					if(s.getSubject().isURIResource() && object.isURI() && baseGraph.contains(s.asTriple()) && written.add(s)) {
+						writeNode(s.getSubject());
+						writeString(predicate.getURI());
+						writeNode(s.getObject());
+						endRecord(TRIPLE);
+					}
+				}
+			}
+			finally {
+				it.close();
+			}
+		}
+
+
+		private void writeString(String str) throws IOException {
+			if(str == null) {
+				record.writeInt(-1);
+			}
+			else {
+				byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+				record.writeInt(bytes.length);
+				record.write(bytes);
+			}
+		}
+
+
+		private void writeTemplate(Template template) throws IOException {
+			writeString(template.getURI());
+			record.writeByte(template.isAbstract() ? ABSTRACT : 0);
+			writeString(JenaUtil.getStringProperty(template, RDFS.label));
+			writeString(template.getLabelTemplate());
+			writeArguments(template);
+			writeBody(template);
+			endRecord(TEMPLATE);
+		}
+	}
+}
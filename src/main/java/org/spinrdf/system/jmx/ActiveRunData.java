@@ -0,0 +1,70 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.system.jmx;
+
+import org.spinrdf.statistics.SPINActiveRun;
+
+/**
+ * A snapshot of a SPINActiveRun, as reported by SPINStatisticsMXBean.
+ */
+public class ActiveRunData {
+
+	private int currentIteration;
+
+	private String currentLabel;
+
+	private long elapsedTime;
+
+	private String kind;
+
+	private String threadName;
+
+
+	ActiveRunData(SPINActiveRun run) {
+		this.currentIteration = run.getCurrentIteration();
+		this.currentLabel = run.getCurrentLabel();
+		this.elapsedTime = run.getElapsedTime();
+		this.kind = run.getKind();
+		this.threadName = run.getThreadName();
+	}
+
+
+	public int getCurrentIteration() {
+		return currentIteration;
+	}
+
+
+	public String getCurrentLabel() {
+		return currentLabel;
+	}
+
+
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+
+	public String getKind() {
+		return kind;
+	}
+
+
+	public String getThreadName() {
+		return threadName;
+	}
+}
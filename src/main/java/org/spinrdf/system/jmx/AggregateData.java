@@ -0,0 +1,103 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.system.jmx;
+
+import org.spinrdf.statistics.SPINStatisticsAggregate;
+
+/**
+ * A snapshot of a SPINStatisticsAggregate, as reported by SPINStatisticsMXBean.
+ * Durations are in milliseconds.
+ */
+public class AggregateData {
+
+	private String context;
+
+	private long count;
+
+	private String label;
+
+	private long maxDuration;
+
+	private long meanDuration;
+
+	private long percentile50;
+
+	private long percentile90;
+
+	private long percentile99;
+
+	private long totalDuration;
+
+
+	AggregateData(SPINStatisticsAggregate aggregate) {
+		this.context = aggregate.getContext() != null ? aggregate.getContext().toString() : null;
+		this.count = aggregate.getCount();
+		this.label = aggregate.getLabel();
+		this.maxDuration = aggregate.getMaxDuration();
+		this.meanDuration = aggregate.getMeanDuration();
+		this.percentile50 = aggregate.getPercentile(0.5);
+		this.percentile90 = aggregate.getPercentile(0.9);
+		this.percentile99 = aggregate.getPercentile(0.99);
+		this.totalDuration = aggregate.getTotalDuration();
+	}
+
+
+	public String getContext() {
+		return context;
+	}
+
+
+	public long getCount() {
+		return count;
+	}
+
+
+	public String getLabel() {
+		return label;
+	}
+
+
+	public long getMaxDuration() {
+		return maxDuration;
+	}
+
+
+	public long getMeanDuration() {
+		return meanDuration;
+	}
+
+
+	public long getPercentile50() {
+		return percentile50;
+	}
+
+
+	public long getPercentile90() {
+		return percentile90;
+	}
+
+
+	public long getPercentile99() {
+		return percentile99;
+	}
+
+
+	public long getTotalDuration() {
+		return totalDuration;
+	}
+}
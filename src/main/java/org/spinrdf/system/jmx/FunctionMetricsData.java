@@ -0,0 +1,79 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.system.jmx;
+
+import org.spinrdf.statistics.SPINFunctionMetrics;
+
+/**
+ * A snapshot of SPINFunctionMetrics, as reported by SPINStatisticsMXBean.
+ * Durations are in nanoseconds.
+ */
+public class FunctionMetricsData {
+
+	private long count;
+
+	private long errorCount;
+
+	private String functionURI;
+
+	private long maxDuration;
+
+	private long meanDuration;
+
+	private long totalDuration;
+
+
+	FunctionMetricsData(SPINFunctionMetrics metrics) {
+		this.count = metrics.getCount();
+		this.errorCount = metrics.getErrorCount();
+		this.functionURI = metrics.getFunctionURI();
+		this.maxDuration = metrics.getMaxDuration();
+		this.meanDuration = metrics.getMeanDuration();
+		this.totalDuration = metrics.getTotalDuration();
+	}
+
+
+	public long getCount() {
+		return count;
+	}
+
+
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+
+	public String getFunctionURI() {
+		return functionURI;
+	}
+
+
+	public long getMaxDuration() {
+		return maxDuration;
+	}
+
+
+	public long getMeanDuration() {
+		return meanDuration;
+	}
+
+
+	public long getTotalDuration() {
+		return totalDuration;
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.system.jmx;
+
+import java.util.Map;
+
+import org.spinrdf.arq.ARQFactory;
+import org.spinrdf.arq.SPINFunctionFactoryCache;
+import org.spinrdf.arq.SPINFunctionsCache;
+
+/**
+ * Exposes the ARQFactory caches, the SPINFunctionsCache and the
+ * SPINFunctionFactoryCache via JMX.
+ */
+public class SPINCaches implements SPINCachesMXBean {
+
+	@Override
+	public void clearAll() {
+		clearARQFactoryCaches();
+		clearFunctionFactoryCache();
+		clearFunctionsCache();
+	}
+
+
+	@Override
+	public void clearARQFactoryCaches() {
+		ARQFactory.get().clearCaches();
+	}
+
+
+	@Override
+	public void clearFunctionFactoryCache() {
+		SPINFunctionFactoryCache.get().clear();
+	}
+
+
+	@Override
+	public void clearFunctionsCache() {
+		SPINFunctionsCache.get().clear();
+	}
+
+
+	@Override
+	public long getARQFactoryCacheHitCount() {
+		return ARQFactory.get().getCacheHitCount();
+	}
+
+
+	@Override
+	public double getARQFactoryCacheHitRate() {
+		long hits = ARQFactory.get().getCacheHitCount();
+		long total = hits + ARQFactory.get().getCacheMissCount();
+		return total > 0 ? (double) hits / total : 0;
+	}
+
+
+	@Override
+	public long getARQFactoryCacheMissCount() {
+		return ARQFactory.get().getCacheMissCount();
+	}
+
+
+	@Override
+	public Map<String,Integer> getARQFactoryCacheSizes() {
+		return ARQFactory.get().getCacheSizes();
+	}
+
+
+	@Override
+	public int getFunctionFactoryCacheSize() {
+		return SPINFunctionFactoryCache.get().size();
+	}
+
+
+	@Override
+	public int getFunctionsCacheCapacity() {
+		return SPINFunctionsCache.get().getCapacity();
+	}
+
+
+	@Override
+	public long getFunctionsCacheHitCount() {
+		return SPINFunctionsCache.get().getHitCount();
+	}
+
+
+	@Override
+	public long getFunctionsCacheMissCount() {
+		return SPINFunctionsCache.get().getMissCount();
+	}
+
+
+	@Override
+	public int getFunctionsCacheSize() {
+		return SPINFunctionsCache.get().size();
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.system.jmx;
+
+import java.util.Map;
+
+/**
+ * Management interface of the SPIN query, expression and function caches.
+ */
+public interface SPINCachesMXBean {
+
+	long getARQFactoryCacheHitCount();
+
+	double getARQFactoryCacheHitRate();
+
+	long getARQFactoryCacheMissCount();
+
+	Map<String,Integer> getARQFactoryCacheSizes();
+
+	int getFunctionFactoryCacheSize();
+
+	int getFunctionsCacheCapacity();
+
+	long getFunctionsCacheHitCount();
+
+	long getFunctionsCacheMissCount();
+
+	int getFunctionsCacheSize();
+
+	void clearAll();
+
+	void clearARQFactoryCaches();
+
+	void clearFunctionFactoryCache();
+
+	void clearFunctionsCache();
+}
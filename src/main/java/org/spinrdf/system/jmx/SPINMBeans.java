@@ -0,0 +1,74 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.system.jmx;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers the SPIN management beans with the platform MBeanServer,
+ * under the domain org.spinrdf.  Applications that want to monitor SPIN
+ * via JMX (e.g. using JConsole) should call <code>register()</code> at startup.
+ */
+public class SPINMBeans {
+
+	public final static String CACHES = "org.spinrdf:type=Caches";
+
+	public final static String MODULES = "org.spinrdf:type=Modules";
+
+	public final static String STATISTICS = "org.spinrdf:type=Statistics";
+
+
+	/**
+	 * Registers all SPIN MBeans, replacing any previously registered ones.
+	 * @throws JMException  if the registration failed
+	 */
+	public static void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		register(server, CACHES, new SPINCaches());
+		register(server, MODULES, new SPINModules());
+		register(server, STATISTICS, new SPINStatisticsBean());
+	}
+
+
+	private static void register(MBeanServer server, String name, Object bean) throws JMException {
+		ObjectName objectName = new ObjectName(name);
+		if(server.isRegistered(objectName)) {
+			server.unregisterMBean(objectName);
+		}
+		server.registerMBean(bean, objectName);
+	}
+
+
+	/**
+	 * Unregisters all SPIN MBeans.
+	 * @throws JMException  if the unregistration failed
+	 */
+	public static void unregister() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for(String name : new String[] { CACHES, MODULES, STATISTICS }) {
+			ObjectName objectName = new ObjectName(name);
+			if(server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		}
+	}
+}
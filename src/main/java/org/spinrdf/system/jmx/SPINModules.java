@@ -0,0 +1,43 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.system.jmx;
+
+import org.spinrdf.system.SPINModuleRegistry;
+
+/**
+ * Exposes the number of registered SPIN functions and templates via JMX.
+ */
+public class SPINModules implements SPINModulesMXBean {
+
+	@Override
+	public int getFunctionCount() {
+		return SPINModuleRegistry.get().getFunctions().size();
+	}
+
+
+	@Override
+	public int getModelCount() {
+		return SPINModuleRegistry.get().getModels().size();
+	}
+
+
+	@Override
+	public int getTemplateCount() {
+		return SPINModuleRegistry.get().getTemplates().size();
+	}
+}
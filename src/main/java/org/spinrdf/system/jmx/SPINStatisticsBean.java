@@ -0,0 +1,157 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.system.jmx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.spinrdf.statistics.SPINActiveRun;
+import org.spinrdf.statistics.SPINFunctionMetrics;
+import org.spinrdf.statistics.SPINStatisticsAggregate;
+import org.spinrdf.statistics.SPINStatisticsManager;
+
+/**
+ * Exposes the SPINStatisticsManager and the active SPIN runs via JMX.
+ */
+public class SPINStatisticsBean implements SPINStatisticsMXBean {
+
+	@Override
+	public List<ActiveRunData> getActiveRuns() {
+		List<ActiveRunData> results = new ArrayList<ActiveRunData>();
+		for(SPINActiveRun run : SPINActiveRun.getAll()) {
+			results.add(new ActiveRunData(run));
+		}
+		return results;
+	}
+
+
+	@Override
+	public List<AggregateData> getAggregates() {
+		List<AggregateData> results = new ArrayList<AggregateData>();
+		for(SPINStatisticsAggregate aggregate : SPINStatisticsManager.get().getAggregates()) {
+			results.add(new AggregateData(aggregate));
+		}
+		return results;
+	}
+
+
+	@Override
+	public int getCapacity() {
+		return SPINStatisticsManager.get().getCapacity();
+	}
+
+
+	@Override
+	public List<FunctionMetricsData> getFunctionMetrics() {
+		List<FunctionMetricsData> results = new ArrayList<FunctionMetricsData>();
+		for(SPINFunctionMetrics metrics : SPINStatisticsManager.get().getFunctionMetrics()) {
+			results.add(new FunctionMetricsData(metrics));
+		}
+		return results;
+	}
+
+
+	@Override
+	public int getSampleInterval() {
+		return SPINStatisticsManager.get().getSampleInterval();
+	}
+
+
+	@Override
+	public int getSlowestCount() {
+		return SPINStatisticsManager.get().getSlowestCount();
+	}
+
+
+	@Override
+	public int getStatisticsCount() {
+		return SPINStatisticsManager.get().getStatistics().size();
+	}
+
+
+	@Override
+	public boolean isAggregatingFunctions() {
+		return SPINStatisticsManager.get().isAggregatingFunctions();
+	}
+
+
+	@Override
+	public boolean isRecording() {
+		return SPINStatisticsManager.get().isRecording();
+	}
+
+
+	@Override
+	public boolean isRecordingNativeFunctions() {
+		return SPINStatisticsManager.get().isRecordingNativeFunctions();
+	}
+
+
+	@Override
+	public boolean isRecordingSPINFunctions() {
+		return SPINStatisticsManager.get().isRecordingSPINFunctions();
+	}
+
+
+	@Override
+	public void reset() {
+		SPINStatisticsManager.get().reset();
+	}
+
+
+	@Override
+	public void setAggregatingFunctions(boolean value) {
+		SPINStatisticsManager.get().setAggregatingFunctions(value);
+	}
+
+
+	@Override
+	public void setCapacity(int value) {
+		SPINStatisticsManager.get().setCapacity(value);
+	}
+
+
+	@Override
+	public void setRecording(boolean value) {
+		SPINStatisticsManager.get().setRecording(value);
+	}
+
+
+	@Override
+	public void setRecordingNativeFunctions(boolean value) {
+		SPINStatisticsManager.get().setRecordingNativeFunctions(value);
+	}
+
+
+	@Override
+	public void setRecordingSPINFunctions(boolean value) {
+		SPINStatisticsManager.get().setRecordingSPINFunctions(value);
+	}
+
+
+	@Override
+	public void setSampleInterval(int value) {
+		SPINStatisticsManager.get().setSampleInterval(value);
+	}
+
+
+	@Override
+	public void setSlowestCount(int value) {
+		SPINStatisticsManager.get().setSlowestCount(value);
+	}
+}
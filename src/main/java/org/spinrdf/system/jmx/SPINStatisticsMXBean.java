@@ -0,0 +1,65 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.system.jmx;
+
+import java.util.List;
+
+/**
+ * Management interface of the SPINStatisticsManager and of the currently
+ * active inferencing and constraint checking runs.
+ */
+public interface SPINStatisticsMXBean {
+
+	List<ActiveRunData> getActiveRuns();
+
+	List<AggregateData> getAggregates();
+
+	int getCapacity();
+
+	List<FunctionMetricsData> getFunctionMetrics();
+
+	int getSampleInterval();
+
+	int getSlowestCount();
+
+	int getStatisticsCount();
+
+	boolean isAggregatingFunctions();
+
+	boolean isRecording();
+
+	boolean isRecordingNativeFunctions();
+
+	boolean isRecordingSPINFunctions();
+
+	void reset();
+
+	void setAggregatingFunctions(boolean value);
+
+	void setCapacity(int value);
+
+	void setRecording(boolean value);
+
+	void setRecordingNativeFunctions(boolean value);
+
+	void setRecordingSPINFunctions(boolean value);
+
+	void setSampleInterval(int value);
+
+	void setSlowestCount(int value);
+}
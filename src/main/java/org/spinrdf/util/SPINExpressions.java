@@ -17,6 +17,7 @@
 
 package org.spinrdf.util;
 
+import org.apache.jena.query.ARQ;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
@@ -27,10 +28,18 @@ import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.shared.PrefixMapping;
 import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingUtils;
 import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprEvalException;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.function.FunctionEnv;
+import org.apache.jena.sparql.function.FunctionEnvBase;
 import org.apache.jena.sparql.function.FunctionRegistry;
 import org.apache.jena.sparql.syntax.ElementAssign;
 import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.util.Context;
 import org.apache.jena.sparql.util.FmtUtils;
 import org.spinrdf.arq.ARQ2SPIN;
 import org.spinrdf.arq.ARQFactory;
@@ -102,6 +111,12 @@ public class SPINExpressions {
 			return expression;
 		}
 		else {
+			if(ARQFactory.get().isUsingNativeEvaluation()) {
+				Expr expr = ARQFactory.get().createNativeExpression(expression);
+				if(expr != null) {
+					return evaluateNative(expr, dataset, bindings);
+				}
+			}
 			Query arq = ARQFactory.get().createExpressionQuery(expression);
 			QueryExecution qexec = ARQFactory.get().createQueryExecution(arq, dataset);
 			qexec.setInitialBinding(bindings);
@@ -110,6 +125,32 @@ public class SPINExpressions {
 	}
 	
 	
+	/**
+	 * Evaluates a compiled ARQ expression directly, without creating a query.
+	 * This bypasses the QueryExecutions of the ARQFactory, and is only used by
+	 * <code>evaluate</code> if the ARQFactory is using native evaluation.
+	 * @param expr  the (natively evaluable) expression
+	 * @param dataset  the Dataset with the default Model to evaluate in
+	 * @param bindings  the initial bindings or null
+	 * @return the result RDFNode or null if the evaluation failed
+	 */
+	public static RDFNode evaluateNative(Expr expr, Dataset dataset, QuerySolution bindings) {
+		Model model = dataset.getDefaultModel();
+		Binding binding = bindings != null ? BindingUtils.asBinding(bindings) : BindingFactory.binding();
+		// A copy of the global context as in QueryExecutionBase, so that NOW() and other values are per evaluation
+		Context context = Context.setupContextForDataset(ARQ.getContext(), dataset.asDatasetGraph());
+		Context.setCurrentDateTime(context);
+		FunctionEnv env = new FunctionEnvBase(context, model.getGraph(), dataset.asDatasetGraph());
+		try {
+			NodeValue result = expr.eval(binding, env);
+			return result != null ? model.asRDFNode(result.asNode()) : null;
+		}
+		catch(ExprEvalException ex) {
+			return null;
+		}
+	}
+	
+	
 	public static String getExpressionString(RDFNode expression) {
 		return getExpressionString(expression, true);
 	}
@@ -164,8 +205,20 @@ public class SPINExpressions {
 
 
 	public static Expr parseARQExpression(String str, Model model) {
+		return parseARQExpression(str, ARQFactory.get().createPrefixMapping(model));
+	}
+
+
+	/**
+	 * Parses an expression string into an ARQ Expr, using a given PrefixMapping
+	 * to resolve prefixed names.
+	 * @param str  the expression string
+	 * @param prefixMapping  the PrefixMapping (this object may be modified)
+	 * @return the ARQ Expr
+	 */
+	public static Expr parseARQExpression(String str, PrefixMapping prefixMapping) {
 		String queryString = "ASK WHERE { LET (?xqoe := (" + str + ")) }";
-		Query arq = ARQFactory.get().createQuery(model, queryString);
+		Query arq = ARQFactory.get().createQuery(prefixMapping, queryString);
 		ElementGroup group = (ElementGroup) arq.getQueryPattern();
 		ElementAssign assign = (ElementAssign) group.getElements().get(0);
 		Expr expr = assign.getExpr();
@@ -180,7 +180,7 @@ public class SPINQueryFinder {
 
 	private static boolean hasAllNonOptionalArguments(Template template,
 			Map<String, RDFNode> bindings) {
-		for(Argument arg : template.getArguments(false)) {
+		for(ArgumentDescriptor arg : template.getArgumentDescriptors()) {
 			if(!arg.isOptional()) {
 				if(!bindings.containsKey(arg.getVarName())) {
 					// Don't return this template if any non-optional argument is missing
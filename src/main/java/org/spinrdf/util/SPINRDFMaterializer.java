@@ -0,0 +1,248 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.compose.MultiUnion;
+import org.apache.jena.query.QueryParseException;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.vocabulary.RDF;
+import org.spinrdf.arq.ARQ2SPIN;
+import org.spinrdf.model.Command;
+import org.spinrdf.model.SPINFactory;
+import org.spinrdf.model.update.Update;
+
+/**
+ * Creates the SPIN RDF triples of Commands that only have an sp:text on demand,
+ * so that libraries can be kept in memory in the much smaller sp:text syntax
+ * (see SPTextUtil.convertToSPText) instead of calling SPTextUtil.ensureSPINRDFExists.
+ * The execution of such commands only uses the sp:text, but some features such as
+ * the property paths of constraint violations need getWhere() to walk the SPIN RDF.
+ *
+ * <p>The SPIN RDF of each command is created in a separate side Model, which is not
+ * added to the Model of the command itself.  The Command returned by
+ * {@link #getSPINRDF(Command)} lives in a union of the side Model and the original Model.
+ * The side Models of the most recently used commands are kept in a cache, and the
+ * least recently used ones are dropped once getMaxSize() is exceeded.</p>
+ */
+public class SPINRDFMaterializer {
+
+	private static SPINRDFMaterializer singleton = new SPINRDFMaterializer();
+
+	public static SPINRDFMaterializer get() {
+		return singleton;
+	}
+
+
+	public static void set(SPINRDFMaterializer value) {
+		SPINRDFMaterializer.singleton = value;
+	}
+
+
+	// Only holds weak references to the graphs - the side Models do not point back to them
+	private Map<Graph,Map<Node,SideModel>> graphs = new WeakHashMap<Graph,Map<Node,SideModel>>();
+
+	// All side Models, least recently used first
+	private LinkedHashMap<SideModel,SideModel> lru = new LinkedHashMap<SideModel,SideModel>(16, 0.75f, true);
+
+	private volatile int maxSize = 1000;
+
+
+	/**
+	 * Drops all side Models.
+	 */
+	public synchronized void clear() {
+		graphs.clear();
+		lru.clear();
+	}
+
+
+	/**
+	 * Gets the maximum number of commands that have their SPIN RDF cached.
+	 * @return the maximum size
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+
+	/**
+	 * Gets a version of a given Command that has SPIN RDF triples.
+	 * If the Command already has SPIN RDF then it is returned unchanged.
+	 * Otherwise its sp:text is parsed (or taken from the cache) and the result
+	 * is the same node in a union of the side Model and the Model of the Command.
+	 * @param command  the Command
+	 * @return a Command with SPIN RDF, or null if the command has no sp:text, the
+	 *         text cannot be parsed or the cache has been disabled
+	 */
+	public Command getSPINRDF(Command command) {
+		String text = ARQ2SPIN.getTextOnly(command);
+		if(text == null) {
+			return SPTextUtil.hasSPINRDF(command) ? command : null;
+		}
+		if(maxSize <= 0) {
+			return null;
+		}
+		Graph graph = command.getModel().getGraph();
+		Node node = command.asNode();
+		SideModel side = get(graph, node, text);
+		if(side == null) {
+			Model sideModel;
+			try {
+				sideModel = createSideModel(command, text);
+			}
+			catch(QueryParseException ex) {
+				return null;
+			}
+			side = put(graph, node, text, sideModel);
+		}
+		MultiUnion unionGraph = new MultiUnion(new Graph[] {
+				side.model.getGraph(),
+				graph
+		});
+		unionGraph.setBaseGraph(side.model.getGraph());
+		Model unionModel = ModelFactory.createModelForGraph(unionGraph);
+		return SPINFactory.asCommand(command.inModel(unionModel));
+	}
+
+
+	private Model createSideModel(Command command, String text) {
+
+		// As in SPTextUtil.ensureSPINRDFExists, but without changing the original Model
+		Model model = command.getModel();
+		Model baseModel = JenaUtil.createMemoryModel();
+		MultiUnion unionGraph = new MultiUnion(new Graph[] {
+				baseModel.getGraph(),
+				model.getGraph()
+		});
+		unionGraph.setBaseGraph(baseModel.getGraph());
+		baseModel.getGraph().getPrefixMapping().setNsPrefixes(model);
+		Model tempModel = ModelFactory.createModelForGraph(unionGraph);
+		Command tempCommand;
+		if(command instanceof Update) {
+			tempCommand = ARQ2SPIN.parseUpdate(text, tempModel);
+		}
+		else {
+			tempCommand = ARQ2SPIN.parseQuery(text, tempModel);
+		}
+
+		// Move the triples of the temp command to the original node
+		Resource target = (Resource) baseModel.asRDFNode(command.asNode());
+		for(Statement s : baseModel.listStatements(tempCommand, null, (Resource)null).toList()) {
+			if(!RDF.type.equals(s.getPredicate())) {
+				target.addProperty(s.getPredicate(), s.getObject());
+			}
+			s.remove();
+		}
+		return baseModel;
+	}
+
+
+	// Drops the least recently used side Models until maxSize is reached
+	private void evict() {
+		Iterator<SideModel> it = lru.keySet().iterator();
+		while(lru.size() > maxSize && it.hasNext()) {
+			SideModel eldest = it.next();
+			it.remove();
+			eldest.nodes.remove(eldest.node);
+		}
+	}
+
+
+	private synchronized SideModel get(Graph graph, Node node, String text) {
+		Map<Node,SideModel> nodes = graphs.get(graph);
+		if(nodes != null) {
+			SideModel side = nodes.get(node);
+			if(side != null && side.text.equals(text)) {
+				// Marks it as recently used
+				lru.get(side);
+				return side;
+			}
+		}
+		return null;
+	}
+
+
+	private synchronized SideModel put(Graph graph, Node node, String text, Model model) {
+		Map<Node,SideModel> nodes = graphs.get(graph);
+		if(nodes == null) {
+			nodes = new HashMap<Node,SideModel>();
+			graphs.put(graph, nodes);
+		}
+		SideModel side = new SideModel(nodes, node, text, model);
+		SideModel old = nodes.put(node, side);
+		if(old != null) {
+			lru.remove(old);
+		}
+		lru.put(side, side);
+		evict();
+		return side;
+	}
+
+
+	/**
+	 * Sets the maximum number of commands that have their SPIN RDF cached.
+	 * Use 0 to disable the creation of SPIN RDF, so that getWhere() returns
+	 * null for commands that only have an sp:text.
+	 * @param value  the new maximum size
+	 */
+	public synchronized void setMaxSize(int value) {
+		this.maxSize = value;
+		evict();
+	}
+
+
+	/**
+	 * Gets the number of commands that currently have their SPIN RDF cached.
+	 * @return the size of the cache
+	 */
+	public synchronized int size() {
+		return lru.size();
+	}
+
+
+	private static class SideModel {
+
+		Model model;
+
+		Node node;
+
+		// The Map that holds this, so that it can be removed when evicted
+		Map<Node,SideModel> nodes;
+
+		String text;
+
+
+		SideModel(Map<Node,SideModel> nodes, Node node, String text, Model model) {
+			this.model = model;
+			this.node = node;
+			this.nodes = nodes;
+			this.text = text;
+		}
+	}
+}
@@ -17,9 +17,20 @@
 
 package org.spinrdf.util;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 import org.spinrdf.arq.ARQ2SPIN;
+import org.spinrdf.arq.ARQFactory;
 import org.spinrdf.model.Command;
 import org.spinrdf.model.SPINFactory;
+import org.spinrdf.model.print.AppendablePrintContext;
 import org.spinrdf.model.print.StringPrintContext;
 import org.spinrdf.model.update.Update;
 import org.spinrdf.vocabulary.SP;
@@ -29,6 +40,7 @@ import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.compose.MultiUnion;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.ResIterator;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
 import org.apache.jena.rdf.model.StmtIterator;
@@ -62,6 +74,114 @@ public class SPTextUtil {
 	}
 
 	
+	/**
+	 * Converts all SPIN Commands (queries and updates) of a given Model into the
+	 * sp:text syntax, i.e. adds an sp:text if needed and then removes the SPIN RDF
+	 * triples.  Unlike {@link #deleteSPINRDF(Model)} this also covers updates and
+	 * keeps other properties such as spin:thisUnbound.  The SPIN RDF can be recreated
+	 * on demand by SPINRDFMaterializer, or all at once by {@link #ensureSPINRDFExists(Model)}.
+	 * @param model  the Model to manipulate
+	 * @return the number of converted commands
+	 */
+	public static int convertToSPText(Model model) {
+		Set<Resource> instances = new LinkedHashSet<Resource>();
+		for(Resource type : JenaUtil.getAllSubClasses(SP.Command.inModel(SP.getModel()))) {
+			for(Resource instance : model.listSubjectsWithProperty(RDF.type, type).toList()) {
+				if(hasSPINRDF(instance) && !isNestedCommand(instance)) {
+					instances.add(instance);
+				}
+			}
+		}
+		for(Resource instance : instances) {
+			if(!instance.hasProperty(SP.text)) {
+				addSPText(SPINFactory.asCommand(instance));
+			}
+		}
+		for(Resource instance : instances) {
+			for(Statement s : instance.listProperties().toList()) {
+				if(SP.NS.equals(s.getPredicate().getNameSpace()) && !SP.text.equals(s.getPredicate())) {
+					deleteWithDependingBNodes(s);
+				}
+			}
+		}
+		return instances.size();
+	}
+	
+	
+	/**
+	 * Prints all SPIN Commands (queries and updates) of a given Model into a file,
+	 * using UTF-8.  See {@link #printCommands(Model, AppendablePrintContext)}.
+	 * The commands are written through a buffer as they are printed, so that the memory
+	 * needed does not depend on the number of commands.
+	 * @param model  the Model containing the commands
+	 * @param path  the file to write to (will be overwritten)
+	 * @return the number of commands
+	 * @throws IOException  if the file could not be written
+	 */
+	public static int exportCommands(Model model, Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				Writer writer = Channels.newWriter(channel, "UTF-8")) {
+			AppendablePrintContext p = new AppendablePrintContext(writer);
+			int count = printCommands(model, p);
+			p.flush();
+			return count;
+		}
+	}
+	
+	
+	/**
+	 * Prints all SPIN Commands (queries and updates) of a given Model into a PrintContext.
+	 * The output starts with the prefix declarations of the Model, followed by each
+	 * command, preceded by a comment line with its URI.  Commands that only have an
+	 * sp:text are printed as they are, the others are printed from their SPIN RDF.
+	 * Each command is printed once, and nested commands such as sub-queries are
+	 * only printed as part of their parent.
+	 * @param model  the Model containing the commands
+	 * @param p  the PrintContext to print to, e.g. an AppendablePrintContext on a file
+	 * @return the number of commands
+	 */
+	public static int printCommands(Model model, AppendablePrintContext p) {
+		p.print(ARQFactory.get().createPrefixDeclarations(model, false));
+		MultiUnion unionGraph = new MultiUnion(new Graph[] {
+				model.getGraph(),
+				SPIN.getModel().getGraph()
+		});
+		unionGraph.setBaseGraph(model.getGraph());
+		Model unionModel = ModelFactory.createModelForGraph(unionGraph);
+		// Collect first: a resource may have several Command types
+		Set<Resource> instances = new LinkedHashSet<Resource>();
+		for(Resource type : JenaUtil.getAllSubClasses(SP.Command.inModel(SP.getModel()))) {
+			ResIterator it = model.listSubjectsWithProperty(RDF.type, type);
+			try {
+				while(it.hasNext()) {
+					Resource instance = it.next();
+					if(!isNestedCommand(instance)) {
+						instances.add(instance);
+					}
+				}
+			}
+			finally {
+				it.close();
+			}
+		}
+		for(Resource instance : instances) {
+			p.println();
+			p.print("# ");
+			p.print(instance.isURIResource() ? "<" + instance.getURI() + ">" : "[]");
+			p.println();
+			String text = ARQ2SPIN.getTextOnly(instance);
+			if(text != null) {
+				p.print(text);
+			}
+			else {
+				SPINFactory.asCommand(instance.inModel(unionModel)).print(p);
+			}
+			p.println();
+		}
+		return instances.size();
+	}
+	
+	
 	/**
 	 * Removes any SPIN RDF syntax triples from a given Model.
 	 * For example this will remove the sp:where triple tree from an sp:Select,
@@ -112,6 +232,7 @@ public class SPTextUtil {
 	 * Ensures that each SPIN Command with an sp:text also has the SPIN RDF syntax triples.
 	 * For example this will create the sp:where triple for all sp:Selects, assuming they
 	 * do have sp:text triples.
+	 * To save memory, SPINRDFMaterializer can instead create the SPIN RDF on demand.
 	 * @param model  the Model to walk through
 	 */
 	public static void ensureSPINRDFExists(Model model) {
@@ -190,6 +311,23 @@ public class SPTextUtil {
 	}
 	
 	
+	// Sub-queries are part of the SPIN RDF of the surrounding command
+	private static boolean isNestedCommand(Resource command) {
+		StmtIterator it = command.getModel().listStatements(null, null, command);
+		try {
+			while(it.hasNext()) {
+				if(SP.NS.equals(it.next().getPredicate().getNameSpace())) {
+					return true;
+				}
+			}
+			return false;
+		}
+		finally {
+			it.close();
+		}
+	}
+	
+	
 	private static boolean isQNameCharacter(char c) {
 		return c != ':' && XMLChar.isName(c);
 	}
@@ -0,0 +1,220 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See the NOTICE file distributed with this work for additional
+ *  information regarding copyright ownership.
+ */
+
+package org.spinrdf.util;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphListener;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.Dyadic;
+import org.apache.jena.graph.compose.Polyadic;
+import org.apache.jena.util.IteratorCollection;
+
+/**
+ * Union graphs such as MultiUnion do not report changes that are made directly
+ * to their sub-graphs.  This utility forwards the events of all sub-graphs of a
+ * union graph to a GraphListener, e.g. a cache that is attached to the union graph.
+ *
+ * <p>Each sub-graph gets a single forwarding listener that only holds weak
+ * references to the target listeners.  The targets must therefore be kept alive
+ * elsewhere, typically by being registered with the union graph itself.  Union
+ * graphs that are created on the fly thus do not stay in memory.</p>
+ */
+public class SubGraphListeners {
+
+	private static Map<Graph,WeakReference<Forwarder>> forwarders = Collections.synchronizedMap(new WeakHashMap<Graph,WeakReference<Forwarder>>());
+
+
+	/**
+	 * Registers a listener with all (direct and nested) sub-graphs of a given
+	 * Polyadic or Dyadic graph.  Does nothing for other graphs.
+	 * The listener is not registered with the graph itself.
+	 * @param graph  the (union) graph
+	 * @param listener  the listener to notify
+	 */
+	public static void register(Graph graph, GraphListener listener) {
+		List<Graph> subGraphs = new ArrayList<Graph>();
+		if(graph instanceof Polyadic) {
+			// getSubGraphs() does not include the base graph
+			Graph baseGraph = ((Polyadic)graph).getBaseGraph();
+			if(baseGraph != null) {
+				subGraphs.add(baseGraph);
+			}
+			subGraphs.addAll(((Polyadic)graph).getSubGraphs());
+		}
+		else if(graph instanceof Dyadic) {
+			subGraphs.add(((Dyadic)graph).getL());
+			subGraphs.add(((Dyadic)graph).getR());
+		}
+		for(Graph subGraph : subGraphs) {
+			getForwarder(subGraph).add(listener);
+			register(subGraph, listener);
+		}
+	}
+
+
+	private static Forwarder getForwarder(Graph graph) {
+		synchronized(forwarders) {
+			WeakReference<Forwarder> ref = forwarders.get(graph);
+			Forwarder forwarder = ref != null ? ref.get() : null;
+			if(forwarder == null) {
+				forwarder = new Forwarder();
+				graph.getEventManager().register(forwarder);
+				forwarders.put(graph, new WeakReference<Forwarder>(forwarder));
+			}
+			return forwarder;
+		}
+	}
+
+
+	private static class Forwarder implements GraphListener {
+
+		private List<WeakReference<GraphListener>> targets = new ArrayList<WeakReference<GraphListener>>();
+
+
+		synchronized void add(GraphListener listener) {
+			for(GraphListener target : getTargets()) {
+				if(target == listener) {
+					return;
+				}
+			}
+			targets.add(new WeakReference<GraphListener>(listener));
+		}
+
+
+		// Also removes the targets that have been garbage collected
+		private synchronized List<GraphListener> getTargets() {
+			List<GraphListener> results = new ArrayList<GraphListener>(targets.size());
+			Iterator<WeakReference<GraphListener>> it = targets.iterator();
+			while(it.hasNext()) {
+				GraphListener target = it.next().get();
+				if(target != null) {
+					results.add(target);
+				}
+				else {
+					it.remove();
+				}
+			}
+			return results;
+		}
+
+
+		@Override
+		public void notifyAddTriple(Graph g, Triple t) {
+			for(GraphListener target : getTargets()) {
+				target.notifyAddTriple(g, t);
+			}
+		}
+
+
+		@Override
+		public void notifyAddArray(Graph g, Triple[] triples) {
+			for(GraphListener target : getTargets()) {
+				target.notifyAddArray(g, triples);
+			}
+		}
+
+
+		@Override
+		public void notifyAddList(Graph g, List<Triple> triples) {
+			for(GraphListener target : getTargets()) {
+				target.notifyAddList(g, triples);
+			}
+		}
+
+
+		@Override
+		public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+			List<GraphListener> list = getTargets();
+			if(!list.isEmpty()) {
+				// The iterator can only be consumed once
+				List<Triple> triples = IteratorCollection.iteratorToList(it);
+				for(GraphListener target : list) {
+					target.notifyAddList(g, triples);
+				}
+			}
+		}
+
+
+		@Override
+		public void notifyAddGraph(Graph g, Graph added) {
+			for(GraphListener target : getTargets()) {
+				target.notifyAddGraph(g, added);
+			}
+		}
+
+
+		@Override
+		public void notifyDeleteTriple(Graph g, Triple t) {
+			for(GraphListener target : getTargets()) {
+				target.notifyDeleteTriple(g, t);
+			}
+		}
+
+
+		@Override
+		public void notifyDeleteList(Graph g, List<Triple> L) {
+			for(GraphListener target : getTargets()) {
+				target.notifyDeleteList(g, L);
+			}
+		}
+
+
+		@Override
+		public void notifyDeleteArray(Graph g, Triple[] triples) {
+			for(GraphListener target : getTargets()) {
+				target.notifyDeleteArray(g, triples);
+			}
+		}
+
+
+		@Override
+		public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+			List<GraphListener> list = getTargets();
+			if(!list.isEmpty()) {
+				List<Triple> triples = IteratorCollection.iteratorToList(it);
+				for(GraphListener target : list) {
+					target.notifyDeleteList(g, triples);
+				}
+			}
+		}
+
+
+		@Override
+		public void notifyDeleteGraph(Graph g, Graph removed) {
+			for(GraphListener target : getTargets()) {
+				target.notifyDeleteGraph(g, removed);
+			}
+		}
+
+
+		@Override
+		public void notifyEvent(Graph source, Object value) {
+			for(GraphListener target : getTargets()) {
+				target.notifyEvent(source, value);
+			}
+		}
+	}
+}